@@ -0,0 +1,268 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class runs a file of commands without going through the menus, so that many projects can be updated at once.
+ * Each line holds one command:
+ * <pre>
+ * pay 1042 15000.00 [reference]
+ * finalise 1042
+ * set-deadline 1042 2027-03-01
+ * set-fee 1042 250000.00
+ * </pre>
+ * Blank lines and lines starting with # are skipped. A command for a project that has been deleted or archived, but
+ * not yet purged, fails as if the project did not exist. The commands are run in groups of {@value #GROUP_SIZE}, each
+ * group in one transaction. A command that fails is rolled back on its own and the rest of its group is still saved.
+ * The result of every command is printed, followed by the number of commands run per second.
+ */
+public class BatchCommands {
+
+    private static final int GROUP_SIZE = 100;
+    private static final Set<String> COMMANDS = Set.of("pay", "finalise", "set-deadline", "set-fee");
+    // Each command changes the project's pay_complete row, which is only found if the project is still current. Only
+    // pay_complete has the columns the commands change.
+    private static final String UPDATE_CURRENT = "UPDATE pay_complete INNER JOIN project_info " +
+            "ON project_info.proj_num = pay_complete.proj_num SET ";
+    private static final String WHERE_CURRENT = " WHERE pay_complete.proj_num = ? AND project_info.deleted = 'N'";
+
+    /**
+     * This class holds one command read from the file.
+     * @param lineNumber the line of the file the command is on
+     * @param text the command as it was written
+     * @param operation the change the command makes, or null if the command could not be read
+     * @param event the event published once the change has been saved, or null if the command could not be read
+     * @param error why the command could not be read, or null
+     */
+    record Command(int lineNumber, String text, SqlOperation operation, ProjectEvent event, String error) {
+    }
+
+    /**
+     * The run() method reads the commands from a file and runs them against the database.
+     * @param file the file of commands
+     * @return true if every command succeeded
+     */
+    public static boolean run(Path file){
+
+        List<Command> commands = new ArrayList<>();
+
+        try(BufferedReader reader = Files.newBufferedReader(file)){
+
+            String line;
+            int lineNumber = 0;
+
+            while((line = reader.readLine()) != null){
+
+                lineNumber++;
+                String text = line.trim();
+
+                if(!text.isEmpty() && !text.startsWith("#")){
+                    commands.add(parse(lineNumber, text));
+                }
+            }
+
+        } catch(IOException e){
+
+            System.out.println("Could not read the command file " + file + ".");
+            return false;
+
+        }
+
+        long start = System.nanoTime();
+        int succeeded = 0;
+
+        try(Connection connection = Database.getConnection()){
+
+            for(int first = 0; first < commands.size(); first += GROUP_SIZE){
+                succeeded += runGroup(connection, commands.subList(first, Math.min(first + GROUP_SIZE,
+                        commands.size())));
+            }
+
+        } catch(SQLException e){
+
+            System.out.println("Could not connect to database.");
+            return false;
+
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d commands, %d succeeded, %d failed in %.2f s (%.1f commands/s)%n", commands.size(),
+                succeeded, commands.size() - succeeded, seconds, seconds > 0 ? commands.size() / seconds : 0);
+
+        return succeeded == commands.size();
+    }
+
+    /**
+     * The runGroup() method runs a group of commands in one transaction. Each command has a savepoint, so a command
+     * that fails is undone without undoing the others. If the transaction cannot be committed, every command in the
+     * group is reported as failed.
+     * @param connection an open connection to the database
+     * @param group the commands to be run
+     * @return the number of commands that succeeded
+     * @throws SQLException if the database could not be reached
+     */
+    private static int runGroup(Connection connection, List<Command> group) throws SQLException {
+
+        List<String> results = new ArrayList<>();
+        List<ProjectEvent> events = new ArrayList<>();
+        int succeeded = 0;
+
+        connection.setAutoCommit(false);
+
+        try{
+
+            for(Command command : group){
+
+                if(command.operation() == null){
+                    results.add("FAILED " + command.error());
+                    continue;
+                }
+
+                Savepoint savepoint = connection.setSavepoint();
+
+                try{
+
+                    command.operation().executeStatements(connection);
+                    connection.releaseSavepoint(savepoint);
+                    results.add("OK");
+                    events.add(command.event());
+                    succeeded++;
+
+                } catch(ConcurrentUpdateException e){
+
+                    connection.rollback(savepoint);
+                    results.add(command.text().startsWith("finalise") ?
+                            "FAILED no such project, or the project is already finalised" : "FAILED no such project");
+
+                } catch(SQLException e){
+
+                    connection.rollback(savepoint);
+                    results.add("FAILED " + e.getMessage());
+
+                }
+            }
+
+            connection.commit();
+
+            // The changes are only announced once they have been committed.
+            events.forEach(ProjectEventBus::publish);
+
+        } catch(SQLException e){
+
+            connection.rollback();
+            results.clear();
+            for(int i = 0; i < group.size(); i++){
+                results.add("FAILED the group could not be saved: " + e.getMessage());
+            }
+            succeeded = 0;
+
+        } finally {
+            connection.setAutoCommit(true);
+        }
+
+        // The results are only printed once the group has been committed, so that no command is reported as saved
+        // when it was not.
+        for(int i = 0; i < group.size(); i++){
+            System.out.println("line " + group.get(i).lineNumber() + ": " + group.get(i).text() + " -> " +
+                    results.get(i));
+        }
+
+        return succeeded;
+    }
+
+    /**
+     * The parse() method turns a line of the file into a command.
+     * @param lineNumber the line of the file
+     * @param text the trimmed line
+     * @return the command, with an error instead of an operation if the line could not be read
+     */
+    static Command parse(int lineNumber, String text){
+
+        String[] words = text.split("\\s+", 4);
+
+        if(!COMMANDS.contains(words[0])){
+            return new Command(lineNumber, text, null, null, "unknown command '" + words[0] + "'");
+        }
+
+        try{
+
+            if(words.length < 3 && !words[0].equals("finalise") || words.length < 2){
+                return new Command(lineNumber, text, null, null, "missing project number or value");
+            }
+
+            int projectNumber = Integer.parseInt(words[1]);
+            String today = LocalDate.now().toString();
+
+            // Each command makes a change, and is announced by an event once the change has been saved.
+            SqlOperation operation;
+            ProjectEvent event;
+
+            switch (words[0]) {
+
+                // The payment is added to the ledger after checking that the project exists.
+                case "pay" -> {
+
+                    double amount = Double.parseDouble(words[2]);
+                    String payRef = PaymentLedger.newPaymentRef();
+                    String reference = words.length > 3 ? words[3] : null;
+
+                    operation = projectExists(projectNumber, "record payment for project ")
+                            .add(PaymentLedger.INSERT_PAYMENT, payRef, projectNumber, amount, today, reference);
+                    event = new ProjectEvent.PaymentRecorded(projectNumber, amount, payRef);
+                }
+                case "finalise" -> {
+
+                    operation = new SqlOperation("finalise project " + projectNumber)
+                            .addCompareAndSet(UPDATE_CURRENT + "finalised = 'Y', complete_date = ?, " +
+                                    "row_version = row_version + 1" + WHERE_CURRENT + " AND finalised = 'N'", today,
+                                    projectNumber);
+                    event = new ProjectEvent.Finalised(projectNumber, LocalDate.parse(today));
+                }
+                case "set-deadline" -> {
+
+                    LocalDate deadline = LocalDate.parse(words[2]);
+                    operation = new SqlOperation("update deadline of project " + projectNumber)
+                            .addCompareAndSet(UPDATE_CURRENT + "deadline = ?, row_version = row_version + 1" +
+                                    WHERE_CURRENT, deadline.toString(), projectNumber);
+                    event = new ProjectEvent.DeadlineChanged(projectNumber, deadline);
+                }
+                case "set-fee" -> {
+
+                    double fee = Double.parseDouble(words[2]);
+                    operation = new SqlOperation("update fee of project " + projectNumber)
+                            .addCompareAndSet(UPDATE_CURRENT + "total_fee = ?, total_owed = ? - total_paid, " +
+                                    "row_version = row_version + 1" + WHERE_CURRENT, fee, fee, projectNumber);
+                    event = new ProjectEvent.FeeChanged(projectNumber, fee);
+                }
+                default -> throw new IllegalStateException(words[0]);
+            }
+
+            return new Command(lineNumber, text, operation, event, null);
+
+        } catch(NumberFormatException | DateTimeParseException e){
+            return new Command(lineNumber, text, null, null, "invalid number or date");
+        }
+    }
+
+    /**
+     * The projectExists() method starts an operation with a statement that only succeeds if the project exists and
+     * has not been deleted or archived.
+     * @param projectNumber the number of the project
+     * @param description the description of the operation, without the project number
+     * @return the new operation
+     */
+    private static SqlOperation projectExists(int projectNumber, String description){
+
+        return new SqlOperation(description + projectNumber)
+                .addCompareAndSet(UPDATE_CURRENT + "row_version = row_version + 1" + WHERE_CURRENT, projectNumber);
+    }
+}
@@ -0,0 +1,102 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class is a Bloom filter: a set of strings held as bits, which can say that a string has definitely not been
+ * added, or that it might have been. It takes about ten bits for each string at a one percent false positive rate,
+ * however long the strings are. Strings cannot be removed, so a filter is built again to forget them.
+ */
+public class BloomFilter {
+
+    private static final int MAX_HASHES = 16;
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * The constructor creates an empty filter big enough for the given number of strings.
+     * @param expectedItems the number of strings expected to be added
+     * @param falsePositiveRate the chance of a string that was not added being reported as possibly added, once the
+     *                          expected number of strings have been added
+     */
+    public BloomFilter(long expectedItems, double falsePositiveRate){
+
+        long items = Math.max(expectedItems, 1);
+        double rate = Math.min(Math.max(falsePositiveRate, 1e-9), 0.5);
+
+        long wanted = (long) Math.ceil(-items * Math.log(rate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min((Math.max(wanted, 64) + 63) / 64, Integer.MAX_VALUE - 8);
+
+        bits = new long[words];
+        bitCount = (long) words * 64;
+        hashCount = (int) Math.max(1, Math.min(MAX_HASHES, Math.round((double) bitCount / items * Math.log(2))));
+
+    }
+
+    /**
+     * The add() method adds a string to the filter.
+     * @param key the string
+     */
+    public synchronized void add(String key){
+
+        long hash = hash(key);
+        for(int i = 0; i < hashCount; i++){
+
+            long bit = bitFor(hash, i);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+
+        }
+    }
+
+    /**
+     * The mightContain() method checks whether a string might have been added to the filter.
+     * @param key the string
+     * @return false if the string has definitely not been added, or true if it might have been
+     */
+    public synchronized boolean mightContain(String key){
+
+        long hash = hash(key);
+        for(int i = 0; i < hashCount; i++){
+
+            long bit = bitFor(hash, i);
+            if((bits[(int) (bit >>> 6)] & (1L << bit)) == 0){
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * The bitFor() method finds the bit set by one of the hash functions, each made by combining the two halves of
+     * one 64-bit hash.
+     * @param hash the 64-bit hash of the string
+     * @param i the number of the hash function
+     * @return the position of the bit
+     */
+    private long bitFor(long hash, int i){
+        return Math.floorMod((hash >>> 32) + i * (long) (int) hash, bitCount);
+    }
+
+    /**
+     * The hash() method works out a 64-bit hash of a string's UTF-8 bytes, with FNV-1a followed by the final mixing
+     * step of MurmurHash3 so that every bit of the result depends on every byte.
+     * @param key the string
+     * @return the hash
+     */
+    private static long hash(String key){
+
+        long hash = 0xcbf29ce484222325L;
+        for(byte b : key.getBytes(StandardCharsets.UTF_8)){
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb93fe53e49a3L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+}
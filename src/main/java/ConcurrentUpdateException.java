@@ -0,0 +1,18 @@
+import java.sql.SQLException;
+
+/**
+ * This exception is thrown when a change to a project could not be saved because the project was changed by someone
+ * else after it was loaded. The row version of the project no longer matches the version the change was based on.
+ */
+public class ConcurrentUpdateException extends SQLException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The constructor for the ConcurrentUpdateException class creates the exception with a message about the change.
+     * @param description the description of the change that could not be saved
+     */
+    ConcurrentUpdateException(String description){
+        super("Could not " + description + " because the project was changed by someone else.");
+    }
+}
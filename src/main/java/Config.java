@@ -0,0 +1,189 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class reads the program's settings, so that a deployment can be set up and tuned without rebuilding the
+ * program. Each setting has a name such as poised.poolMax, and is looked for in turn:
+ * <ol>
+ *     <li>as a system property, e.g. -Dpoised.poolMax=16</li>
+ *     <li>as an environment variable, named in capitals with underscores between the words, e.g. POISED_POOL_MAX</li>
+ *     <li>in the properties file {@value #CONFIG_FILE} in the working directory, or the file named by the
+ *     poised.config system property or the POISED_CONFIG environment variable</li>
+ * </ol>
+ * and if it is not found, or cannot be read as the type asked for, its default is used.
+ * <p>
+ * The properties file is read again when it changes, checked at most once every {@value #RELOAD_CHECK_MILLIS} ms, so
+ * settings read each time they are used, such as batch sizes and how long to wait for a connection, take effect
+ * without restarting the program. Settings needed on every statement, such as the fetch size and the slow query
+ * threshold, are kept in fields by the classes that use them, which register with onReload() to read them again when
+ * the file changes. Settings used to set up something when the program starts, such as the intervals of the
+ * background jobs, the size of the connection pools and the database credentials of connections already open, take
+ * effect at the next start.
+ */
+public class Config {
+
+    public static final String CONFIG_FILE = "poised.properties";
+    private static final long RELOAD_CHECK_MILLIS = 1000;
+
+    private static final Map<String, String> ENVIRONMENT = System.getenv();
+    private static volatile Properties fileSettings = new Properties();
+    // The modification time of the properties file when it was last read, or -1 if it was missing.
+    private static long loadedModified = -1;
+    private static long lastChecked;
+    private static final List<Runnable> RELOAD_LISTENERS = new CopyOnWriteArrayList<>();
+    private static ScheduledExecutorService watcher;
+
+    /**
+     * Gets a setting as a string
+     * @param name the name of the setting
+     * @param defaultValue the value used if the setting is not set
+     * @return the setting's value
+     */
+    public static String getString(String name, String defaultValue){
+
+        String value = System.getProperty(name);
+        if(value == null){
+            value = ENVIRONMENT.get(environmentName(name));
+        }
+        if(value == null){
+            value = currentFileSettings().getProperty(name);
+        }
+
+        return value == null ? defaultValue : value.trim();
+    }
+
+    /**
+     * Gets a setting as a whole number
+     * @param name the name of the setting
+     * @param defaultValue the value used if the setting is not set or is not a whole number
+     * @return the setting's value
+     */
+    public static long getLong(String name, long defaultValue){
+
+        try{
+            return Long.parseLong(getString(name, Long.toString(defaultValue)));
+        } catch(NumberFormatException e){
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Gets a setting as a whole number that fits in an int
+     * @param name the name of the setting
+     * @param defaultValue the value used if the setting is not set or is not a whole number
+     * @return the setting's value
+     */
+    public static int getInt(String name, int defaultValue){
+
+        long value = getLong(name, defaultValue);
+        return value == (int) value ? (int) value : defaultValue;
+    }
+
+    /**
+     * Gets a setting as a decimal number
+     * @param name the name of the setting
+     * @param defaultValue the value used if the setting is not set or is not a number
+     * @return the setting's value
+     */
+    public static double getDouble(String name, double defaultValue){
+
+        try{
+            return Double.parseDouble(getString(name, Double.toString(defaultValue)));
+        } catch(NumberFormatException e){
+            return defaultValue;
+        }
+    }
+
+    /**
+     * The onReload() method registers a listener that is run each time the properties file is read again, so that a
+     * setting kept in a field rather than read on every use still takes effect without restarting the program. Once
+     * a listener is registered, the file is checked for changes in the background.
+     * @param listener the listener, which reads the settings it keeps again
+     */
+    public static synchronized void onReload(Runnable listener){
+
+        RELOAD_LISTENERS.add(listener);
+
+        if(watcher == null){
+
+            watcher = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "poised-config");
+                thread.setDaemon(true);
+                return thread;
+            });
+            watcher.scheduleWithFixedDelay(Config::currentFileSettings, RELOAD_CHECK_MILLIS, RELOAD_CHECK_MILLIS,
+                    TimeUnit.MILLISECONDS);
+
+        }
+    }
+
+    /**
+     * The environmentName() method turns the name of a setting into the name of its environment variable, e.g.
+     * poised.poolMax into POISED_POOL_MAX.
+     * @param name the name of the setting
+     * @return the name of the environment variable
+     */
+    static String environmentName(String name){
+        return name.replaceAll("([a-z0-9])([A-Z])", "$1_$2").replace('.', '_').toUpperCase();
+    }
+
+    /**
+     * The currentFileSettings() method returns the settings in the properties file, reading the file again if it has
+     * changed since it was last read.
+     * @return the settings in the file, which are empty if there is no file
+     */
+    private static Properties currentFileSettings(){
+
+        boolean reloaded = false;
+
+        synchronized(Config.class){
+
+            long now = System.currentTimeMillis();
+            if(now - lastChecked < RELOAD_CHECK_MILLIS && lastChecked != 0){
+                return fileSettings;
+            }
+            lastChecked = now;
+
+            String location = System.getProperty("poised.config", ENVIRONMENT.getOrDefault("POISED_CONFIG",
+                    CONFIG_FILE));
+            Path file = Path.of(location);
+
+            try{
+
+                long modified = Files.exists(file) ? Files.getLastModifiedTime(file).toMillis() : -1;
+                if(modified != loadedModified){
+
+                    Properties loaded = new Properties();
+                    if(modified != -1){
+                        try(InputStream input = Files.newInputStream(file)){
+                            loaded.load(input);
+                        }
+                    }
+                    fileSettings = loaded;
+                    loadedModified = modified;
+                    reloaded = true;
+
+                }
+
+            } catch(IOException e){
+                // The settings last read are kept until the file can be read again.
+            }
+        }
+
+        // The listeners are run outside the lock, as they read settings themselves.
+        if(reloaded){
+            RELOAD_LISTENERS.forEach(Runnable::run);
+        }
+
+        return fileSettings;
+    }
+}
@@ -0,0 +1,100 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.InputMismatchException;
+
+/**
+ * This class reads the user's input one line at a time. Every menu and prompt in the program reads from the same
+ * buffered reader, so input piped in from a script is never lost in a buffer that is thrown away, and System.in is
+ * never closed.
+ * <p>
+ * When the input is not a terminal, for example when a script of commands is piped in, the program's output is
+ * buffered as well and only written in large blocks, so that thousands of commands run at full speed. When the end
+ * of the input is reached, the program exits as if the user had entered 'exit'.
+ */
+public class ConsoleInput {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final boolean INTERACTIVE = System.console() != null;
+    private static final BufferedReader READER = new BufferedReader(new InputStreamReader(System.in), BUFFER_SIZE);
+
+    static {
+
+        if(!INTERACTIVE){
+
+            PrintStream bufferedOut = new PrintStream(new BufferedOutputStream(
+                    new FileOutputStream(FileDescriptor.out), BUFFER_SIZE), false);
+            System.setOut(bufferedOut);
+            Runtime.getRuntime().addShutdownHook(new Thread(bufferedOut::flush));
+
+        }
+    }
+
+    /**
+     * The readLine() method reads the next line of input. Any output waiting in the buffer is written first, so the
+     * user always sees the prompt they are answering.
+     * @return the line, without the line break
+     */
+    public static String readLine(){
+
+        // A script's prompts do not need to be seen before each line is read.
+        if(INTERACTIVE){
+            System.out.flush();
+        }
+
+        try{
+
+            String line = READER.readLine();
+            if(line != null){
+                return line;
+            }
+
+        } catch(IOException e){
+            // Input that cannot be read is treated as the end of the input.
+        }
+
+        // Changes already saved are in the database or the journals, and the queues are closed by their shutdown
+        // hooks, so the program can exit straight away.
+        System.out.println("Goodbye!");
+        System.out.flush();
+        System.exit(0);
+
+        return null;
+    }
+
+    /**
+     * The readInt() method reads the next line of input as a whole number.
+     * @return the number
+     * @throws InputMismatchException if the line is not a whole number
+     */
+    public static int readInt(){
+
+        String line = readLine();
+
+        try{
+            return Integer.parseInt(line.trim());
+        } catch(NumberFormatException e){
+            throw new InputMismatchException(line);
+        }
+    }
+
+    /**
+     * The readDouble() method reads the next line of input as a number, which may have a decimal point.
+     * @return the number
+     * @throws InputMismatchException if the line is not a number
+     */
+    public static double readDouble(){
+
+        String line = readLine();
+
+        try{
+            return Double.parseDouble(line.trim());
+        } catch(NumberFormatException e){
+            throw new InputMismatchException(line);
+        }
+    }
+}
@@ -0,0 +1,485 @@
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * This class opens connections to the PoisedPMS database. Every part of the program gets its connections from here,
+ * so that each connection and the statements run on it are measured by QueryMetrics.
+ * <p>
+ * One deployment can host several firms, called tenants, each with its own schema: the default tenant uses the
+ * poisedpms schema, and any other tenant the schema poisedpms_ followed by its ID. The program does not create a
+ * schema: a new tenant's schema is set up by the administrator with the same tables as poisedpms before the program
+ * is run for it, and SchemaUpdates then keeps it up to date along with the others. The program works for the tenant
+ * chosen when it starts, and background work that covers every tenant named in the poised.tenants setting runs each
+ * tenant in turn with forEachTenant(). The files the program keeps for the default tenant are in the working
+ * directory, and those of any other tenant in its own directory under tenants, so no tenant's data is mixed with
+ * another's.
+ * <p>
+ * Connections are pooled separately for each tenant, so a busy tenant cannot take the connections of the others and
+ * a connection is never handed to a different tenant. Each tenant keeps up to poised.poolIdle idle connections (4 by
+ * default) and has at most poised.poolMax connections open (8 by default, read when the tenant's first connection is
+ * opened). A caller that finds them all in use waits up to poised.poolWaitMillis milliseconds (5000 by default) for
+ * one to be closed.
+ * <p>
+ * The server and credentials are set by poised.databaseUrl, poised.databaseUser and poised.databasePassword. If
+ * poised.fetchSize is set, it is passed to the driver on every statement, as the number of rows to fetch at a time.
+ * Statements that only read can be sent to a replica instead, through getReadConnection().
+ */
+public class Database {
+
+    public static final String DEFAULT_TENANT = "default";
+    private static final String DEFAULT_SCHEMA = "poisedpms";
+    private static final Pattern TENANT_ID = Pattern.compile("[a-z][a-z0-9_]{0,31}");
+    private static final String DEFAULT_URL = "jdbc:mysql://localhost:3306/poisedpms?useSSL=false";
+    // An idle connection is checked before it is handed out again if it has not been used for this long.
+    private static final long VALIDATE_AFTER_MILLIS = 30000;
+
+    private static final Map<String, Pool> POOLS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<String> BOUND_TENANT = new ThreadLocal<>();
+    private static volatile String tenant = DEFAULT_TENANT;
+    // Read once rather than on every call made on a connection, and read again when the properties file changes.
+    private static volatile int fetchSize = Config.getInt("poised.fetchSize", 0);
+
+    static {
+        Config.onReload(() -> fetchSize = Config.getInt("poised.fetchSize", 0));
+    }
+
+    /**
+     * This interface is implemented by work done for one tenant at a time.
+     */
+    @FunctionalInterface
+    public interface TenantTask {
+
+        /**
+         * Does the work for one tenant, whose connections are returned by getConnection() while it runs
+         * @param tenant the tenant's ID
+         * @throws SQLException if the work failed
+         */
+        void run(String tenant) throws SQLException;
+    }
+
+    /**
+     * This class holds a connection waiting in a pool, and the time it was returned.
+     * @param connection the connection
+     * @param returnedAt the time it was returned, from System.currentTimeMillis()
+     */
+    private record Idle(Connection connection, long returnedAt) {
+    }
+
+    /**
+     * This class holds the connections of one tenant to the primary database or to one of its replicas.
+     */
+    private static class Pool {
+
+        final String tenant;
+        final String schema;
+        // The URL of the replica, or null for the primary, whose URL is read from the settings.
+        final String url;
+        final BlockingQueue<Idle> idle = new LinkedBlockingQueue<>();
+        final int maxConnections = Config.getInt("poised.poolMax", 8);
+        // One permit for each connection that may still be handed out.
+        final Semaphore permits = new Semaphore(maxConnections);
+
+        Pool(String tenant, String url){
+
+            this.tenant = tenant;
+            schema = tenant.equals(DEFAULT_TENANT) ? DEFAULT_SCHEMA : DEFAULT_SCHEMA + "_" + tenant;
+            this.url = url;
+
+        }
+    }
+
+    /**
+     * The setTenant() method chooses the tenant the program works for, and creates its directory if needed.
+     * @param id the tenant's ID
+     * @throws IllegalArgumentException if the ID is not lower case letters, digits and underscores starting with a
+     *                                  letter
+     * @throws IOException if the tenant's directory could not be created
+     */
+    public static void setTenant(String id) throws IOException {
+
+        checkTenant(id);
+        if(!id.equals(DEFAULT_TENANT)){
+            Files.createDirectories(Path.of("tenants", id));
+        }
+        tenant = id;
+
+    }
+
+    /**
+     * Gets the tenant that connections are currently opened for
+     * @return the tenant bound by forEachTenant() on this thread, or else the tenant the program works for
+     */
+    public static String getTenant(){
+
+        String bound = BOUND_TENANT.get();
+        return bound != null ? bound : tenant;
+    }
+
+    /**
+     * The tenantFile() method finds where a file the program keeps is stored for the tenant returned by getTenant(),
+     * so that work done for a tenant bound by forEachTenant() keeps its files with that tenant's.
+     * @param name the name of the file
+     * @return the file in the working directory for the default tenant, or else in the tenant's directory
+     */
+    public static Path tenantFile(String name){
+
+        String id = getTenant();
+        return id.equals(DEFAULT_TENANT) ? Path.of(name) : Path.of("tenants", id, name);
+    }
+
+    /**
+     * The forEachTenant() method runs a task for every tenant named in the poised.tenants setting, or only
+     * for the tenant the program works for if it is not set. A tenant whose task fails does not stop the others.
+     * @param task the task
+     * @throws SQLException the first failure, once every tenant has been run
+     */
+    public static void forEachTenant(TenantTask task) throws SQLException {
+
+        String hosted = Config.getString("poised.tenants", null);
+        List<String> tenants = hosted == null ? List.of(tenant) : List.of(hosted.trim().split("\\s*,\\s*"));
+
+        SQLException failure = null;
+        for(String id : tenants){
+
+            checkTenant(id);
+            BOUND_TENANT.set(id);
+
+            try{
+                task.run(id);
+            } catch(SQLException e){
+                if(failure == null){
+                    failure = e;
+                }
+            } finally{
+                BOUND_TENANT.remove();
+            }
+        }
+
+        if(failure != null){
+            throw failure;
+        }
+    }
+
+    /**
+     * The callAs() method runs a task on the current thread with getConnection() returning connections for the given
+     * tenant, such as a task handed to another thread by work being done for that tenant.
+     * @param id the tenant's ID
+     * @param task the task
+     * @param <T> the type of the task's result
+     * @return the task's result
+     * @throws Exception if the task failed
+     */
+    static <T> T callAs(String id, Callable<T> task) throws Exception {
+
+        String previous = BOUND_TENANT.get();
+        BOUND_TENANT.set(id);
+
+        try{
+            return task.call();
+        } finally{
+            BOUND_TENANT.set(previous);
+        }
+    }
+
+    /**
+     * The checkTenant() method checks that a tenant ID can be used in a schema and directory name.
+     * @param id the tenant's ID
+     * @throws IllegalArgumentException if the ID is not valid
+     */
+    private static void checkTenant(String id){
+
+        if(!TENANT_ID.matcher(id).matches()){
+            throw new IllegalArgumentException("\"" + id + "\" is not a valid tenant ID.");
+        }
+    }
+
+    /**
+     * The getConnection() method takes a connection to the current tenant's schema on the primary database from its
+     * pool, or opens a new one, and records how long it took.
+     * @return a connection, which the caller must close to return it to the pool
+     * @throws SQLException if the database could not be reached, or every connection of the tenant stayed in use
+     */
+    public static Connection getConnection() throws SQLException {
+        return open(POOLS.computeIfAbsent(getTenant(), id -> new Pool(id, null)));
+    }
+
+    /**
+     * The getReadConnection() method returns a connection for statements that only read, which ReadReplicas sends to
+     * a replica of the database when one is set up and can be used.
+     * @return a connection, which the caller must close to return it to the pool
+     * @throws SQLException if no database could be reached
+     */
+    public static Connection getReadConnection() throws SQLException {
+        return ReadReplicas.getConnection();
+    }
+
+    /**
+     * The getConnection() method takes a connection to the current tenant's schema on a replica from its pool, or
+     * opens a new one. Each replica has its own pools.
+     * @param replicaUrl the URL of the replica
+     * @return a connection, which the caller must close to return it to the pool
+     * @throws SQLException if the replica could not be reached, or every connection to it stayed in use
+     */
+    static Connection getConnection(String replicaUrl) throws SQLException {
+
+        String tenantId = getTenant();
+        return open(POOLS.computeIfAbsent(tenantId + "@" + replicaUrl, key -> new Pool(tenantId, replicaUrl)));
+    }
+
+    /**
+     * The open() method takes a connection from a pool, or opens a new one, and records how long it took.
+     * @param pool the pool
+     * @return a connection, which the caller must close to return it to the pool
+     * @throws SQLException if the database could not be reached, or every connection of the pool stayed in use
+     */
+    private static Connection open(Pool pool) throws SQLException {
+
+        long start = System.nanoTime();
+
+        try{
+
+            if(!pool.permits.tryAcquire(Config.getLong("poised.poolWaitMillis", 5000), TimeUnit.MILLISECONDS)){
+                throw new SQLException("All " + pool.maxConnections + " connections of tenant " + getTenant() +
+                        " are in use.");
+            }
+
+        } catch(InterruptedException e){
+
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection.", e);
+
+        }
+
+        try{
+
+            Connection connection = takeIdle(pool);
+            if(connection == null){
+
+                String url = pool.url != null ? pool.url : Config.getString("poised.databaseUrl", DEFAULT_URL);
+                connection = DriverManager.getConnection(url,
+                        Config.getString("poised.databaseUser", "admin"),
+                        Config.getString("poised.databasePassword", "adm1n"));
+                connection.setCatalog(pool.schema);
+                connection = QueryMetrics.instrument(connection);
+
+            }
+            QueryMetrics.recordConnection(System.nanoTime() - start);
+
+            return pooled(pool, connection);
+
+        } catch(SQLException e){
+
+            pool.permits.release();
+            QueryMetrics.recordConnectionFailure(e);
+            throw e;
+
+        }
+    }
+
+    /**
+     * The takeIdle() method takes an idle connection from a pool, closing any that have stopped working.
+     * @param pool the pool
+     * @return an open connection, or null if the pool has none
+     */
+    private static Connection takeIdle(Pool pool){
+
+        Idle idle;
+        while((idle = pool.idle.poll()) != null){
+
+            if(System.currentTimeMillis() - idle.returnedAt() < VALIDATE_AFTER_MILLIS){
+                return idle.connection();
+            }
+
+            try{
+
+                if(idle.connection().isValid(2)){
+                    return idle.connection();
+                }
+                idle.connection().close();
+
+            } catch(SQLException e){
+                // The connection is dropped, and the next one is tried.
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * The pooled() method wraps a connection so that closing it returns it to the pool. A connection left in a
+     * transaction is rolled back first, and one that can no longer be used, or that the pool has no room for, is
+     * closed. Once closed, the wrapper cannot be used again. The statements created on a connection to the primary
+     * are wrapped as well, so that every change made through them is recorded with ReadReplicas once it is committed.
+     * @param pool the pool the connection belongs to
+     * @param connection the connection
+     * @return the wrapped connection
+     */
+    private static Connection pooled(Pool pool, Connection connection){
+
+        boolean[] closed = {false};
+        // Whether a statement has changed rows in the transaction that is open, which commit() makes visible.
+        boolean[] wrote = {false};
+
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+
+            switch(method.getName()){
+
+                case "close" -> {
+
+                    if(!closed[0]){
+                        closed[0] = true;
+                        release(pool, connection);
+                    }
+                    return null;
+
+                }
+                case "isClosed" -> {
+                    return closed[0] || connection.isClosed();
+                }
+                default -> {
+
+                    if(closed[0]){
+                        throw new SQLException("The connection has been closed.");
+                    }
+
+                }
+            }
+
+            Object result;
+            try{
+                result = method.invoke(connection, args);
+            } catch(InvocationTargetException e){
+                throw e.getCause();
+            }
+
+            // Reads made soon after a change are sent to the primary, where the change is certain to be seen. Turning
+            // autocommit back on commits the open transaction, and a rollback leaves nothing to record.
+            switch(method.getName()){
+
+                case "commit", "setAutoCommit" -> {
+
+                    if(wrote[0] && (args == null || Boolean.TRUE.equals(args[0]))){
+                        wrote[0] = false;
+                        ReadReplicas.recordWrite(pool.tenant);
+                    }
+
+                }
+                case "rollback" -> {
+
+                    // Rolling back to a savepoint may keep changes made before it.
+                    if(args == null){
+                        wrote[0] = false;
+                    }
+
+                }
+                default -> {
+                }
+            }
+
+            if(result instanceof Statement statement){
+
+                if(fetchSize != 0){
+                    statement.setFetchSize(fetchSize);
+                }
+                if(pool.url == null){
+                    return recordingWrites(pool, connection, statement, wrote);
+                }
+
+            }
+
+            return result;
+        });
+    }
+
+    /**
+     * The recordingWrites() method wraps a statement on the primary so that a change it makes is noted. A change
+     * made in autocommit mode, which is committed without commit() being called, is recorded with ReadReplicas
+     * straight away, and one made in a transaction is recorded by the connection when the transaction is committed.
+     * @param pool the pool the connection belongs to
+     * @param connection the connection the statement was created on
+     * @param statement the statement
+     * @param wrote the flag set when a change is made in a transaction
+     * @return the wrapped statement, which has the same JDBC interface
+     */
+    private static Statement recordingWrites(Pool pool, Connection connection, Statement statement, boolean[] wrote){
+
+        Class<?> type = statement instanceof CallableStatement ? CallableStatement.class :
+                statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+
+        return (Statement) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+                (proxy, method, args) -> {
+
+            Object result;
+            try{
+                result = method.invoke(statement, args);
+            } catch(InvocationTargetException e){
+                throw e.getCause();
+            }
+
+            // execute() returns false when the statement changed rows rather than returning them.
+            boolean changed = switch(method.getName()){
+                case "executeUpdate", "executeLargeUpdate", "executeBatch", "executeLargeBatch" -> true;
+                case "execute" -> Boolean.FALSE.equals(result);
+                default -> false;
+            };
+            if(changed && connection.getAutoCommit()){
+                ReadReplicas.recordWrite(pool.tenant);
+            } else if(changed){
+                wrote[0] = true;
+            }
+
+            return result;
+        });
+    }
+
+    /**
+     * The release() method returns a connection to its pool.
+     * @param pool the pool
+     * @param connection the connection
+     */
+    private static void release(Pool pool, Connection connection){
+
+        try{
+
+            if(!connection.getAutoCommit()){
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            if(pool.idle.size() < Config.getInt("poised.poolIdle", 4)){
+                pool.idle.add(new Idle(connection, System.currentTimeMillis()));
+            } else {
+                connection.close();
+            }
+
+        } catch(SQLException e){
+
+            try{
+                connection.close();
+            } catch(SQLException ignored){
+                // The connection is dropped either way.
+            }
+
+        } finally{
+            pool.permits.release();
+        }
+    }
+}
@@ -0,0 +1,379 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class sends reminders about the deadlines of projects that are not finalised, without anyone having to run the
+ * overdue view. A reminder is written poised.reminderDays days (7 by default) before a project's deadline, and another
+ * on the deadline itself, to the outbox file {@value #OUTBOX_FILE}, which the mailer reads.
+ * <p>
+ * The reminders of every open project are loaded from the ProjectSnapshot into a TimerWheel counting in days, so
+ * adding, moving or cancelling a reminder takes the same time however many projects there are, and each day only the
+ * reminders due that day are looked at. The reminders are kept up to date from the events on the ProjectEventBus as
+ * projects are added, renamed, have their deadlines changed, or are finalised, deleted or archived.
+ * <p>
+ * Reminders are sent by the one copy of the program started with --reminders, on the computer the mailer reads the
+ * outbox on. The wheel is checked every poised.reminderCheckSeconds seconds (3600 by default), and before each check
+ * the open projects are read from the database again, which picks up the changes made by other copies of the program.
+ * The last day whose reminders were written is kept in {@value #STATE_FILE}, so a restart does not write a day's
+ * reminders twice, and the days the program was not running are caught up when it starts again.
+ * <p>
+ * Each line of the outbox holds the day the reminder was written, its kind, and the project's number, name and
+ * deadline, separated by tabs.
+ */
+public class DeadlineReminders {
+
+    public static final String OUTBOX_FILE = "poised-reminders.outbox";
+    public static final String STATE_FILE = "poised-reminders.state";
+    private static final long CHECK_INTERVAL_SECONDS = Config.getLong("poised.reminderCheckSeconds", 3600);
+    private static final String SELECT_OPEN = "SELECT project_info.proj_num, proj_name, deadline FROM project_info " +
+            "INNER JOIN pay_complete ON project_info.proj_num = pay_complete.proj_num " +
+            "WHERE project_info.deleted = 'N' AND finalised = 'N' AND deadline >= ?";
+
+    /**
+     * The kinds of reminder.
+     */
+    enum Kind { UPCOMING, DUE }
+
+    /**
+     * This class holds a reminder waiting in the wheel.
+     * @param kind the kind of reminder
+     * @param projectNumber the number of the project
+     */
+    private record Reminder(Kind kind, int projectNumber) {
+    }
+
+    /**
+     * This class holds the reminders scheduled for one project.
+     */
+    private static class Scheduled {
+
+        String projectName;
+        LocalDate deadline;
+        TimerWheel.Timer<Reminder> upcoming;
+        TimerWheel.Timer<Reminder> due;
+
+        Scheduled(String projectName){
+            this.projectName = projectName;
+        }
+    }
+
+    private final Map<Integer, Scheduled> scheduled = new HashMap<>();
+    private final TimerWheel<Reminder> wheel;
+    // The first day whose reminders have not been written yet.
+    private long nextDay;
+    // The outbox lines of the reminders taken off the wheel but not written yet.
+    private final StringBuilder unsent = new StringBuilder();
+    // The projects finalised or deleted while the open projects are being loaded, which are not scheduled.
+    private Set<Integer> closedWhileLoading;
+    // The projects changed while the open projects are being read again, whose reminders are left as they are.
+    private Set<Integer> changedWhileLoading;
+
+    /**
+     * The constructor creates a wheel starting on the given day.
+     * @param firstDay the first day whose reminders are to be written
+     */
+    private DeadlineReminders(LocalDate firstDay){
+
+        nextDay = firstDay.toEpochDay();
+        wheel = new TimerWheel<>(nextDay);
+
+    }
+
+    /**
+     * The start() method loads the reminders of every open project, subscribes to the project events and starts
+     * writing the reminders in the background.
+     * @return the reminders
+     * @throws SQLException if the open projects could not be loaded
+     * @throws IOException if the last day written could not be read
+     */
+    public static DeadlineReminders start() throws SQLException, IOException {
+
+        Path state = Database.tenantFile(STATE_FILE);
+        LocalDate firstDay = Files.exists(state) ?
+                LocalDate.parse(Files.readString(state, StandardCharsets.UTF_8).trim()).plusDays(1) : LocalDate.now();
+
+        // The events are subscribed to first, so that no change saved while the projects are loading is missed.
+        DeadlineReminders reminders = new DeadlineReminders(firstDay);
+        ProjectEventBus.subscribe(reminders::apply);
+        reminders.load();
+
+        ScheduledExecutorService checker = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "poised-reminders");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(reminders::checkQuietly, 0, CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+        return reminders;
+    }
+
+    /**
+     * The load() method schedules the reminders of every open project in the ProjectSnapshot whose deadline has not
+     * passed before the first day to be written. Reminders that fell on days already written are not scheduled again.
+     * @throws SQLException if the snapshot could not be brought up to date with the database
+     */
+    private void load() throws SQLException {
+
+        synchronized(this){
+            closedWhileLoading = new HashSet<>();
+        }
+
+        try{
+
+            Collection<ProjectSnapshot.Row> rows = ProjectSnapshot.rows();
+
+            synchronized(this){
+                for(ProjectSnapshot.Row row : rows){
+
+                    if(!row.isCurrent() || row.finalised() || row.deadline().toEpochDay() < nextDay){
+                        continue;
+                    }
+
+                    // A project already scheduled from an event has a newer deadline than the one read here.
+                    if(scheduled.containsKey(row.projectNumber()) || closedWhileLoading.contains(row.projectNumber())){
+                        continue;
+                    }
+
+                    Scheduled project = new Scheduled(row.projectName());
+                    scheduled.put(row.projectNumber(), project);
+                    schedule(row.projectNumber(), project, row.deadline(), false);
+
+                }
+            }
+
+        } finally{
+
+            synchronized(this){
+                closedWhileLoading = null;
+            }
+        }
+    }
+
+    /**
+     * The reload() method reads the open projects from the database and brings the reminders up to date with them,
+     * adding the projects added by other copies of the program, moving the reminders of projects whose deadlines or
+     * names were changed, and cancelling those of projects that were finalised or deleted. A project changed in this
+     * program while the projects are being read is left as its events set it.
+     * @throws SQLException if the database could not be read
+     */
+    private void reload() throws SQLException {
+
+        synchronized(this){
+            changedWhileLoading = new HashSet<>();
+        }
+
+        try{
+
+            Map<Integer, Scheduled> open = new HashMap<>();
+
+            try(Connection connection = Database.getReadConnection();
+                PreparedStatement statement = connection.prepareStatement(SELECT_OPEN)){
+
+                synchronized(this){
+                    statement.setString(1, LocalDate.ofEpochDay(nextDay).toString());
+                }
+
+                try(ResultSet rows = statement.executeQuery()){
+                    while(rows.next()){
+
+                        Scheduled project = new Scheduled(rows.getString("proj_name"));
+                        project.deadline = Poised.formatDate(rows.getString("deadline"));
+                        open.put(rows.getInt("proj_num"), project);
+
+                    }
+                }
+            }
+
+            synchronized(this){
+
+                scheduled.entrySet().removeIf(entry -> {
+
+                    if(open.containsKey(entry.getKey()) || changedWhileLoading.contains(entry.getKey())){
+                        return false;
+                    }
+                    wheel.cancel(entry.getValue().upcoming);
+                    wheel.cancel(entry.getValue().due);
+                    return true;
+
+                });
+
+                for(Map.Entry<Integer, Scheduled> entry : open.entrySet()){
+
+                    int projectNumber = entry.getKey();
+                    if(changedWhileLoading.contains(projectNumber)){
+                        continue;
+                    }
+
+                    Scheduled project = scheduled.get(projectNumber);
+                    if(project == null){
+
+                        project = new Scheduled(entry.getValue().projectName);
+                        scheduled.put(projectNumber, project);
+                        schedule(projectNumber, project, entry.getValue().deadline, true);
+
+                    } else {
+
+                        project.projectName = entry.getValue().projectName;
+                        if(!entry.getValue().deadline.equals(project.deadline)){
+                            schedule(projectNumber, project, entry.getValue().deadline, true);
+                        }
+                    }
+                }
+            }
+
+        } finally{
+
+            synchronized(this){
+                changedWhileLoading = null;
+            }
+        }
+    }
+
+    /**
+     * The schedule() method sets a project's reminders for its deadline, cancelling any it already had.
+     * @param projectNumber the number of the project
+     * @param project the project's reminders
+     * @param deadline the project's deadline
+     * @param late true if an upcoming reminder whose day has already been written should be written on the next day
+     *             instead, as for a project just given a deadline close at hand
+     */
+    private void schedule(int projectNumber, Scheduled project, LocalDate deadline, boolean late){
+
+        wheel.cancel(project.upcoming);
+        wheel.cancel(project.due);
+        project.upcoming = null;
+        project.due = null;
+        project.deadline = deadline;
+
+        long dueDay = deadline.toEpochDay();
+        if(dueDay < nextDay){
+            return;
+        }
+
+        long upcomingDay = dueDay - Config.getLong("poised.reminderDays", 7);
+        if(upcomingDay < dueDay && (upcomingDay >= nextDay || late)){
+            project.upcoming = wheel.schedule(upcomingDay, new Reminder(Kind.UPCOMING, projectNumber));
+        }
+        project.due = wheel.schedule(dueDay, new Reminder(Kind.DUE, projectNumber));
+
+    }
+
+    /**
+     * The apply() method updates the reminders from a batch of events.
+     * @param events the events, in the order they were published
+     */
+    private synchronized void apply(List<ProjectEvent> events){
+
+        for(ProjectEvent event : events){
+
+            int projectNumber = event.projectNumber();
+            if(changedWhileLoading != null){
+                changedWhileLoading.add(projectNumber);
+            }
+
+            if(event instanceof ProjectEvent.Created created){
+
+                Scheduled project = scheduled.computeIfAbsent(projectNumber,
+                        number -> new Scheduled(created.projectName()));
+                schedule(projectNumber, project, created.deadline(), true);
+
+            } else if(event instanceof ProjectEvent.DeadlineChanged changed){
+
+                // A project that is not in the wheel was finalised, or added by another copy of the program.
+                Scheduled project = scheduled.get(projectNumber);
+                if(project != null){
+                    schedule(projectNumber, project, changed.deadline(), true);
+                }
+
+            } else if(event instanceof ProjectEvent.Renamed renamed){
+
+                Scheduled project = scheduled.get(projectNumber);
+                if(project != null){
+                    project.projectName = renamed.projectName();
+                }
+
+            } else if(event instanceof ProjectEvent.Finalised || event instanceof ProjectEvent.Deleted ||
+                    event instanceof ProjectEvent.Archived){
+
+                if(closedWhileLoading != null){
+                    closedWhileLoading.add(projectNumber);
+                }
+                Scheduled project = scheduled.remove(projectNumber);
+                if(project != null){
+                    wheel.cancel(project.upcoming);
+                    wheel.cancel(project.due);
+                }
+            }
+        }
+    }
+
+    /**
+     * The checkQuietly() method brings the reminders up to date with the database and writes the reminders due, from
+     * the background thread. If the database cannot be read, the reminders kept up to date from this program's
+     * events are written. If the outbox cannot be written, the reminders are written at the next check.
+     */
+    private void checkQuietly(){
+
+        try{
+            reload();
+        } catch(SQLException e){
+            // The changes made by other copies of the program are picked up at the next check.
+        }
+
+        try{
+            send();
+        } catch(IOException e){
+            // The days not written are caught up at the next check.
+        }
+    }
+
+    /**
+     * The send() method writes the reminders of every day up to today that has not been written yet. Each day's
+     * reminders are forced to disk before the day is recorded as written.
+     * @throws IOException if the outbox or the state file could not be written
+     */
+    public synchronized void send() throws IOException {
+
+        long today = LocalDate.now().toEpochDay();
+
+        while(nextDay <= today){
+
+            LocalDate day = LocalDate.ofEpochDay(nextDay);
+
+            // If the day was moved past before but its reminders could not be written, they are still waiting.
+            for(Reminder reminder : wheel.advance(nextDay)){
+
+                Scheduled project = scheduled.get(reminder.projectNumber());
+                unsent.append(day).append('\t').append(reminder.kind()).append('\t').append(reminder.projectNumber())
+                        .append('\t').append(project.projectName).append('\t').append(project.deadline).append('\n');
+
+            }
+
+            if(unsent.length() > 0){
+                Files.writeString(Database.tenantFile(OUTBOX_FILE), unsent, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+                unsent.setLength(0);
+            }
+            Files.writeString(Database.tenantFile(STATE_FILE), day.toString(), StandardCharsets.UTF_8);
+            nextDay++;
+
+        }
+    }
+}
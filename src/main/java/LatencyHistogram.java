@@ -0,0 +1,129 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class counts recorded latencies in buckets whose width grows with the value, in the same way as an
+ * HdrHistogram. Values below {@value #SUB_BUCKET_COUNT} are counted exactly, and larger values are counted in
+ * buckets that are at most 1/{@value #HALF_SUB_BUCKET_COUNT} of the value wide, so any percentile is accurate to
+ * within about 1.6%. Recording a value is a single atomic increment and never allocates, so the histogram can be
+ * shared by many threads.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_COUNT = 128;
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+    private static final int SUB_BUCKET_BITS = 6;
+    // Enough buckets for any positive long value.
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * HALF_SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalValue = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * The record() method adds a value to the histogram. Negative values are counted as zero.
+     * @param value the value to be recorded, e.g. a latency in microseconds
+     */
+    public void record(long value){
+
+        long recorded = Math.max(0, value);
+
+        counts.incrementAndGet(bucketIndex(recorded));
+        totalCount.incrementAndGet();
+        totalValue.addAndGet(recorded);
+        maxValue.accumulateAndGet(recorded, Math::max);
+
+    }
+
+    public long getCount(){
+        return totalCount.get();
+    }
+
+    public long getMax(){
+        return maxValue.get();
+    }
+
+    /**
+     * Gets the mean of the recorded values
+     * @return the mean, or 0 if nothing has been recorded
+     */
+    public double getMean(){
+
+        long count = totalCount.get();
+
+        return count == 0 ? 0 : (double) totalValue.get() / count;
+    }
+
+    /**
+     * The getPercentile() method finds the value below which the given percentage of the recorded values fall.
+     * @param percentile the percentile, from 0 to 100
+     * @return the highest value in the bucket holding the percentile, or 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile){
+
+        long count = totalCount.get();
+        if(count == 0){
+            return 0;
+        }
+
+        // The rank is the position of the percentile in the sorted values, counting from 1.
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+
+        for(int i = 0; i < BUCKET_COUNT; i++){
+
+            seen += counts.get(i);
+            if(seen >= rank){
+                return Math.min(highestValueInBucket(i), maxValue.get());
+            }
+        }
+
+        return maxValue.get();
+    }
+
+    /**
+     * The summary() method describes the histogram in one line.
+     * @param unit the unit of the recorded values, e.g. "us"
+     * @return a string with the count, mean, p50, p99, p99.9 and maximum
+     */
+    public String summary(String unit){
+
+        return String.format("count=%d mean=%.1f%s p50=%d%s p99=%d%s p99.9=%d%s max=%d%s", getCount(), getMean(),
+                unit, getPercentile(50), unit, getPercentile(99), unit, getPercentile(99.9), unit, getMax(), unit);
+    }
+
+    /**
+     * The bucketIndex() method finds the bucket a value is counted in.
+     * @param value a value of zero or more
+     * @return the index of the bucket
+     */
+    private static int bucketIndex(long value){
+
+        if(value < SUB_BUCKET_COUNT){
+            return (int) value;
+        }
+
+        // The value is shifted right until it falls between 64 and 127, and the shift picks the group of buckets.
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+
+        return shift * HALF_SUB_BUCKET_COUNT + (int) (value >>> shift);
+    }
+
+    /**
+     * The highestValueInBucket() method finds the largest value that is counted in a bucket.
+     * @param index the index of the bucket
+     * @return the largest value in the bucket
+     */
+    private static long highestValueInBucket(int index){
+
+        if(index < SUB_BUCKET_COUNT){
+            return index;
+        }
+
+        int shift = index / HALF_SUB_BUCKET_COUNT - 1;
+        long lowest = (long) (index - shift * HALF_SUB_BUCKET_COUNT) << shift;
+
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,401 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This program fills the database with synthetic projects and then runs a mix of the operations users perform,
+ * from several threads at once, through the same ProjectRepository the main program uses. When it finishes it prints
+ * the throughput and the latency percentiles of each kind of operation.
+ * <p>
+ * Options are given as --name=value: seed (42), projects to add before the run (1000), threads (8), seconds (60),
+ * mix, the relative weight of each operation, e.g. --mix=create:10,view:5,search:45,update:25,finalise:10,delete:5,
+ * and tenant, the tenant whose schema is used. The driver adds, changes and deletes projects, so it must be given a
+ * tenant other than the default one, and refuses to run against the firm's own projects.
+ * The same seed produces the same data and the same sequence of operations on each thread.
+ */
+public class LoadDriver {
+
+    /**
+     * The operations the driver performs, matching the options in the main program's menus.
+     */
+    enum Operation {
+        CREATE, VIEW, SEARCH, UPDATE, FINALISE, DELETE
+    }
+
+    private final long seed;
+    private final int projectCount;
+    private final int threadCount;
+    private final int seconds;
+    private final Map<Operation, Integer> weights;
+    private final LocalDate today = LocalDate.now();
+
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final LatencyHistogram allLatencies = new LatencyHistogram();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    // Projects from firstProjectNumber up to nextProjectNumber were added by the driver, apart from any numbers given
+    // to other users while it was running.
+    private int firstProjectNumber;
+    private final AtomicInteger nextProjectNumber = new AtomicInteger();
+    // Only projects created during the run are deleted, as seeded projects share their people with others.
+    private final Queue<Integer> createdProjects = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The constructor for the LoadDriver class sets the size and shape of the test.
+     * @param seed the seed of the synthetic data and the choice of operations
+     * @param projectCount the number of projects added before the run
+     * @param threadCount the number of threads performing operations
+     * @param seconds how long the run lasts
+     * @param weights the relative weight of each operation
+     */
+    LoadDriver(long seed, int projectCount, int threadCount, int seconds, Map<Operation, Integer> weights){
+
+        this.seed = seed;
+        this.projectCount = projectCount;
+        this.threadCount = threadCount;
+        this.seconds = seconds;
+        this.weights = weights;
+
+        for(Operation operation : Operation.values()){
+            latencies.put(operation, new LatencyHistogram());
+        }
+    }
+
+    public static void main(String[] args){
+
+        long seed = 42;
+        int projects = 1000;
+        int threads = 8;
+        int seconds = 60;
+        Map<Operation, Integer> weights = parseMix("create:10,view:5,search:45,update:25,finalise:10,delete:5");
+
+        try{
+
+            for(String arg : args){
+
+                String[] option = arg.replaceFirst("^--", "").split("=", 2);
+                if(option.length != 2){
+                    throw new IllegalArgumentException(arg);
+                }
+
+                switch (option[0]) {
+                    case "seed" -> seed = Long.parseLong(option[1]);
+                    case "projects" -> projects = Integer.parseInt(option[1]);
+                    case "threads" -> threads = Integer.parseInt(option[1]);
+                    case "seconds" -> seconds = Integer.parseInt(option[1]);
+                    case "mix" -> weights = parseMix(option[1]);
+                    case "tenant" -> Database.setTenant(option[1]);
+                    default -> throw new IllegalArgumentException(arg);
+                }
+            }
+
+        } catch(IllegalArgumentException e){
+
+            System.out.println("Unknown or invalid option: " + e.getMessage());
+            return;
+
+        } catch(IOException e){
+
+            System.out.println("Could not create the tenant's directory: " + e.getMessage());
+            return;
+
+        }
+
+        if(Database.getTenant().equals(Database.DEFAULT_TENANT)){
+
+            System.out.println("The load driver changes and deletes projects, so it needs a tenant of its own. " +
+                    "Give one other than " + Database.DEFAULT_TENANT + " with --tenant=<id>.");
+            return;
+
+        }
+
+        LoadDriver driver = new LoadDriver(seed, projects, threads, seconds, weights);
+
+        try{
+
+            SchemaUpdates.apply();
+            driver.addProjects();
+            driver.run();
+            driver.printReport();
+
+        } catch(SQLException e){
+            System.out.println("Could not connect to database: " + e.getMessage());
+        } catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The addProjects() method adds the synthetic projects, their people and their payments to the database.
+     * @throws SQLException if the database could not be reached or rejected a change
+     */
+    void addProjects() throws SQLException {
+
+        SyntheticData data = new SyntheticData(seed, today);
+        long start = System.nanoTime();
+
+        try(Connection connection = Database.getConnection()){
+
+            firstProjectNumber = ProjectRepository.allocateProjectNumbers(connection, projectCount);
+            nextProjectNumber.set(firstProjectNumber + projectCount);
+
+            // There are far fewer consultants than customers, so each architect or engineer works on many projects.
+            SqlOperation people = new SqlOperation("add synthetic people");
+            addPeople(people, data.createPeople(Person.Type.ARCHITECT, projectCount / 20 + 1));
+            addPeople(people, data.createPeople(Person.Type.CONTRACTOR, projectCount / 10 + 1));
+            addPeople(people, data.createPeople(Person.Type.CUSTOMER, projectCount / 2 + 1));
+            addPeople(people, data.createPeople(Person.Type.ENGINEER, projectCount / 20 + 1));
+            addPeople(people, data.createPeople(Person.Type.MANAGER, projectCount / 10 + 1));
+            people.execute(connection);
+
+            for(int i = 0; i < projectCount; i++){
+
+                Project project = data.nextProject(firstProjectNumber + i);
+                ProjectRepository.insertWithExistingPeople(project).execute(connection);
+
+                // The project is finalised before its payments, while its row version is still the one it was
+                // inserted with.
+                if(project.finalise){
+                    ProjectRepository.finalise(project).execute(connection);
+                }
+
+                for(double amount : data.nextPayments(project)){
+
+                    LocalDate payDate = today.minusDays(data.nextInt(180));
+                    PaymentLedger.recordPayment(PaymentLedger.newPaymentRef(), project.projectInfo.getProjectNumber(),
+                            amount, payDate, "Synthetic payment").execute(connection);
+
+                }
+            }
+        }
+
+        System.out.printf("Added %d projects in %.1f s%n", projectCount, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * The run() method starts the threads, waits for them to run for the set time, and records the latency of
+     * every operation they perform.
+     * @throws InterruptedException if the driver is interrupted while waiting for the threads
+     */
+    void run() throws InterruptedException {
+
+        long endTime = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Thread> threads = new ArrayList<>();
+
+        for(int i = 0; i < threadCount; i++){
+
+            // Each thread has its own generator, so its sequence of operations repeats with the same seed.
+            SyntheticData data = new SyntheticData(seed + 1 + i, today);
+            Thread thread = new Thread(() -> {
+
+                while(System.nanoTime() < endTime){
+                    perform(pickOperation(data), data);
+                }
+            }, "poised-load-" + i);
+
+            threads.add(thread);
+            thread.start();
+
+        }
+
+        for(Thread thread : threads){
+            thread.join();
+        }
+    }
+
+    /**
+     * The printReport() method prints the throughput, the latency percentiles of each operation, and the number of
+     * conflicts and errors.
+     */
+    void printReport(){
+
+        System.out.printf("%d threads for %d s: %d operations, %.1f operations/s, %d conflicts, %d errors%n",
+                threadCount, seconds, allLatencies.getCount(), (double) allLatencies.getCount() / seconds,
+                conflicts.sum(), errors.sum());
+        System.out.printf("%-9s %s%n", "all", allLatencies.summary("us"));
+
+        for(Operation operation : Operation.values()){
+
+            LatencyHistogram histogram = latencies.get(operation);
+            if(histogram.getCount() > 0){
+                System.out.printf("%-9s %s%n", operation.name().toLowerCase(), histogram.summary("us"));
+            }
+        }
+    }
+
+    /**
+     * The perform() method performs one operation on its own connection and records how long it took.
+     * @param operation the operation to perform
+     * @param data the thread's generator
+     */
+    private void perform(Operation operation, SyntheticData data){
+
+        long start = System.nanoTime();
+
+        try(Connection connection = Database.getConnection()){
+
+            switch (operation) {
+                case CREATE -> {
+
+                    int projectNumber = ProjectRepository.allocateProjectNumbers(connection, 1);
+                    ProjectRepository.insert(data.nextProjectWithNewPeople(projectNumber)).execute(connection);
+                    createdProjects.add(projectNumber);
+                    nextProjectNumber.accumulateAndGet(projectNumber + 1, Math::max);
+
+                }
+                case VIEW -> {
+
+                    switch (data.nextInt(3)) {
+                        case 0 -> ProjectRepository.findAll(connection);
+                        case 1 -> ProjectRepository.findIncomplete(connection);
+                        default -> ProjectRepository.findOverdue(connection, today);
+                    }
+                }
+                // The search is made as the main program makes it, matching the text as a number or a name.
+                case SEARCH -> {
+
+                    String searchString = String.valueOf(randomProjectNumber(data));
+                    ProjectRepository.findByNumberOrName(connection, Integer.parseInt(searchString), searchString);
+
+                }
+                case UPDATE -> {
+
+                    Project project = ProjectRepository.findByNumber(connection, randomProjectNumber(data));
+                    if(project == null){
+                        break;
+                    }
+
+                    // Half the updates record a payment and half change the building address.
+                    if(data.nextInt(2) == 0){
+                        PaymentLedger.recordPayment(PaymentLedger.newPaymentRef(),
+                                project.projectInfo.getProjectNumber(),
+                                data.nextAmount(Math.max(project.projectInfo.getTotalOwed(), 1000)), today,
+                                "Load test").execute(connection);
+                    } else {
+                        ProjectRepository.versionCheck("update address of project", project)
+                                .add("UPDATE build_info SET build_address = ? WHERE erf_num = ?", data.nextAddress(),
+                                        project.projectInfo.getErfNumber())
+                                .execute(connection);
+                    }
+                }
+                case FINALISE -> {
+
+                    Project project = ProjectRepository.findByNumber(connection, randomProjectNumber(data));
+                    if(project != null && !project.finalise){
+                        ProjectRepository.finalise(project).execute(connection);
+                    }
+                }
+                case DELETE -> {
+
+                    Integer projectNumber = createdProjects.poll();
+                    if(projectNumber == null){
+                        return;
+                    }
+
+                    Project project = ProjectRepository.findByNumber(connection, projectNumber);
+                    if(project != null){
+                        ProjectRepository.delete(project).execute(connection);
+                    }
+                }
+            }
+
+        } catch(ConcurrentUpdateException e){
+            // Another thread changed the project first, as happens when two users edit the same project.
+            conflicts.increment();
+        } catch(SQLException e){
+            errors.increment();
+        }
+
+        long micros = (System.nanoTime() - start) / 1000;
+        latencies.get(operation).record(micros);
+        allLatencies.record(micros);
+
+    }
+
+    /**
+     * The pickOperation() method chooses the next operation at random, in proportion to the weights.
+     * @param data the thread's generator
+     * @return the chosen operation
+     */
+    private Operation pickOperation(SyntheticData data){
+
+        int total = weights.values().stream().mapToInt(Integer::intValue).sum();
+        int choice = data.nextInt(total);
+
+        for(Map.Entry<Operation, Integer> weight : weights.entrySet()){
+
+            choice -= weight.getValue();
+            if(choice < 0){
+                return weight.getKey();
+            }
+        }
+
+        return Operation.SEARCH;
+    }
+
+    /**
+     * The randomProjectNumber() method picks one of the projects added by the driver.
+     * @param data the thread's generator
+     * @return a project number, which may belong to a project that has since been deleted
+     */
+    private int randomProjectNumber(SyntheticData data){
+
+        int added = nextProjectNumber.get() - firstProjectNumber;
+
+        return added == 0 ? firstProjectNumber : firstProjectNumber + data.nextInt(added);
+    }
+
+    /**
+     * The addPeople() method adds the inserts of a list of people to an operation.
+     * @param operation the operation the inserts are added to
+     * @param people the people to be inserted
+     */
+    private static void addPeople(SqlOperation operation, List<Person> people){
+
+        for(Person person : people){
+            ProjectRepository.addPersonInsert(operation, person);
+        }
+    }
+
+    /**
+     * The parseMix() method reads the weights of the operations from a list such as "create:10,search:90".
+     * Operations that are not listed are not performed.
+     * @param mix the list of operations and weights
+     * @return the weight of each listed operation
+     * @throws IllegalArgumentException if the list cannot be read
+     */
+    private static Map<Operation, Integer> parseMix(String mix){
+
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+
+        for(String entry : mix.split(",")){
+
+            String[] parts = entry.split(":");
+            if(parts.length != 2){
+                throw new IllegalArgumentException(mix);
+            }
+
+            int weight = Integer.parseInt(parts[1].trim());
+            if(weight < 0){
+                throw new IllegalArgumentException(mix);
+            }
+            weights.put(Operation.valueOf(parts[0].trim().toUpperCase()), weight);
+
+        }
+
+        if(weights.values().stream().mapToInt(Integer::intValue).sum() == 0){
+            throw new IllegalArgumentException(mix);
+        }
+
+        return weights;
+    }
+}
@@ -0,0 +1,571 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * This class keeps the details of every current project outside the Java heap, in two temporary files mapped into
+ * memory, so that the projects can be listed without the database and without the heap growing with the number of
+ * projects. It is used when the program is started with --off-heap-store. The files are created afresh by each copy
+ * of the program under names of their own, so copies sharing a directory never write to each other's files, and are
+ * deleted when they are closed.
+ * <p>
+ * Each project is held in a record of {@value #RECORD_BYTES} bytes in the record file, in order of project number:
+ * its number, ERF number, total fee, total paid, deadline and complete date as day numbers, the positions of its name,
+ * building type and address in the string file, and whether it is deleted or finalised. Each string in the string
+ * file is its length followed by its UTF-8 bytes. A project is read through a View, which reads the details shown
+ * in the project lists from the files when they are asked for, and which is moved from one record to the next rather
+ * than created for every project.
+ * <p>
+ * The store is built from the database when the program starts, and kept up to date from the events on the
+ * ProjectEventBus. A changed name, building type or address is added to the end of the string file. The store is built
+ * again every poised.offHeapStoreRebuildSeconds seconds (600 by default), into a new pair of files, which picks up
+ * the changes made by other copies of the program and drops the strings no longer used. As with the
+ * ReceivablesSummary, a payment whose event arrives while the store is being built can be counted twice until the
+ * next build. If the files cannot be grown, the store is not used until it has been built again.
+ */
+public class OffHeapProjectStore {
+
+    private static final long REBUILD_INTERVAL_SECONDS = Config.getLong("poised.offHeapStoreRebuildSeconds", 600);
+    private static final String SELECT_PROJECTS = "SELECT project_info.proj_num, proj_name, build_type, " +
+            "build_address, project_info.erf_num, total_fee, total_paid, deadline, complete_date, finalised " +
+            "FROM project_info INNER JOIN pay_complete ON project_info.proj_num = pay_complete.proj_num " +
+            "INNER JOIN build_info ON project_info.erf_num = build_info.erf_num " +
+            "WHERE project_info.deleted = 'N' ORDER BY project_info.proj_num";
+
+    // The position of each detail in a record.
+    private static final int RECORD_BYTES = 48;
+    private static final int PROJECT_NUMBER = 0;
+    private static final int ERF_NUMBER = 4;
+    private static final int TOTAL_FEE = 8;
+    private static final int TOTAL_PAID = 16;
+    private static final int DEADLINE = 24;
+    private static final int COMPLETE_DATE = 28;
+    private static final int PROJECT_NAME = 32;
+    private static final int BUILDING_TYPE = 36;
+    private static final int ADDRESS = 40;
+    private static final int DELETED = 44;
+    private static final int FINALISED = 45;
+    // The day number of a project without a complete date, and the position of a string that is null.
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final int NO_STRING = -1;
+
+    // The files in use, or null if the store cannot be used until it is built again.
+    private Segment segment;
+    // The events applied while the store is being built, which are applied to the new files as well.
+    private List<ProjectEvent> appliedWhileBuilding;
+
+    /**
+     * This class holds one pair of files, and the number of records and bytes of strings written to them.
+     */
+    private static class Segment {
+
+        final FileChannel recordFile;
+        final FileChannel stringFile;
+        MappedByteBuffer records;
+        MappedByteBuffer strings;
+        int count;
+        int stringsEnd;
+
+        /**
+         * The constructor creates a pair of empty temporary files.
+         * @throws IOException if the files could not be created
+         */
+        Segment() throws IOException {
+
+            recordFile = openTemporary(".rec");
+            try{
+                stringFile = openTemporary(".str");
+            } catch(IOException e){
+                recordFile.close();
+                throw e;
+            }
+            records = recordFile.map(FileChannel.MapMode.READ_WRITE, 0, 1024L * RECORD_BYTES);
+            strings = stringFile.map(FileChannel.MapMode.READ_WRITE, 0, 64 * 1024);
+
+        }
+
+        /**
+         * The openTemporary() method creates a temporary file that only this pair of files uses, and which is
+         * deleted when it is closed.
+         * @param suffix the ending of the file's name
+         * @return the open file
+         * @throws IOException if the file could not be created
+         */
+        private static FileChannel openTemporary(String suffix) throws IOException {
+
+            Path file = Files.createTempFile("poised-store-" + Database.getTenant() + "-", suffix);
+            try{
+                return FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+            } catch(IOException e){
+                Files.deleteIfExists(file);
+                throw e;
+            }
+        }
+
+        /**
+         * The grow() method maps a file with at least the given size, doubling its size until it is big enough.
+         * @param file the file
+         * @param buffer the file as it is mapped now
+         * @param needed the size needed, in bytes
+         * @return the file mapped with at least the size needed
+         * @throws IOException if the file could not be mapped, or would be bigger than a mapping can be
+         */
+        private static MappedByteBuffer grow(FileChannel file, MappedByteBuffer buffer, long needed)
+                throws IOException {
+
+            if(needed <= buffer.capacity()){
+                return buffer;
+            }
+
+            if(needed > Integer.MAX_VALUE){
+                throw new IOException("The off-heap project store is full.");
+            }
+
+            long size = buffer.capacity();
+            while(size < needed){
+                size *= 2;
+            }
+
+            return file.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(size, Integer.MAX_VALUE));
+        }
+
+        /**
+         * The putString() method adds a string to the end of the string file.
+         * @param value the string, or null
+         * @return the position of the string
+         * @throws IOException if the string file could not be grown
+         */
+        int putString(String value) throws IOException {
+
+            if(value == null){
+                return NO_STRING;
+            }
+
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            strings = grow(stringFile, strings, (long) stringsEnd + 4 + bytes.length);
+
+            int position = stringsEnd;
+            strings.putInt(position, bytes.length);
+            strings.put(position + 4, bytes);
+            stringsEnd += 4 + bytes.length;
+
+            return position;
+        }
+
+        /**
+         * The getString() method reads a string from the string file.
+         * @param position the position of the string
+         * @return the string, or null
+         */
+        String getString(int position){
+
+            if(position == NO_STRING){
+                return null;
+            }
+
+            byte[] bytes = new byte[strings.getInt(position)];
+            strings.get(position + 4, bytes);
+
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * The append() method adds a project to the end of the record file.
+         * @param projectNumber the number of the project, which must be higher than that of every project already
+         *                      in the files
+         * @param projectName the name of the project
+         * @param buildingType the type of building
+         * @param address the address of the building
+         * @param erfNumber the ERF number of the building
+         * @param totalFee the total fee
+         * @param totalPaid the amount paid so far
+         * @param deadline the deadline
+         * @param completeDate the date the project was finalised, or null
+         * @param finalised true if the project is finalised
+         * @throws IOException if the files could not be grown
+         */
+        void append(int projectNumber, String projectName, String buildingType, String address, int erfNumber,
+                    double totalFee, double totalPaid, LocalDate deadline, LocalDate completeDate, boolean finalised)
+                throws IOException {
+
+            records = grow(recordFile, records, (long) (count + 1) * RECORD_BYTES);
+
+            int record = count * RECORD_BYTES;
+            records.putInt(record + PROJECT_NUMBER, projectNumber);
+            records.putInt(record + ERF_NUMBER, erfNumber);
+            records.putDouble(record + TOTAL_FEE, totalFee);
+            records.putDouble(record + TOTAL_PAID, totalPaid);
+            records.putInt(record + DEADLINE, (int) deadline.toEpochDay());
+            records.putInt(record + COMPLETE_DATE, completeDate == null ? NO_DATE : (int) completeDate.toEpochDay());
+            records.putInt(record + PROJECT_NAME, putString(projectName));
+            records.putInt(record + BUILDING_TYPE, putString(buildingType));
+            records.putInt(record + ADDRESS, putString(address));
+            records.put(record + DELETED, (byte) 0);
+            records.put(record + FINALISED, (byte) (finalised ? 1 : 0));
+            count++;
+
+        }
+
+        /**
+         * The find() method finds the record of a project, by a binary search on the project numbers.
+         * @param projectNumber the number of the project
+         * @return the position of the project's record in the record file, or -1 if it is not in the files
+         */
+        int find(int projectNumber){
+
+            int low = 0;
+            int high = count - 1;
+
+            while(low <= high){
+
+                int middle = (low + high) >>> 1;
+                int found = records.getInt(middle * RECORD_BYTES + PROJECT_NUMBER);
+
+                if(found < projectNumber){
+                    low = middle + 1;
+                } else if(found > projectNumber){
+                    high = middle - 1;
+                } else {
+                    return middle * RECORD_BYTES;
+                }
+            }
+
+            return -1;
+        }
+
+        /**
+         * The close() method closes and deletes the files. Views already reading the files can still read them until
+         * they are no longer used, as the files stay mapped until then.
+         */
+        void close(){
+
+            try{
+                recordFile.close();
+            } catch(IOException e){
+                // The file is deleted by the system when it can no longer be used.
+            }
+            try{
+                stringFile.close();
+            } catch(IOException e){
+                // The file is deleted by the system when it can no longer be used.
+            }
+        }
+    }
+
+    /**
+     * This class reads the details shown when a project is listed from the store's files, when they are asked for.
+     * One View is moved from record to record to read many projects, and it can only be read, and only in the action
+     * it was given to by forEach(). A project to be changed is loaded from the database instead.
+     */
+    public static final class View {
+
+        private Segment segment;
+        private int record;
+
+        /**
+         * The constructor creates a view that is not yet on a record.
+         */
+        private View(){
+        }
+
+        /**
+         * The moveTo() method moves the view to a record.
+         * @param segment the files the record is in
+         * @param record the position of the record in the record file
+         */
+        private void moveTo(Segment segment, int record){
+
+            this.segment = segment;
+            this.record = record;
+
+        }
+
+        /**
+         * Gets the project number
+         * @return int of the project number
+         */
+        public int getProjectNumber(){
+            return segment.records.getInt(record + PROJECT_NUMBER);
+        }
+
+        /**
+         * Gets the project name
+         * @return string of the project name
+         */
+        public String getProjectName(){
+            return segment.getString(segment.records.getInt(record + PROJECT_NAME));
+        }
+
+        /**
+         * Gets the ERF number
+         * @return int of the ERF number
+         */
+        public int getErfNumber(){
+            return segment.records.getInt(record + ERF_NUMBER);
+        }
+
+        /**
+         * Gets the deadline
+         * @return LocalDate of the deadline
+         */
+        public LocalDate getDeadlineDate(){
+            return LocalDate.ofEpochDay(segment.records.getInt(record + DEADLINE));
+        }
+
+        /**
+         * Gets the amount still owed
+         * @return double of the total fee less the amount paid
+         */
+        public double getTotalOwed(){
+            return segment.records.getDouble(record + TOTAL_FEE) - segment.records.getDouble(record + TOTAL_PAID);
+        }
+
+        /**
+         * Gets whether the project is finalised
+         * @return true if the project has been finalised
+         */
+        public boolean isFinalised(){
+            return segment.records.get(record + FINALISED) != 0;
+        }
+
+        /**
+         * Gets the summary of the project shown when projects are listed
+         * @return the summary
+         */
+        public ProjectSummary getSummary(){
+            return new ProjectSummary(getProjectNumber(), getProjectName(), getErfNumber(), getDeadlineDate(),
+                    getTotalOwed(), isFinalised());
+        }
+    }
+
+    /**
+     * The start() method builds the store, subscribes to the project events and starts building the store again in
+     * the background.
+     * @return the store
+     * @throws SQLException if the database could not be read
+     * @throws IOException if the files could not be written
+     */
+    public static OffHeapProjectStore start() throws SQLException, IOException {
+
+        // The events are subscribed to first, so that no project saved while the store is being built is missed.
+        OffHeapProjectStore store = new OffHeapProjectStore();
+        ProjectEventBus.subscribe(store::apply);
+        store.rebuild();
+
+        ScheduledExecutorService rebuilder = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "poised-off-heap-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rebuilder.scheduleWithFixedDelay(store::rebuildQuietly, REBUILD_INTERVAL_SECONDS, REBUILD_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+
+        return store;
+    }
+
+    /**
+     * The rebuild() method builds the store from every current project in the database, into a new pair of files,
+     * and replaces the files in use with them.
+     * @throws SQLException if the database could not be read
+     * @throws IOException if the files could not be written
+     */
+    public void rebuild() throws SQLException, IOException {
+
+        synchronized(this){
+            appliedWhileBuilding = new ArrayList<>();
+        }
+
+        // The events already published are applied first, so that they are not applied again on top of the
+        // projects read from the database.
+        ProjectEventBus.flush();
+
+        Segment built = new Segment();
+        try{
+
+            // The projects are written to the files as they are read, so they are never all on the heap at once.
+            try(Connection connection = Database.getConnection();
+                PreparedStatement statement = connection.prepareStatement(SELECT_PROJECTS);
+                ResultSet projects = statement.executeQuery()){
+
+                while(projects.next()){
+
+                    Date completeDate = projects.getDate("complete_date");
+                    built.append(projects.getInt("proj_num"), projects.getString("proj_name"),
+                            projects.getString("build_type"), projects.getString("build_address"),
+                            projects.getInt("erf_num"), projects.getDouble("total_fee"),
+                            projects.getDouble("total_paid"), Poised.formatDate(projects.getString("deadline")),
+                            completeDate == null ? null : completeDate.toLocalDate(),
+                            projects.getString("finalised").equals("Y"));
+
+                }
+            }
+
+            synchronized(this){
+
+                for(ProjectEvent event : appliedWhileBuilding){
+                    applyTo(built, event);
+                }
+
+                Segment replaced = segment;
+                segment = built;
+                if(replaced != null){
+                    replaced.close();
+                }
+
+            }
+
+        } catch(SQLException | IOException | RuntimeException e){
+
+            built.close();
+            throw e;
+
+        } finally{
+
+            synchronized(this){
+                appliedWhileBuilding = null;
+            }
+        }
+    }
+
+    /**
+     * The rebuildQuietly() method builds the store again from the background thread. If the database cannot be
+     * reached or the files cannot be written, the files in use are kept until the next build.
+     */
+    private void rebuildQuietly(){
+
+        try{
+            rebuild();
+        } catch(SQLException | IOException e){
+            // The store is built again at the next interval.
+        }
+    }
+
+    /**
+     * The apply() method updates the store from a batch of events.
+     * @param events the events, in the order they were published
+     */
+    private synchronized void apply(List<ProjectEvent> events){
+
+        for(ProjectEvent event : events){
+
+            if(appliedWhileBuilding != null){
+                appliedWhileBuilding.add(event);
+            }
+
+            if(segment != null){
+                try{
+                    applyTo(segment, event);
+                } catch(IOException e){
+                    // The store is out of date, so it is not used until it has been built again.
+                    segment.close();
+                    segment = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * The applyTo() method updates a pair of files from one event. A new project whose number is lower than that of
+     * a project already in the files, which can only have been added by another copy of the program, is added at
+     * the next build.
+     * @param target the files to be updated
+     * @param event the event
+     * @throws IOException if the files could not be grown
+     */
+    private static void applyTo(Segment target, ProjectEvent event) throws IOException {
+
+        if(event instanceof ProjectEvent.Created created){
+
+            int last = target.count == 0 ? Integer.MIN_VALUE :
+                    target.records.getInt((target.count - 1) * RECORD_BYTES + PROJECT_NUMBER);
+            if(created.projectNumber() > last){
+                target.append(created.projectNumber(), created.projectName(), created.buildingType(),
+                        created.address(), created.erfNumber(), created.totalFee(), 0, created.deadline(), null,
+                        false);
+            }
+            return;
+
+        }
+
+        int record = target.find(event.projectNumber());
+        if(record < 0){
+            return;
+        }
+
+        if(event instanceof ProjectEvent.Renamed renamed){
+
+            target.records.putInt(record + PROJECT_NAME, target.putString(renamed.projectName()));
+
+        } else if(event instanceof ProjectEvent.BuildingChanged changed){
+
+            target.records.putInt(record + BUILDING_TYPE, target.putString(changed.buildingType()));
+            target.records.putInt(record + ADDRESS, target.putString(changed.address()));
+
+        } else if(event instanceof ProjectEvent.PaymentRecorded payment){
+
+            target.records.putDouble(record + TOTAL_PAID, target.records.getDouble(record + TOTAL_PAID) +
+                    payment.amount());
+
+        } else if(event instanceof ProjectEvent.FeeChanged changed){
+
+            target.records.putDouble(record + TOTAL_FEE, changed.totalFee());
+
+        } else if(event instanceof ProjectEvent.DeadlineChanged changed){
+
+            target.records.putInt(record + DEADLINE, (int) changed.deadline().toEpochDay());
+
+        } else if(event instanceof ProjectEvent.Finalised finalised){
+
+            target.records.putInt(record + COMPLETE_DATE, (int) finalised.completeDate().toEpochDay());
+            target.records.put(record + FINALISED, (byte) 1);
+
+        } else if(event instanceof ProjectEvent.Deleted || event instanceof ProjectEvent.Archived){
+
+            target.records.put(record + DELETED, (byte) 1);
+
+        }
+    }
+
+    /**
+     * The forEach() method reads every current project in the store, in order of project number. The projects are
+     * read through one View, which is moved to the next project after the action has been run on it. The store is
+     * not changed while the projects are being read.
+     * @param action the action run on each project
+     * @return true if the projects were read, or false if the store cannot be used until it has been built again
+     */
+    public synchronized boolean forEach(Consumer<View> action){
+
+        if(segment == null){
+            return false;
+        }
+
+        View view = new View();
+        for(int i = 0; i < segment.count; i++){
+
+            int record = i * RECORD_BYTES;
+            if(segment.records.get(record + DELETED) == 0){
+                view.moveTo(segment, record);
+                action.accept(view);
+            }
+        }
+
+        return true;
+    }
+}
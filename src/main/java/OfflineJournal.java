@@ -0,0 +1,526 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * This class keeps a local, append-only journal of changes that could not be written to the database because it
+ * was unreachable. The journal file is memory-mapped and every record carries a CRC32 checksum. Records are made
+ * durable by a group commit: a single committer thread forces the file to disk once for all the records appended
+ * since the previous force, and the threads that appended them wait for that force.
+ * <p>
+ * While there are changes in the journal, new changes are also added to the journal so that the database receives
+ * them in the order they were made. A background thread replays the journal once the database can be reached again.
+ * A change the database rejects is written to {@value #DEAD_LETTER_FILE} with the reason, and kept there until
+ * someone deals with it.
+ * <p>
+ * A project added while its insert goes to the journal is given a provisional number below zero, as another copy of
+ * the program may be giving out the same numbers while it is offline. When the insert is replayed the project is
+ * given its real number, which is recorded in the offline_project table in the same transaction, and the later
+ * changes to the project in the journal are sent with the real number.
+ * <p>
+ * The file starts with a header of {@value #HEADER_SIZE} bytes: a magic number, the last provisional project number
+ * given out, the offset of the first record that has not yet been replayed, and a random ID that tells this journal's
+ * provisional numbers apart from those of other journals. Each record is made up of its length, its checksum, and the
+ * operation itself, and the last record is followed by a length of zero.
+ */
+public class OfflineJournal {
+
+    // The journal file is kept in the working directory of the program.
+    public static final String JOURNAL_FILE = "poised-offline.journal";
+    public static final String DEAD_LETTER_FILE = "poised-offline.rejected";
+    static final int HEADER_SIZE = 32;
+    private static final int MAGIC = 0x504F4A33;
+    private static final int PROVISIONAL_NUMBER_POSITION = 4;
+    private static final int REPLAY_OFFSET_POSITION = 8;
+    private static final int JOURNAL_ID_POSITION = 16;
+    private static final int RECORD_HEADER_SIZE = 8;
+    // The file is mapped in steps of this size so that it does not need to be remapped for every record.
+    private static final int REGION_SIZE = 1 << 20;
+    private static final long REPLAY_INTERVAL_MILLIS = 10000;
+    static final String CREATE_NUMBER_TABLE = "CREATE TABLE offline_project (" +
+            "journal_id CHAR(36) NOT NULL, " +
+            "provisional INT NOT NULL, " +
+            "proj_num INT NOT NULL, " +
+            "PRIMARY KEY (journal_id, provisional))";
+    private static final String SELECT_NUMBER = "SELECT proj_num FROM offline_project " +
+            "WHERE journal_id = ? AND provisional = ?";
+    private static final String INSERT_NUMBER = "INSERT INTO offline_project VALUES (?, ?, ?)";
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    // The end of the last appended record, and the point up to which the journal has been forced to disk.
+    private long writeOffset;
+    private long forcedOffset;
+    private long replayOffset;
+    // The number of records appended and forced since the journal was opened, used to wake waiting threads.
+    private long appendedCount;
+    private long forcedCount;
+    private int provisionalNumber;
+    private final String journalId;
+    private boolean closed;
+    // Only one thread replays the journal at a time.
+    private final Object replayLock = new Object();
+
+    /**
+     * The constructor maps the journal file and finds the end of the records that are already in it.
+     * @param channel the channel of the journal file
+     * @throws IOException if the file could not be mapped or has an unknown format
+     */
+    private OfflineJournal(FileChannel channel) throws IOException {
+
+        this.channel = channel;
+        boolean newFile = channel.size() == 0;
+
+        remap(Math.max(channel.size(), REGION_SIZE));
+
+        if(newFile){
+
+            UUID id = UUID.randomUUID();
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(PROVISIONAL_NUMBER_POSITION, 0);
+            buffer.putLong(REPLAY_OFFSET_POSITION, HEADER_SIZE);
+            buffer.putLong(JOURNAL_ID_POSITION, id.getMostSignificantBits());
+            buffer.putLong(JOURNAL_ID_POSITION + Long.BYTES, id.getLeastSignificantBits());
+            buffer.force();
+
+        } else if(buffer.getInt(0) != MAGIC){
+            throw new IOException(JOURNAL_FILE + " is not a Poised journal of this version.");
+        }
+
+        provisionalNumber = buffer.getInt(PROVISIONAL_NUMBER_POSITION);
+        replayOffset = buffer.getLong(REPLAY_OFFSET_POSITION);
+        journalId = new UUID(buffer.getLong(JOURNAL_ID_POSITION), buffer.getLong(JOURNAL_ID_POSITION + Long.BYTES))
+                .toString();
+
+        // The records are read until one has a length of zero or a checksum that does not match, which means the
+        // program stopped while it was being written.
+        long offset = replayOffset;
+        while(readRecord(offset) != null){
+            offset += RECORD_HEADER_SIZE + buffer.getInt((int) offset);
+        }
+
+        writeOffset = offset;
+        forcedOffset = offset;
+        writeTerminator();
+
+    }
+
+    /**
+     * The open() method opens the journal file and starts the committer and replay threads.
+     * @return the opened journal
+     * @throws IOException if the journal file could not be opened
+     */
+    public static OfflineJournal open() throws IOException {
+
+        OfflineJournal journal = new OfflineJournal(new RandomAccessFile(Database.tenantFile(JOURNAL_FILE).toFile(),
+                "rw").getChannel());
+
+        Thread committer = new Thread(journal::runCommitter, "poised-journal-commit");
+        committer.setDaemon(true);
+        committer.start();
+
+        Thread replayer = new Thread(journal::runReplayer, "poised-journal-replay");
+        replayer.setDaemon(true);
+        replayer.start();
+
+        return journal;
+    }
+
+    /**
+     * The hasPendingChanges() method checks whether there are changes in the journal that have not yet been
+     * replayed to the database.
+     * @return true if there are changes waiting to be replayed
+     */
+    public synchronized boolean hasPendingChanges(){
+        return replayOffset < writeOffset;
+    }
+
+    /**
+     * The append() method adds an operation to the end of the journal and waits until it has been forced to disk.
+     * @param operation the operation to be journaled
+     * @throws IOException if the operation could not be written
+     */
+    public void append(SqlOperation operation) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        operation.writeTo(new DataOutputStream(bytes));
+        byte[] payload = bytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        synchronized (this){
+
+            if(closed){
+                throw new IOException("The offline journal has been closed.");
+            }
+
+            long recordEnd = writeOffset + RECORD_HEADER_SIZE + payload.length;
+
+            // The file is grown if the record and the terminator after it do not fit in the mapped region.
+            if(recordEnd + Integer.BYTES > buffer.capacity()){
+                remap(((recordEnd + Integer.BYTES) / REGION_SIZE + 1) * REGION_SIZE);
+            }
+
+            int position = (int) writeOffset;
+            buffer.putInt(position + Integer.BYTES, (int) crc.getValue());
+            buffer.put(position + RECORD_HEADER_SIZE, payload);
+            writeOffset = recordEnd;
+            writeTerminator();
+            // The length is written last so the record is only seen once it is complete.
+            buffer.putInt(position, payload.length);
+
+            long recordCount = ++appendedCount;
+            notifyAll();
+
+            // The thread waits for the committer to force this record to disk along with any others.
+            while(forcedCount < recordCount){
+                try{
+                    wait();
+                } catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while saving the change to the journal.");
+                }
+            }
+        }
+    }
+
+    /**
+     * The nextProvisionalNumber() method gives out a provisional project number for a project whose insert is added
+     * to the journal. The project is given its real number when the insert is sent to the database.
+     * @return the provisional project number, which is below zero
+     */
+    public synchronized int nextProvisionalNumber(){
+
+        provisionalNumber--;
+        buffer.putInt(PROVISIONAL_NUMBER_POSITION, provisionalNumber);
+
+        return provisionalNumber;
+    }
+
+    /**
+     * The replay() method sends the journaled operations to the database in the order they were added. Each operation
+     * is run in its own transaction, and the header is updated after each one so that it is not sent twice. An
+     * operation the database rejects is moved to the dead-letter file. If the database cannot be reached, or the
+     * dead-letter file cannot be written, the replay stops and is tried again later.
+     * @return the number of operations sent to the database
+     */
+    public int replay(){
+
+        synchronized (replayLock){
+
+            if(!hasPendingChanges()){
+                return 0;
+            }
+
+            int replayed = 0;
+
+            try(Connection connection = Database.getConnection()){
+
+                while(true){
+
+                    long offset;
+                    SqlOperation operation;
+
+                    synchronized (this){
+
+                        if(replayOffset >= forcedOffset){
+                            break;
+                        }
+                        offset = replayOffset;
+                        operation = readRecord(offset);
+
+                    }
+
+                    if(operation == null){
+                        break;
+                    }
+
+                    try{
+
+                        SqlOperation resolved = resolveNumbers(connection, operation);
+                        if(resolved != null){
+
+                            resolved.execute(connection);
+                            replayed++;
+                            if(operation.getCreatedProject() < 0){
+                                System.out.println("Project " + operation.getCreatedProject() + " saved while " +
+                                        "offline was added to the database as project " +
+                                        resolved.getCreatedProject() + ".");
+                            }
+
+                        }
+
+                    } catch(SQLException e){
+
+                        if(connection.isClosed() || !connection.isValid(1)){
+                            throw e;
+                        }
+
+                        try{
+                            deadLetter(operation, e.getMessage());
+                        } catch(IOException writeFailure){
+                            // The change stays in the journal, and is tried again with the rest of it later.
+                            break;
+                        }
+                        System.out.println("Could not apply saved change '" + operation + "': " + e.getMessage() +
+                                " It has been kept in " + DEAD_LETTER_FILE + ".");
+
+                    }
+
+                    markReplayed(offset);
+                }
+
+            } catch(SQLException e){
+                // The database is still unreachable, so the rest of the journal is kept for the next attempt.
+            }
+
+            if(replayed > 0){
+                System.out.println(replayed + " change(s) saved while offline were sent to the database.");
+            }
+
+            return replayed;
+        }
+    }
+
+    /**
+     * The resolveNumbers() method replaces the provisional project numbers an operation refers to with the projects'
+     * real numbers. An operation that adds a project is given a new number, and records it in the offline_project
+     * table as part of the same transaction.
+     * @param connection an open connection to the database
+     * @param operation the operation read from the journal
+     * @return the operation to be run, or null if it adds a project that has already been added
+     * @throws SQLException if the database could not be read, or the operation refers to a project whose insert was
+     * rejected
+     */
+    private SqlOperation resolveNumbers(Connection connection, SqlOperation operation) throws SQLException {
+
+        SqlOperation resolved = operation;
+
+        for(int provisional : operation.provisionalNumbers()){
+
+            Integer actual = null;
+            try(PreparedStatement statement = connection.prepareStatement(SELECT_NUMBER)){
+
+                statement.setString(1, journalId);
+                statement.setInt(2, provisional);
+
+                try(ResultSet number = statement.executeQuery()){
+                    if(number.next()){
+                        actual = number.getInt(1);
+                    }
+                }
+            }
+
+            if(operation.getCreatedProject() == provisional){
+
+                // The insert was sent before the program stopped, but the journal was not told.
+                if(actual != null){
+                    return null;
+                }
+
+                actual = ProjectRepository.allocateProjectNumbers(connection, 1);
+                resolved = resolved.renumber(provisional, actual).add(INSERT_NUMBER, journalId, provisional, actual);
+
+            } else if(actual == null){
+                throw new SQLException("Project " + provisional + " was never added to the database.");
+            } else {
+                resolved = resolved.renumber(provisional, actual);
+            }
+        }
+
+        return resolved;
+    }
+
+    /**
+     * The deadLetter() method adds an operation the database rejected to the dead-letter file, with the time and the
+     * reason, and forces it to disk.
+     * @param operation the rejected operation
+     * @param reason the database's reason for rejecting it
+     * @throws IOException if the file could not be written
+     */
+    private static void deadLetter(SqlOperation operation, String reason) throws IOException {
+
+        String entry = Instant.now() + "\t" + reason + System.lineSeparator() + operation.describe() +
+                System.lineSeparator();
+
+        try(FileChannel file = FileChannel.open(Database.tenantFile(DEAD_LETTER_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)){
+
+            file.write(ByteBuffer.wrap(entry.getBytes(StandardCharsets.UTF_8)));
+            file.force(true);
+
+        }
+    }
+
+    /**
+     * The close() method stops the committer and replay threads. The committer forces any remaining records to disk
+     * before it stops.
+     */
+    public synchronized void close(){
+
+        closed = true;
+        notifyAll();
+
+    }
+
+    /**
+     * The markReplayed() method moves the replay offset past a record and saves it in the header. Once every record
+     * has been replayed, the journal is emptied so that the file does not keep growing.
+     * @param offset the offset of the record that was replayed
+     */
+    private synchronized void markReplayed(long offset){
+
+        replayOffset = offset + RECORD_HEADER_SIZE + buffer.getInt((int) offset);
+
+        if(replayOffset == writeOffset){
+
+            replayOffset = HEADER_SIZE;
+            writeOffset = HEADER_SIZE;
+            forcedOffset = HEADER_SIZE;
+            writeTerminator();
+
+        }
+
+        buffer.putLong(REPLAY_OFFSET_POSITION, replayOffset);
+        buffer.force();
+
+    }
+
+    /**
+     * The runCommitter() method is run by the committer thread. Whenever records have been appended, it forces the
+     * journal to disk once and wakes all the threads waiting for those records.
+     */
+    private void runCommitter(){
+
+        while(true){
+
+            long target;
+            long targetCount;
+            MappedByteBuffer toForce;
+
+            synchronized (this){
+
+                while(forcedOffset >= writeOffset && !closed){
+                    try{
+                        wait();
+                    } catch(InterruptedException e){
+                        return;
+                    }
+                }
+
+                if(forcedOffset >= writeOffset){
+                    return;
+                }
+
+                target = writeOffset;
+                targetCount = appendedCount;
+                toForce = buffer;
+
+            }
+
+            toForce.force();
+
+            synchronized (this){
+
+                forcedOffset = Math.max(forcedOffset, target);
+                forcedCount = targetCount;
+                notifyAll();
+
+            }
+        }
+    }
+
+    /**
+     * The runReplayer() method is run by the replay thread, which tries to replay the journal at a fixed interval.
+     */
+    private void runReplayer(){
+
+        while(true){
+
+            replay();
+
+            synchronized (this){
+
+                if(closed){
+                    return;
+                }
+                try{
+                    wait(REPLAY_INTERVAL_MILLIS);
+                } catch(InterruptedException e){
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * The readRecord() method reads the record at an offset and checks its checksum.
+     * @param offset the offset of the record
+     * @return the operation in the record, or null if there is no complete record at the offset
+     */
+    private SqlOperation readRecord(long offset){
+
+        if(offset + RECORD_HEADER_SIZE > buffer.capacity()){
+            return null;
+        }
+
+        int length = buffer.getInt((int) offset);
+        if(length <= 0 || offset + RECORD_HEADER_SIZE + length > buffer.capacity()){
+            return null;
+        }
+
+        byte[] payload = new byte[length];
+        buffer.get((int) offset + RECORD_HEADER_SIZE, payload);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if((int) crc.getValue() != buffer.getInt((int) offset + Integer.BYTES)){
+            return null;
+        }
+
+        try{
+            return SqlOperation.readFrom(new DataInputStream(new ByteArrayInputStream(payload)));
+        } catch(IOException e){
+            return null;
+        }
+    }
+
+    /**
+     * The writeTerminator() method writes a length of zero after the last record so that older records further on
+     * in the file are not read as part of the journal.
+     */
+    private void writeTerminator(){
+        buffer.putInt((int) writeOffset, 0);
+    }
+
+    /**
+     * The remap() method maps the journal file with a new size.
+     * @param size the size in bytes to map
+     * @throws IOException if the file could not be mapped
+     */
+    private void remap(long size) throws IOException {
+
+        if(size > Integer.MAX_VALUE){
+            throw new IOException("The offline journal is full.");
+        }
+
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+    }
+}
@@ -0,0 +1,117 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class reads a whole table faster by splitting it into ranges of its key and reading the ranges at the same
+ * time, each on its own pooled connection. It is used to load the in-memory structures built from every project when
+ * the program starts.
+ * <p>
+ * A table is split into poised.scanRanges ranges (4 by default), read by up to poised.scanThreads threads (4 by
+ * default, read when the first scan is made), so a scan takes at most that many connections from the pool.
+ */
+public class ParallelScan {
+
+    private static final ExecutorService SCANNERS = Executors.newFixedThreadPool(
+            Config.getInt("poised.scanThreads", 4), task -> {
+                Thread thread = new Thread(task, "poised-scan");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * This interface is implemented by the query that reads one range of a table.
+     * @param <T> the type of the result of each range
+     */
+    @FunctionalInterface
+    public interface RangeQuery<T> {
+
+        /**
+         * Reads the rows whose key is from low to high, inclusive
+         * @param connection an open connection to the database
+         * @param low the lowest key in the range
+         * @param high the highest key in the range
+         * @return the result of the range
+         * @throws SQLException if the database could not be read
+         */
+        T read(Connection connection, long low, long high) throws SQLException;
+    }
+
+    /**
+     * The scan() method splits a table into ranges of a whole-number key and reads them at the same time.
+     * @param table the name of the table
+     * @param key the name of the key column
+     * @param query the query that reads one range
+     * @param <T> the type of the result of each range
+     * @return the result of each range, in the order of the ranges, or an empty list if the table is empty
+     * @throws SQLException if the database could not be read
+     */
+    public static <T> List<T> scan(String table, String key, RangeQuery<T> query) throws SQLException {
+
+        long low;
+        long high;
+
+        try(Connection connection = Database.getConnection();
+            PreparedStatement statement = connection.prepareStatement("SELECT MIN(" + key + "), MAX(" + key +
+                    ") FROM " + table);
+            ResultSet bounds = statement.executeQuery()){
+
+            bounds.next();
+            low = bounds.getLong(1);
+            if(bounds.wasNull()){
+                return List.of();
+            }
+            high = bounds.getLong(2);
+
+        }
+
+        // The ranges are of equal width, and together cover every key from the lowest to the highest.
+        int ranges = (int) Math.max(1, Math.min(Config.getInt("poised.scanRanges", 4), high - low + 1));
+        long width = (high - low) / ranges + 1;
+
+        // The ranges are read for the same tenant as the table's bounds, whichever thread reads them.
+        String tenant = Database.getTenant();
+        List<Future<T>> results = new ArrayList<>();
+        for(long first = low; first <= high; first += width){
+
+            long rangeLow = first;
+            long rangeHigh = Math.min(high, first + width - 1);
+            results.add(SCANNERS.submit(() -> Database.callAs(tenant, () -> {
+                try(Connection connection = Database.getConnection()){
+                    return query.read(connection, rangeLow, rangeHigh);
+                }
+            })));
+
+        }
+
+        List<T> read = new ArrayList<>();
+        try{
+
+            for(Future<T> result : results){
+                read.add(result.get());
+            }
+
+        } catch(InterruptedException e){
+
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while reading " + table + ".", e);
+
+        } catch(ExecutionException e){
+
+            if(e.getCause() instanceof SQLException cause){
+                throw cause;
+            }
+            throw new SQLException("Could not read " + table + ".", e.getCause());
+
+        }
+
+        return read;
+    }
+}
@@ -0,0 +1,145 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * This class records payments in the payment table, an append-only ledger with one row per payment. The running
+ * total_paid and total_owed of each project in pay_complete are kept up to date by a trigger on the ledger, so
+ * recording a payment is a single insert and the balances can never disagree with the ledger.
+ * <p>
+ * Every payment is given a unique pay_ref when it is entered. Inserting the same payment again, for example when
+ * the offline journal is replayed after a crash, leaves the ledger and the balances unchanged.
+ * <p>
+ * The amounts paid before the ledger existed are carried over as opening balances. They have no pay_date, as the
+ * dates they were paid on are not known, so the receivables for a period leave them out and list them separately.
+ */
+public class PaymentLedger {
+
+    // The longest reference given by a customer that the ledger can hold, in characters.
+    public static final int MAX_REFERENCE_LENGTH = 100;
+    // The ledger is indexed by date so that the payments in a period are found with a range scan. Only the opening
+    // balances have no pay_date.
+    static final String CREATE_TABLE = "CREATE TABLE payment (" +
+            "pay_id INT NOT NULL AUTO_INCREMENT PRIMARY KEY, " +
+            "pay_ref VARCHAR(40) NOT NULL UNIQUE, " +
+            "proj_num INT NOT NULL, " +
+            "amount DOUBLE NOT NULL, " +
+            "pay_date DATE NULL, " +
+            "reference VARCHAR(" + MAX_REFERENCE_LENGTH + "), " +
+            "INDEX payment_date (pay_date, proj_num), " +
+            "INDEX payment_project (proj_num, pay_date))";
+    // The amounts already paid before the ledger existed are carried over as opening balances.
+    static final String COPY_OPENING_BALANCES = "INSERT INTO payment (pay_ref, proj_num, amount, pay_date, " +
+            "reference) SELECT CONCAT('opening-', proj_num), proj_num, total_paid, NULL, 'Opening balance' " +
+            "FROM pay_complete WHERE total_paid <> 0";
+    // A payment whose pay_ref is already in the ledger is left as it is, without firing the trigger again.
+    static final String INSERT_PAYMENT = "INSERT INTO payment (pay_ref, proj_num, amount, pay_date, reference) " +
+            "VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE pay_ref = pay_ref";
+    // MySQL assigns the columns from left to right, so the amount owed is worked out from the new total paid.
+    static final String CREATE_TRIGGER = "CREATE TRIGGER payment_balance AFTER INSERT ON payment FOR EACH ROW " +
+            "UPDATE pay_complete SET total_paid = total_paid + NEW.amount, total_owed = total_fee - total_paid, " +
+            "row_version = row_version + 1 WHERE proj_num = NEW.proj_num";
+
+    /**
+     * The newPaymentRef() method creates a unique reference for a payment as it is entered.
+     * @return a new unique payment reference
+     */
+    public static String newPaymentRef(){
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * The referenceFits() method checks whether a reference given by a customer fits in the ledger.
+     * @param reference the reference, or null
+     * @return true if the reference is null or no longer than MAX_REFERENCE_LENGTH characters
+     */
+    public static boolean referenceFits(String reference){
+        return reference == null || reference.codePointCount(0, reference.length()) <= MAX_REFERENCE_LENGTH;
+    }
+
+    /**
+     * The recordPayment() method creates an operation that inserts a payment into the ledger. If a payment with the
+     * same pay_ref is already in the ledger, the insert changes nothing.
+     * @param payRef the unique reference of the payment
+     * @param projectNumber the project the payment is for
+     * @param amount the amount paid
+     * @param payDate the date of the payment
+     * @param reference the reference given by the customer, or null
+     * @return the operation recording the payment
+     */
+    public static SqlOperation recordPayment(String payRef, int projectNumber, double amount, LocalDate payDate,
+                                             String reference){
+
+        return new SqlOperation("record payment for project " + projectNumber)
+                .add(INSERT_PAYMENT, payRef, projectNumber, amount, payDate.toString(), reference);
+    }
+
+    /**
+     * The printReceivables() method prints the payments received in a period for each project, followed by the
+     * total for the period. Only the ledger rows in the period are read. The opening balances are not part of any
+     * period, and their total is printed on its own line.
+     * @param from the first day of the period
+     * @param to the last day of the period
+     * @throws SQLException if the database could not be reached
+     */
+    public static void printReceivables(LocalDate from, LocalDate to) throws SQLException {
+
+        try(Connection connection = Database.getConnection();
+            PreparedStatement statement = connection.prepareStatement("SELECT proj_num, COUNT(*) AS payments, " +
+                    "SUM(amount) AS received FROM payment WHERE pay_date BETWEEN ? AND ? " +
+                    "GROUP BY proj_num ORDER BY proj_num")){
+
+            statement.setString(1, from.toString());
+            statement.setString(2, to.toString());
+
+            int paymentCount = 0;
+            double totalReceived = 0;
+
+            try(ResultSet rows = statement.executeQuery()){
+
+                while(rows.next()){
+
+                    System.out.println("Project Number: " + rows.getInt("proj_num") +
+                            "\tPayments: " + rows.getInt("payments") +
+                            "\tReceived: R" + String.format("%.2f", rows.getDouble("received")));
+
+                    paymentCount += rows.getInt("payments");
+                    totalReceived += rows.getDouble("received");
+
+                }
+            }
+
+            if(paymentCount == 0){
+                System.out.println("No payments found between " + from + " and " + to + ".");
+            } else {
+                System.out.println("Total received between " + from + " and " + to + ": R" +
+                        String.format("%.2f", totalReceived) + " from " + paymentCount + " payment(s)\n");
+            }
+
+            printOpeningBalances(connection);
+        }
+    }
+
+    /**
+     * The printOpeningBalances() method prints the total of the opening balances carried over when the ledger was
+     * created, if there are any.
+     * @param connection an open connection to the database
+     * @throws SQLException if the database could not be read
+     */
+    private static void printOpeningBalances(Connection connection) throws SQLException {
+
+        try(PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) AS projects, " +
+                "SUM(amount) AS received FROM payment WHERE pay_date IS NULL");
+            ResultSet rows = statement.executeQuery()){
+
+            if(rows.next() && rows.getInt("projects") > 0){
+                System.out.println("Opening balances paid before payments were recorded, not included above: R" +
+                        String.format("%.2f", rows.getDouble("received")) + " for " + rows.getInt("projects") +
+                        " project(s)\n");
+            }
+        }
+    }
+}
@@ -5,10 +5,32 @@ public class Person {
 
     /**
      * enum Type is used to declare the constant attributes of Architect, Contractor, and Customer.
+     * Each type also describes where its people are stored, so that the PersonRepository can build the SQL for every
+     * role from the same code. A new role also needs its table and project_info column in the database, a field and
+     * the matching cases in Project, and an entry in the menus of Poised.
      */
     enum Type {
-        ARCHITECT, CONTRACTOR, CUSTOMER, ENGINEER, MANAGER
+        ARCHITECT("Architect", "architect", "arch_", "architect"),
+        CONTRACTOR("Contractor", "contractor", "cont_", "contractor"),
+        CUSTOMER("Customer", "customer", "cust_", "customer"),
+        ENGINEER("Structural Engineer", "engineer", "engi_", "engineer"),
+        MANAGER("Project Manager", "project_manager", "pm_", "project_manager");
+
+        // The name shown to the user, the table holding people of this type, the prefix of that table's columns,
+        // and the column of project_info that holds the name of the project's person of this type.
+        final String displayName;
+        final String table;
+        final String columnPrefix;
+        final String projectColumn;
+
+        Type(String displayName, String table, String columnPrefix, String projectColumn){
+
+            this.displayName = displayName;
+            this.table = table;
+            this.columnPrefix = columnPrefix;
+            this.projectColumn = projectColumn;
 
+        }
     }
     // Attributes for the Person superclass are declared. All of them are strings.
     Type personType;
@@ -88,20 +110,7 @@ public class Person {
      * @return returns the string of the type of person
      */
     public String getPersonTypeString() {
-
-        if(personType == Type.ARCHITECT){
-            return "Architect";
-        } else if (personType == Type.CONTRACTOR){
-            return "Contractor";
-        } else if (personType == Type.CUSTOMER){
-            return "Customer";
-        } else if (personType == Type.ENGINEER){
-            return "Structural Engineer";
-        } else if (personType == Type.MANAGER){
-            return "Project Manager";
-        } else{
-            return null;
-        }
+        return personType.displayName;
     }
 
     /**
@@ -0,0 +1,233 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * This class stores the people attached to projects. Every role is stored in the same way, in a table of its own
+ * whose columns start with the role's prefix, so the SQL for each role is built once from the description in
+ * Person.Type and kept here. The same code then handles every role.
+ * <p>
+ * Which people work on which project is recorded in the project_member table, one row per (project, role, person),
+ * so a project can have any number of people in a role. The teams of many projects are loaded together in one query
+ * rather than joining every role's table to every project row.
+ */
+public class PersonRepository {
+
+    static final String CREATE_MEMBER_TABLE = "CREATE TABLE project_member (" +
+            "proj_num INT NOT NULL, " +
+            "role VARCHAR(20) NOT NULL, " +
+            "person_name VARCHAR(100) NOT NULL, " +
+            "PRIMARY KEY (proj_num, role, person_name), " +
+            "INDEX member_person (role, person_name))";
+    // The main person in each role of the existing projects becomes the first member of the project's team.
+    static final String COPY_MEMBERS = "INSERT INTO project_member (proj_num, role, person_name) " +
+            Arrays.stream(Person.Type.values())
+                    .map(type -> "SELECT proj_num, '" + type.name() + "', " + type.projectColumn + " FROM project_info")
+                    .collect(Collectors.joining(" UNION ALL "));
+    // Projects inserted into project_info by any version of the program, including changes replayed from the
+    // offline journal, get the same members.
+    static final String CREATE_MEMBER_TRIGGER = "CREATE TRIGGER project_members AFTER INSERT ON project_info " +
+            "FOR EACH ROW INSERT INTO project_member (proj_num, role, person_name) VALUES " +
+            Arrays.stream(Person.Type.values())
+                    .map(type -> "(NEW.proj_num, '" + type.name() + "', NEW." + type.projectColumn + ")")
+                    .collect(Collectors.joining(", "));
+    static final String INSERT_MEMBER = "INSERT INTO project_member (proj_num, role, person_name) VALUES (?, ?, ?)";
+
+    // The details of a person that can be changed, and the column each is stored in without the role's prefix.
+    public static final Map<String, String> DETAIL_COLUMNS = Map.of("phone", "tele", "email", "email",
+            "address", "address");
+
+    /**
+     * This class holds the SQL statements for one role.
+     * @param insert adds a person
+     * @param insertIfMissing adds a person unless someone with the same name is already in the role's table
+     * @param linkProject sets the person of the role on a project
+     * @param deleteIfUnused removes a person who is no longer on any project
+     * @param deleteOrphans removes a batch of the people who are no longer on any project
+     * @param updateDetails changes one detail of a person, keyed on the detail's name
+     * @param renameMember changes the name of a person in a project's team
+     * @param selectMembers finds the people in the role on a list of projects, without the list itself
+     */
+    private record RoleStatements(String insert, String insertIfMissing, String linkProject, String deleteIfUnused,
+                                  String deleteOrphans, Map<String, String> updateDetails, String renameMember,
+                                  String selectMembers) {
+    }
+
+    private static final Map<Person.Type, RoleStatements> STATEMENTS = new EnumMap<>(Person.Type.class);
+
+    static {
+
+        for(Person.Type type : Person.Type.values()){
+
+            String nameColumn = type.columnPrefix + "name";
+            Map<String, String> updateDetails = new HashMap<>();
+
+            for(Map.Entry<String, String> detail : DETAIL_COLUMNS.entrySet()){
+                updateDetails.put(detail.getKey(), "UPDATE " + type.table + " SET " + type.columnPrefix +
+                        detail.getValue() + " = ? WHERE " + nameColumn + " = ?");
+            }
+
+            // The columns of every role are renamed to the same names, so the roles can be combined in one query.
+            String prefix = "t." + type.columnPrefix;
+
+            STATEMENTS.put(type, new RoleStatements(
+                    "INSERT INTO " + type.table + " VALUES (?, ?, ?, ?)",
+                    "INSERT IGNORE INTO " + type.table + " VALUES (?, ?, ?, ?)",
+                    "UPDATE project_info SET " + type.projectColumn + " = ? WHERE proj_num = ?",
+                    "DELETE FROM " + type.table + " WHERE " + nameColumn + " = ? AND NOT EXISTS " +
+                            "(SELECT 1 FROM project_member WHERE role = '" + type.name() + "' AND person_name = ?)",
+                    "DELETE FROM " + type.table + " WHERE NOT EXISTS (SELECT 1 FROM project_member WHERE role = '" +
+                            type.name() + "' AND person_name = " + nameColumn + ") LIMIT ?",
+                    Map.copyOf(updateDetails),
+                    "UPDATE project_member SET person_name = ? WHERE proj_num = ? AND role = '" + type.name() +
+                            "' AND person_name = ?",
+                    "SELECT m.proj_num, m.role, " + prefix + "name AS person_name, " + prefix + "tele AS " +
+                            "person_tele, " + prefix + "email AS person_email, " + prefix + "address AS " +
+                            "person_address, p.proj_num IS NOT NULL AS is_lead FROM project_member m " +
+                            "INNER JOIN " + type.table + " t ON " + prefix + "name = m.person_name " +
+                            "LEFT JOIN project_info p ON p.proj_num = m.proj_num AND p." + type.projectColumn +
+                            " = m.person_name WHERE m.role = '" + type.name() + "' AND m.proj_num IN "));
+
+        }
+    }
+
+    /**
+     * The addInsert() method adds an insert of a person into the table of their role to an operation.
+     * @param operation the operation the insert is added to
+     * @param person the person to be inserted
+     */
+    public static void addInsert(SqlOperation operation, Person person){
+
+        operation.add(STATEMENTS.get(person.personType).insert(), person.getName(), person.getPhone(),
+                person.getEmail(), person.getAddress());
+
+    }
+
+    /**
+     * The addMember() method adds the statements that put a person in a project's team. A person who already works
+     * on another project is not inserted again, and keeps the details already stored for them.
+     * @param operation the operation the statements are added to
+     * @param projectNumber the project
+     * @param person the person joining the team
+     */
+    public static void addMember(SqlOperation operation, int projectNumber, Person person){
+
+        operation.add(STATEMENTS.get(person.personType).insertIfMissing(), person.getName(), person.getPhone(),
+                        person.getEmail(), person.getAddress())
+                .add(INSERT_MEMBER, projectNumber, person.personType.name(), person.getName());
+
+    }
+
+    /**
+     * The addRename() method adds the statements that rename the person of a role on a project. As the name is the
+     * key of the person's row, a copy of the person is inserted under the new name and the project is pointed at it.
+     * The row with the old name is removed unless another project still uses it.
+     * @param operation the operation the statements are added to
+     * @param projectNumber the project whose person is renamed
+     * @param person the person being renamed
+     * @param newName the new name
+     */
+    public static void addRename(SqlOperation operation, int projectNumber, Person person, String newName){
+
+        RoleStatements statements = STATEMENTS.get(person.personType);
+
+        operation.add(statements.insert(), newName, person.getPhone(), person.getEmail(), person.getAddress())
+                .add(statements.linkProject(), newName, projectNumber)
+                .add(statements.renameMember(), newName, projectNumber, person.getName())
+                .add(statements.deleteIfUnused(), person.getName(), person.getName());
+
+    }
+
+    /**
+     * The addUpdate() method adds a statement that changes one detail of a person.
+     * @param operation the operation the statement is added to
+     * @param person the person being changed
+     * @param detail the detail being changed, one of the keys of DETAIL_COLUMNS
+     * @param value the new value
+     */
+    public static void addUpdate(SqlOperation operation, Person person, String detail, String value){
+
+        String sql = STATEMENTS.get(person.personType).updateDetails().get(detail);
+        if(sql == null){
+            throw new IllegalArgumentException("Unknown detail: " + detail);
+        }
+
+        operation.add(sql, value, person.getName());
+
+    }
+
+    /**
+     * The deleteOrphans() method removes people of a role who no longer work on any project, up to a limit, so that
+     * each call is a short transaction.
+     * @param connection an open connection to the database
+     * @param type the role
+     * @param limit the largest number of people removed
+     * @return the number of people removed
+     * @throws SQLException if the people could not be removed
+     */
+    public static int deleteOrphans(Connection connection, Person.Type type, int limit) throws SQLException {
+
+        try(PreparedStatement statement = connection.prepareStatement(STATEMENTS.get(type).deleteOrphans())){
+
+            statement.setInt(1, limit);
+            return statement.executeUpdate();
+        }
+    }
+
+    /**
+     * The loadTeams() method loads the teams of a list of projects and adds each person to their project. The
+     * projects are loaded poised.memberBatchSize at a time (500 by default), with one query for every role of all of
+     * them.
+     * @param connection an open connection to the database
+     * @param projects the projects, keyed on their project number
+     * @throws SQLException if the database could not be read
+     */
+    public static void loadTeams(Connection connection, Map<Integer, Project> projects) throws SQLException {
+
+        List<Integer> projectNumbers = new ArrayList<>(projects.keySet());
+        int batchSize = Config.getInt("poised.memberBatchSize", 500);
+
+        for(int first = 0; first < projectNumbers.size(); first += batchSize){
+
+            List<Integer> batch = projectNumbers.subList(first, Math.min(first + batchSize,
+                    projectNumbers.size()));
+            String placeholders = ProjectRepository.placeholders(batch.size());
+
+            // The people of every role are found in one query, with the list of projects repeated for each role. The
+            // people named in project_info come first, so they become the projects' main people in their roles.
+            String sql = Arrays.stream(Person.Type.values())
+                    .map(type -> STATEMENTS.get(type).selectMembers() + placeholders)
+                    .collect(Collectors.joining(" UNION ALL ")) + " ORDER BY is_lead DESC";
+
+            try(PreparedStatement statement = connection.prepareStatement(sql)){
+
+                int index = 1;
+                for(int i = 0; i < Person.Type.values().length; i++){
+                    for(int projectNumber : batch){
+                        statement.setInt(index++, projectNumber);
+                    }
+                }
+
+                try(ResultSet members = statement.executeQuery()){
+
+                    while(members.next()){
+
+                        Person.Type type = Person.Type.valueOf(members.getString("role"));
+                        projects.get(members.getInt("proj_num")).addMember(new Person(type,
+                                members.getString("person_name"), members.getString("person_tele"),
+                                members.getString("person_email"), members.getString("person_address")));
+
+                    }
+                }
+            }
+        }
+    }
+}
@@ -7,10 +7,14 @@
  * @version 1.1
  */
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.*;
 import java.sql.Date;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 
 /**
@@ -30,21 +34,113 @@ public class Poised {
     public static final String PERSON_PHONE = "'s telephone number: ";
     public static final String PERSON_EMAIL = "'s email address: ";
     public static final String PERSON_ADDRESS = "'s physical address: ";
-    public static final String DATABASE_URL = "jdbc:mysql://localhost:3306/poisedpms?useSSL=false";
-    public static final String DATABASE_USER = "admin";
-    public static final String DATABASE_PASS = "adm1n";
-    // This is variable contains a SQL statement that joins all the tables together based on the linked columns.
-    public static final String JOIN_TABLES = "SELECT * FROM project_info " +
-            "INNER JOIN pay_complete ON project_info.proj_num = pay_complete.proj_num " +
-            "INNER JOIN build_info ON project_info.erf_num = build_info.erf_num " +
-            "INNER JOIN architect ON project_info.architect = architect.arch_name " +
-            "INNER JOIN contractor ON project_info.contractor = contractor.cont_name " +
-            "INNER JOIN customer ON project_info.customer = customer.cust_name " +
-            "INNER JOIN engineer ON project_info.engineer = engineer.engi_name " +
-            "INNER JOIN project_manager ON project_info.project_manager = project_manager.pm_name";
+
+    // When the program is started with --write-behind, fee and payment edits are queued here instead of being
+    // written to the database before the operator can continue.
+    private static WriteBehindQueue writeBehind = null;
+    // Changes that cannot be written because the database is unreachable are kept in this journal until it returns.
+    private static OfflineJournal offlineJournal = null;
+    // The running totals of the amounts owed, or null if they are still loading or could not be loaded.
+    private static volatile ReceivablesSummary receivables = null;
+    // Tells whether a project name or ERF number is new without asking the database, or null until it is built.
+    private static volatile ProjectKeyFilter keyFilter = null;
+    // When the program is started with --off-heap-store, the project lists are read from this store instead of the
+    // database. It is null if it is not used, or is still loading or could not be loaded.
+    private static volatile OffHeapProjectStore projectStore = null;
+    // Loads the structures above in the background when the program starts.
+    private static StartupWarmup warmup = null;
 
     public static void main(String [] args){
 
+        // With --tenant <id>, the program works on the projects of that firm instead of the default one.
+        int tenantArg = Arrays.asList(args).indexOf("--tenant");
+        if(tenantArg >= 0){
+
+            try{
+                Database.setTenant(tenantArg + 1 < args.length ? args[tenantArg + 1] : "");
+            } catch(IllegalArgumentException | IOException e){
+
+                System.out.println("Could not use the tenant: " + e.getMessage());
+                return;
+
+            }
+        }
+
+        try{
+            offlineJournal = OfflineJournal.open();
+            if(Files.exists(Database.tenantFile(OfflineJournal.DEAD_LETTER_FILE))){
+                System.out.println("Some changes saved while offline were rejected by the database. They are kept " +
+                        "in " + OfflineJournal.DEAD_LETTER_FILE + ".");
+            }
+        } catch(IOException e){
+            System.out.println("Could not open the offline journal. Changes cannot be saved while offline.");
+        }
+
+        // Any columns or tables the program relies on that are missing from the database are added.
+        try{
+            SchemaUpdates.apply();
+        } catch(SQLException e){
+            System.out.println("Could not check the database for updates.");
+        }
+
+        // With --batch <file>, the commands in the file are run instead of showing the menus.
+        int batchArg = Arrays.asList(args).indexOf("--batch");
+        if(batchArg >= 0){
+
+            if(batchArg + 1 >= args.length){
+                System.out.println("Enter the command file after --batch.");
+            } else {
+                BatchCommands.run(Path.of(args[batchArg + 1]));
+            }
+
+            if(offlineJournal != null){
+                offlineJournal.close();
+            }
+            return;
+
+        }
+
+        if(Arrays.asList(args).contains("--write-behind")){
+
+            try{
+                writeBehind = WriteBehindQueue.open();
+                if(Files.exists(Database.tenantFile(WriteBehindQueue.REJECTED_FILE))){
+                    System.out.println("Some queued edits were rejected by the database. They are kept in " +
+                            WriteBehindQueue.REJECTED_FILE + ".");
+                }
+            } catch(IOException e){
+                System.out.println("Could not open the write-behind journal. Edits will be saved directly.");
+            }
+        }
+
+        // Deleted projects are removed from the database in the background. Projects finalised long ago are moved
+        // to the archive by the one copy of the program started with --archiver.
+        ProjectPurge.start();
+        if(Arrays.asList(args).contains("--archiver")){
+            ProjectArchive.startArchiver();
+        }
+
+        // The structures built from every project are loaded in the background while the menus are used, from the
+        // snapshot of the projects and the changes since it was written. Reminders of upcoming and reached deadlines
+        // are written to the mailer's outbox once theirs is loaded.
+        ProjectSnapshot.start();
+        warmup = new StartupWarmup()
+                .add("receivables", "Could not load the receivables totals.",
+                        () -> receivables = ReceivablesSummary.start())
+                .add("project names", "Could not load the project names. Each new name will be checked in the " +
+                        "database.", () -> keyFilter = ProjectKeyFilter.start())
+                .whenReady(ProjectSnapshot::release);
+        // Reminders are only sent by the one copy of the program started with --reminders.
+        if(Arrays.asList(args).contains("--reminders")){
+            warmup.add("reminders", "Could not load the deadline reminders. No reminders will be sent.",
+                    DeadlineReminders::start);
+        }
+        if(Arrays.asList(args).contains("--off-heap-store")){
+            warmup.add("off-heap store", "Could not build the off-heap project store. Projects will be listed from " +
+                    "the database.", () -> projectStore = OffHeapProjectStore.start());
+        }
+        warmup.start();
+
         // A while loop runs until the user enters 'exit'. This while loop will be used as a menu.
         String userChoice = "";
         while (!userChoice.equals("exit")) {
@@ -56,8 +152,7 @@ public class Poised {
                         exit - exit the program
                         """);
 
-            Scanner userInput = new Scanner(System.in);
-            userChoice = userInput.nextLine();
+            userChoice = ConsoleInput.readLine();
 
             // An enhanced switch statement is used to run the appropriate code based on user input.
             switch (userChoice) {
@@ -107,8 +202,14 @@ public class Poised {
                 // If the user inputs anything else, this message is shown and the while loop repeats.
                 default -> System.out.println(INPUT_ERROR);
             }
+        }
 
-            userInput.close();
+        // Any edits still queued are written to the database before the program exits.
+        if(writeBehind != null){
+            writeBehind.close();
+        }
+        if(offlineJournal != null){
+            offlineJournal.close();
         }
     }
 
@@ -116,103 +217,178 @@ public class Poised {
      * The inputNewProjectInfo() method gathers input from the user in order to create a new ProjectInfo object.
      * It takes the final project number from the mySQL table project_info, adds one,
      * and sets it as the project number for the new ProjectInfo object.
+     * If the database cannot be reached, the project name is not checked and the project number is taken from the
+     * offline journal instead, so that the user's input is not lost.
      * @return new ProjectInfo object.
      */
     private static ProjectInfo inputNewProjectInfo(){
 
-        Scanner projectInfo = new Scanner(System.in);
+        // The questions are asked again from the start until all the input is valid.
+        while(true){
 
-        // A try-with-resources block is executed in order to check the connection to the mySQL database,
-        // as well as to make sure there are no input mismatches.
-        try(Connection connection = DriverManager.getConnection(DATABASE_URL, DATABASE_USER, DATABASE_PASS);
-            // A Prepared Statement is used in order to prevent SQL errors or SQL injection.
-            PreparedStatement statement = connection.prepareStatement("SELECT * FROM project_info " +
-                    "WHERE ? IN (proj_name)")){
+            // A try-catch block is executed in order to make sure there are no input mismatches.
+            try{
 
-            System.out.println("Enter the project name (Optional): ");
-            String projectName = projectInfo.nextLine();
+                System.out.println("Enter the project name (Optional): ");
+                String projectName = ConsoleInput.readLine();
 
-            // The ? in the Prepared Statement is set to projectName.
-            statement.setString(1, projectName);
+                // The project name is checked against the database, unless the database cannot be reached.
+                boolean online = true;
+                try{
 
-            ResultSet projects = statement.executeQuery();
+                    if(projectNameExists(projectName)){
 
-            // The if statement uses the ResultSet to determine if the project name already exists.
-            // https://stackoverflow.com/questions/867194/java-resultset-how-to-check-if-there-are-any-results
-            if(projects.isBeforeFirst()){
+                        System.out.println("This project name already exists. Try again.");
+                        continue;
 
-                System.out.println("This project name already exists. Try again.");
-                return inputNewProjectInfo();
+                    }
 
-            }
+                } catch(SQLException e){
+
+                    System.out.println("Could not connect to database. The project will be saved locally.");
+                    online = false;
+
+                }
+
+                System.out.println("Enter the building type: ");
+                String building = ConsoleInput.readLine();
+
+                System.out.println("Enter the building address: ");
+                String buildingAddress = ConsoleInput.readLine();
+
+                System.out.println("Enter the ERF Number: ");
+                int erf = ConsoleInput.readInt();
+
+                // A building can only be added once, so its ERF number must not be used already.
+                if(online){
 
-            System.out.println("Enter the building type: ");
-            String building = projectInfo.nextLine();
+                    try{
 
-            System.out.println("Enter the building address: ");
-            String buildingAddress = projectInfo.nextLine();
+                        if(erfNumberExists(erf)){
 
-            System.out.println("Enter the ERF Number: ");
-            int erf = projectInfo.nextInt();
+                            System.out.println("A building with this ERF number already exists. Try again.");
+                            continue;
 
-            System.out.println("Enter the total fee: ");
-            double fee = projectInfo.nextInt();
-            projectInfo.nextLine();
+                        }
+
+                    } catch(SQLException e){
 
-            System.out.println("Enter the deadline (yyyy-mm-dd): ");
-            String deadline = projectInfo.nextLine();
-            LocalDate deadlineDate = formatDate(deadline);
+                        System.out.println("Could not connect to database. The project will be saved locally.");
+                        online = false;
 
-            // If the deadline input is before the current date, then a while loop runs until it is set after.
-            while(deadlineDate.isBefore(LocalDate.now())){
+                    }
+                }
+
+                System.out.println("Enter the total fee: ");
+                double fee = ConsoleInput.readInt();
 
-                System.out.println("The deadline cannot be set to a past date. Try Again.");
                 System.out.println("Enter the deadline (yyyy-mm-dd): ");
-                deadline = projectInfo.nextLine();
-                deadlineDate = formatDate(deadline);
+                String deadline = ConsoleInput.readLine();
+                LocalDate deadlineDate = formatDate(deadline);
 
-            }
+                // If the deadline input is before the current date, then a while loop runs until it is set after.
+                while(deadlineDate.isBefore(LocalDate.now())){
+
+                    System.out.println("The deadline cannot be set to a past date. Try Again.");
+                    System.out.println("Enter the deadline (yyyy-mm-dd): ");
+                    deadline = ConsoleInput.readLine();
+                    deadlineDate = formatDate(deadline);
 
-            // If any input information is empty (aside from the optional project name), then this error is called.
-            if(building.isEmpty() || buildingAddress.isEmpty() || erf == 0 || fee == 0 || deadline.isEmpty()){
+                }
 
-                System.out.println("Make sure you input all relevant information. Try Again.");
-                return inputNewProjectInfo();
+                // If any input information is empty (aside from the optional project name), then this error is called.
+                if(building.isEmpty() || buildingAddress.isEmpty() || erf == 0 || fee == 0 || deadline.isEmpty()){
 
-            }
+                    System.out.println("Make sure you input all relevant information. Try Again.");
+                    continue;
+
+                }
 
-            // A new ProjectInfo object is created.
-            ProjectInfo newProjectInfo = new ProjectInfo(projectName, building, buildingAddress,
-                    erf, fee, deadlineDate);
+                // A new ProjectInfo object is created.
+                ProjectInfo newProjectInfo = new ProjectInfo(projectName, building, buildingAddress,
+                        erf, fee, deadlineDate);
 
-            int projectNumber = 0;
+                newProjectInfo.setProjectNumber(getNextProjectNumber(online));
 
-            // The largest project number in the project_info table is determined and one is added to this number.
-            projects = statement.executeQuery("SELECT proj_num FROM project_info ORDER BY proj_num DESC LIMIT 1");
+                // If all the input is valid, then the new object is returned.
+                return newProjectInfo;
+
+            } catch(InputMismatchException | DateTimeParseException e){
+
+                System.out.println(INPUT_ERROR);
 
-            while (projects.next()){
-                projectNumber = projects.getInt("proj_num");
             }
+        }
+    }
 
-            newProjectInfo.setProjectNumber(projectNumber + 1);
+    /**
+     * The projectNameExists() method checks whether a project with the given name is already in the database.
+     * @param projectName the name to be checked
+     * @return true if the name is already used
+     * @throws SQLException if the database cannot be reached
+     */
+    private static boolean projectNameExists(String projectName) throws SQLException {
 
-            projects.close();
+        // Only a name the filter cannot rule out is looked up, in the archive and in the project tables.
+        if(keyFilter != null && !keyFilter.nameMightExist(projectName)){
+            return false;
+        }
 
-            // If all the input is valid, then the new object is returned.
-            return newProjectInfo;
+        // Archived projects keep their names.
+        try(Connection connection = Database.getReadConnection()){
+            return ProjectArchive.nameExists(connection, projectName) ||
+                    ProjectRepository.nameExists(connection, projectName);
+        }
+    }
 
-        } catch(InputMismatchException e){
+    /**
+     * The erfNumberExists() method checks whether a building with the given ERF number is already in the database.
+     * @param erfNumber the ERF number to be checked
+     * @return true if the ERF number is already used
+     * @throws SQLException if the database cannot be reached
+     */
+    private static boolean erfNumberExists(int erfNumber) throws SQLException {
 
-            System.out.println(INPUT_ERROR);
-            return inputNewProjectInfo();
+        if(keyFilter != null && !keyFilter.erfMightExist(erfNumber)){
+            return false;
+        }
 
-        } catch(SQLException e){
+        try(Connection connection = Database.getReadConnection()){
+            return ProjectRepository.erfExists(connection, erfNumber);
+        }
+    }
+
+    /**
+     * The getNextProjectNumber() method takes the next project number from the project counter in the database.
+     * If the database cannot be reached, or there are changes in the offline journal that have not yet been sent to
+     * it, the offline journal gives out a provisional number instead, and the project is given its real number when
+     * it is sent to the database.
+     * @param online false if the database is already known to be unreachable
+     * @return the project number for a new project
+     */
+    private static int getNextProjectNumber(boolean online){
+
+        if(online && (offlineJournal == null || !offlineJournal.hasPendingChanges())){
+
+            try(Connection connection = Database.getConnection()){
 
+                return ProjectRepository.allocateProjectNumbers(connection, 1);
+
+            } catch(SQLException e){
+                // The number is given out by the offline journal below.
+            }
+        }
+
+        if(offlineJournal == null){
             System.out.println("Could not connect to database.");
             System.exit(0);
-            return inputNewProjectInfo();
-
         }
+
+        int projectNumber = offlineJournal.nextProvisionalNumber();
+        System.out.println("The project has been given the provisional number " + projectNumber + ". It will be " +
+                "given its project number when it is saved to the database.");
+
+        return projectNumber;
     }
 
     /**
@@ -224,53 +400,54 @@ public class Poised {
      */
     private static Person inputNewPersonInfo(String personType){
 
-        Scanner personInfo = new Scanner(System.in);
-
-        // A try-catch block is executed in order to make sure the user inputs the correct input.
-        try{
+        // The questions are asked again from the start until all the input is valid.
+        while(true){
 
-            System.out.println(ENTER_COMMAND + personType + PERSON_NAME);
-            String personName = personInfo.nextLine();
+            // A try-catch block is executed in order to make sure the user inputs the correct input.
+            try{
 
-            System.out.println(ENTER_COMMAND + personType + PERSON_PHONE);
-            String personPhone = personInfo.nextLine();
+                System.out.println(ENTER_COMMAND + personType + PERSON_NAME);
+                String personName = ConsoleInput.readLine();
 
-            // The phone number input by the user is validated to make sure it stars with a 0 or a +.
-            personPhone = validatePhoneNum(personPhone, personType);
+                System.out.println(ENTER_COMMAND + personType + PERSON_PHONE);
+                String personPhone = ConsoleInput.readLine();
 
-            System.out.println(ENTER_COMMAND + personType + PERSON_EMAIL);
-            String personEmail = personInfo.nextLine();
+                // The phone number input by the user is validated to make sure it stars with a 0 or a +.
+                personPhone = validatePhoneNum(personPhone, personType);
 
-            System.out.println(ENTER_COMMAND + personType + PERSON_ADDRESS);
-            String personAddress = personInfo.nextLine();
+                System.out.println(ENTER_COMMAND + personType + PERSON_EMAIL);
+                String personEmail = ConsoleInput.readLine();
 
-            // If any input information is empty, then this error is printed and the method is called again.
-            if(personName.isEmpty() || personEmail.isEmpty() || personAddress.isEmpty()){
+                System.out.println(ENTER_COMMAND + personType + PERSON_ADDRESS);
+                String personAddress = ConsoleInput.readLine();
 
-                System.out.println("Make sure you input all relevant information. Try Again.");
-                return inputNewPersonInfo(personType);
+                // If any input information is empty, then this error is printed and the questions are asked again.
+                if(personName.isEmpty() || personEmail.isEmpty() || personAddress.isEmpty()){
 
-            }
+                    System.out.println("Make sure you input all relevant information. Try Again.");
+                    continue;
 
-            // An enhanced switch is used to create the Person object with the appropriate person type.
-            return switch (personType) {
-                case ARCHITECT_STRING -> new Person(Person.Type.ARCHITECT, personName, personPhone,
-                        personEmail, personAddress);
-                case CONTRACTOR_STRING -> new Person(Person.Type.CONTRACTOR, personName, personPhone,
-                        personEmail, personAddress);
-                case CUSTOMER_STRING -> new Person(Person.Type.CUSTOMER, personName, personPhone,
-                        personEmail, personAddress);
-                case ENGINEER_STRING -> new Person(Person.Type.ENGINEER, personName, personPhone,
-                        personEmail, personAddress);
-                case MANAGER_STRING -> new Person(Person.Type.MANAGER, personName, personPhone,
-                        personEmail, personAddress);
-                default -> null;
-            };
+                }
 
-        } catch(Exception e){
-            // If the user inputs anything invalid, then an error is printed and the method is called again.
-            System.out.println(INPUT_ERROR);
-            return inputNewPersonInfo(personType);
+                // An enhanced switch is used to create the Person object with the appropriate person type.
+                return switch (personType) {
+                    case ARCHITECT_STRING -> new Person(Person.Type.ARCHITECT, personName, personPhone,
+                            personEmail, personAddress);
+                    case CONTRACTOR_STRING -> new Person(Person.Type.CONTRACTOR, personName, personPhone,
+                            personEmail, personAddress);
+                    case CUSTOMER_STRING -> new Person(Person.Type.CUSTOMER, personName, personPhone,
+                            personEmail, personAddress);
+                    case ENGINEER_STRING -> new Person(Person.Type.ENGINEER, personName, personPhone,
+                            personEmail, personAddress);
+                    case MANAGER_STRING -> new Person(Person.Type.MANAGER, personName, personPhone,
+                            personEmail, personAddress);
+                    default -> null;
+                };
+
+            } catch(Exception e){
+                // If the user inputs anything invalid, then an error is printed and the questions are asked again.
+                System.out.println(INPUT_ERROR);
+            }
         }
     }
 
@@ -278,118 +455,131 @@ public class Poised {
      * The addProject() method takes a new Project object and inserts it into the PoisedPMS database.
      * It does this by adding the information one table at a time. The project_info table is the last table
      * to have information insert due to the fact that it's a child table of the others.
-     * Prepared statements are used inside nested try-with-resources, allowing for safer, more dynamic insertion
-     * into the mySQL database.
+     * All the inserts are saved together as one operation, so that they are either all made or, if the database
+     * cannot be reached, all kept in the offline journal.
      * @param newProject The type of person for the Person object
      */
     private static void addProject(Project newProject){
 
-        try(Connection connection = DriverManager.getConnection(DATABASE_URL, DATABASE_USER, DATABASE_PASS)){
+        ProjectInfo info = newProject.projectInfo;
+        SqlOperation insert = ProjectRepository.insert(newProject).publishes(new ProjectEvent.Created(
+                info.getProjectNumber(), info.getProjectName(), info.getBuildingType(), info.getAddress(),
+                info.getErfNumber(), info.getTotalFee(), formatDate(info.getDeadline())));
 
-            try(PreparedStatement payComplete = connection.prepareStatement("INSERT INTO pay_complete " +
-                    "VALUES (?, ?, ?, ?, ?, ?, ?)")){
+        // If there are any errors with inserting the data, this error occurs.
+        if(!saveChange(insert)){
+            System.out.println("Could not add to database.");
+        }
+    }
 
-                payComplete.setInt(1, newProject.projectInfo.getProjectNumber());
-                payComplete.setDouble(2, newProject.projectInfo.getTotalFee());
-                payComplete.setDouble(3, 0);
-                payComplete.setDouble(4, newProject.projectInfo.getTotalOwed());
-                payComplete.setString(5, newProject.projectInfo.getDeadline());
-                payComplete.setString(6, "N");
-                payComplete.setString(7, null);
+    /**
+     * The saveProjectChange() method saves a change to a project that increases its row version. If it is saved,
+     * the version in memory is increased to match. If it is not saved, the project is reloaded from the database so
+     * that the user sees the latest information before trying again.
+     * @param project the project being changed
+     * @param operation the change to be saved
+     * @return true if the change was saved
+     */
+    private static boolean saveProjectChange(Project project, SqlOperation operation){
 
-                payComplete.executeUpdate();
+        if(saveChange(operation)){
 
-            }
+            project.projectInfo.setVersion(project.projectInfo.getVersion() + 1);
+            return true;
 
-            try(PreparedStatement buildInfo = connection.prepareStatement("INSERT INTO build_info VALUES (?, ?, ?)")){
+        }
 
-                buildInfo.setInt(1, newProject.projectInfo.getErfNumber());
-                buildInfo.setString(2, newProject.projectInfo.getBuildingType());
-                buildInfo.setString(3, newProject.projectInfo.getAddress());
+        reloadProject(project);
+        return false;
+    }
 
-                buildInfo.executeUpdate();
+    /**
+     * The reloadProject() method replaces the information held in a Project object with the latest information from
+     * the database. If the database cannot be reached, the project is left unchanged.
+     * @param project the project to be reloaded
+     */
+    private static void reloadProject(Project project){
 
-            }
+        try(Connection connection = Database.getConnection()){
 
-            try(PreparedStatement architectInfo = connection.prepareStatement("INSERT INTO architect " +
-                    "VALUES (?, ?, ?, ?)")){
+            Project latest = ProjectRepository.findByNumber(connection, project.projectInfo.getProjectNumber());
 
-                architectInfo.setString(1, newProject.architect.getName());
-                architectInfo.setString(2, newProject.architect.getPhone());
-                architectInfo.setString(3, newProject.architect.getEmail());
-                architectInfo.setString(4, newProject.architect.getAddress());
+            if(latest != null){
 
-                architectInfo.executeUpdate();
+                project.projectInfo = latest.projectInfo;
+                project.architect = latest.architect;
+                project.contractor = latest.contractor;
+                project.customer = latest.customer;
+                project.engineer = latest.engineer;
+                project.manager = latest.manager;
+                project.team = latest.team;
+                project.finalise = latest.finalise;
 
             }
 
-            try(PreparedStatement contractorInfo = connection.prepareStatement("INSERT INTO contractor " +
-                    "VALUES (?, ?, ?, ?)")){
+        } catch(SQLException e){
+            // The project stays as it is until the database can be reached.
+        }
+    }
 
-                contractorInfo.setString(1, newProject.contractor.getName());
-                contractorInfo.setString(2, newProject.contractor.getPhone());
-                contractorInfo.setString(3, newProject.contractor.getEmail());
-                contractorInfo.setString(4, newProject.contractor.getAddress());
+    /**
+     * The saveChange() method writes a change to the database. If the database cannot be reached, or earlier changes
+     * are still waiting in the offline journal, the change is added to the journal instead and sent to the database
+     * later, so that the database always receives changes in the order they were made. The change's events are
+     * published when it is committed, so a change kept in the journal is only published once it has been sent.
+     * @param operation the change to be saved
+     * @return true if the change was written to the database or the journal, false if it was rejected
+     */
+    private static boolean saveChange(SqlOperation operation){
 
-                contractorInfo.executeUpdate();
+        if(offlineJournal == null || !offlineJournal.hasPendingChanges()){
 
-            }
+            try(Connection connection = Database.getConnection()){
 
-            try(PreparedStatement customerInfo = connection.prepareStatement("INSERT INTO customer " +
-                    "VALUES (?, ?, ?, ?)")){
+                try{
 
-                customerInfo.setString(1, newProject.customer.getName());
-                customerInfo.setString(2, newProject.customer.getPhone());
-                customerInfo.setString(3, newProject.customer.getEmail());
-                customerInfo.setString(4, newProject.customer.getAddress());
+                    operation.execute(connection);
+                    return true;
 
-                customerInfo.executeUpdate();
+                } catch(ConcurrentUpdateException e){
 
-            }
+                    System.out.println("This project was changed by someone else. The latest information has been " +
+                            "loaded. Try again.");
+                    return false;
 
-            try(PreparedStatement engineerInfo = connection.prepareStatement("INSERT INTO engineer " +
-                    "VALUES (?, ?, ?, ?)")){
+                } catch(SQLException e){
 
-                engineerInfo.setString(1, newProject.engineer.getName());
-                engineerInfo.setString(2, newProject.engineer.getPhone());
-                engineerInfo.setString(3, newProject.engineer.getEmail());
-                engineerInfo.setString(4, newProject.engineer.getAddress());
+                    // The database rejected the change, so it is not journaled.
+                    if(ProjectRepository.isDuplicateName(e)){
+                        System.out.println("This project name already exists. Try again.");
+                    }
+                    return false;
 
-                engineerInfo.executeUpdate();
+                }
 
+            } catch(SQLException e){
+                // The database cannot be reached, so the change is journaled below.
             }
 
-            try(PreparedStatement managerInfo = connection.prepareStatement("INSERT INTO project_manager " +
-                    "VALUES (?, ?, ?, ?)")){
+            if(offlineJournal == null){
 
-                managerInfo.setString(1, newProject.manager.getName());
-                managerInfo.setString(2, newProject.manager.getPhone());
-                managerInfo.setString(3, newProject.manager.getEmail());
-                managerInfo.setString(4, newProject.manager.getAddress());
-
-                managerInfo.executeUpdate();
+                System.out.println("Could not connect to database.");
+                return false;
 
             }
+        }
 
-            try(PreparedStatement projectInfo = connection.prepareStatement("INSERT INTO project_info " +
-                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?)")){
-
-                projectInfo.setInt(1, newProject.projectInfo.getProjectNumber());
-                projectInfo.setString(2, newProject.projectInfo.getProjectName());
-                projectInfo.setInt(3, newProject.projectInfo.getErfNumber());
-                projectInfo.setString(4, newProject.architect.getName());
-                projectInfo.setString(5, newProject.contractor.getName());
-                projectInfo.setString(6, newProject.customer.getName());
-                projectInfo.setString(7, newProject.engineer.getName());
-                projectInfo.setString(8, newProject.manager.getName());
+        try{
 
-                projectInfo.executeUpdate();
+            offlineJournal.append(operation);
+            System.out.println("The change has been saved locally and will be sent to the database " +
+                    "once it can be reached.");
+            return true;
 
-            }
+        } catch(IOException e){
 
-        }catch (Exception e){
-            // If there are any errors with inserting the data in any of the try statements, this error occurs.
-            System.out.println("Could not add to database.");
+            System.out.println("Could not connect to database or save the change locally.");
+            return false;
 
         }
     }
@@ -406,9 +596,11 @@ public class Poised {
                         Select an option:
                         incomplete - view all incomplete projects
                         overdue - view all overdue projects
+                        find - find several projects by number, name or ERF number
+                        payments - view payments received in a period
+                        receivables - view the totals owed on all projects
                         back - go back""");
-            Scanner updateChoice = new Scanner(System.in);
-            userViewChoice = updateChoice.nextLine();
+            userViewChoice = ConsoleInput.readLine();
 
             switch (userViewChoice) {
 
@@ -418,6 +610,40 @@ public class Poised {
                 // In this case, 'overdue' is passed as a parameter for the printProjects() method.
                 case "overdue" -> printProjects("overdue");
 
+                // In this case, the projects matching a list of numbers and names are printed.
+                case "find" -> findProjects();
+
+                // In this case, the payments received between two dates are printed from the payment ledger.
+                case "payments" -> {
+
+                    try{
+
+                        System.out.println("Enter the first date of the period (yyyy-mm-dd): ");
+                        LocalDate from = formatDate(ConsoleInput.readLine());
+                        System.out.println("Enter the last date of the period (yyyy-mm-dd): ");
+                        LocalDate to = formatDate(ConsoleInput.readLine());
+
+                        PaymentLedger.printReceivables(from, to);
+
+                    } catch(DateTimeParseException e){
+                        System.out.println(INPUT_ERROR);
+                    } catch(SQLException e){
+                        System.out.println("Could not connect to database.");
+                    }
+                }
+
+                // In this case, the running totals of the amounts owed are printed.
+                case "receivables" -> {
+
+                    if(receivables == null && !warmup.isReady()){
+                        System.out.println("The receivables totals are still loading. " + warmup.progress());
+                    } else if(receivables == null){
+                        System.out.println("The receivables totals are not available.");
+                    } else {
+                        receivables.print();
+                    }
+                }
+
                 // In this case, a blank line is printed and the while loop exits.
                 case "back" -> System.out.println();
 
@@ -427,71 +653,116 @@ public class Poised {
         }
     }
 
+    /**
+     * The findProjects() method asks the user for a list of project numbers, names and ERF numbers, separated by
+     * commas, and prints the projects matching each of them. The whole list is looked up at once.
+     */
+    private static void findProjects(){
+
+        System.out.println("Enter the project numbers, names or ERF numbers, separated by commas: ");
+        List<String> searchTerms = Arrays.stream(ConsoleInput.readLine().split(","))
+                .map(String::trim)
+                .filter(term -> !term.isEmpty())
+                .toList();
+
+        try(Connection connection = Database.getReadConnection()){
+
+            for(Map.Entry<String, List<ProjectSummary>> match :
+                    ProjectRepository.findMany(connection, searchTerms).entrySet()){
+
+                System.out.println(match.getKey() + ":");
+
+                if(match.getValue().isEmpty()){
+                    System.out.println("No project found.");
+                }
+                for(ProjectSummary project : match.getValue()){
+                    System.out.println(project);
+                }
+            }
+
+        } catch(SQLException e){
+            System.out.println("Could not connect to database.");
+        }
+    }
+
     /**
      * The printProjects() method prints out either all, incomplete, or overdue projects, depending on the parameter
      * passed through the method. It does this by first checking the parameter and creating a ResultSet.
-     * This ResultSet is then used to create an Array of Projects and if the array is not empty,
-     * then all projects are printed.
+     * This ResultSet is then used to create an Array of project summaries and if the array is not empty,
+     * then all projects are printed, one per line.
      * @param printParameter This parameter is used to define which projects will be printed.
      */
     private static void printProjects(String printParameter){
 
-        try(Connection connection = DriverManager.getConnection(DATABASE_URL, DATABASE_USER, DATABASE_PASS);
-            Statement statement = connection.createStatement()){
+        // With the off-heap store, the projects are printed straight from it, without being gathered into a list.
+        OffHeapProjectStore store = projectStore;
+        if(store != null){
 
-            ResultSet selectedRows;
+            LocalDate today = LocalDate.now();
+            int[] printed = {0};
 
-            // If the parameter is 'overdue',the ResultSet will include projects with deadlines before the current date.
-            if(printParameter.equals("overdue")){
+            boolean read = store.forEach(project -> {
+
+                boolean listed = switch (printParameter) {
+                    case "overdue" -> project.getDeadlineDate().isBefore(today);
+                    case "incomplete" -> !project.isFinalised();
+                    default -> true;
+                };
+
+                if(listed){
+                    System.out.println(project.getSummary());
+                    printed[0]++;
+                }
+            });
+
+            if(read){
+
+                if(printed[0] == 0){
+                    printNoProjectsFound(printParameter);
+                }
+                return;
 
-                LocalDate today = LocalDate.now();
+            }
+        }
 
-                String dateToday = today.toString();
+        try(Connection connection = Database.getReadConnection()){
 
-                selectedRows = statement.executeQuery(JOIN_TABLES + " WHERE pay_complete.deadline < '"
-                        + dateToday + "'");
+            ArrayList<ProjectSummary> listOfProjects;
+
+            // If the parameter is 'overdue', the list will include projects with deadlines before the current date.
+            if(printParameter.equals("overdue")){
+
+                listOfProjects = ProjectRepository.findOverdue(connection, LocalDate.now());
 
             }
-            // If the parameter is 'incomplete', the ResultSet will include projects where the finalised column is 'N'.
+            // If the parameter is 'incomplete', the list will include projects where the finalised column is 'N'.
             else if (printParameter.equals("incomplete")) {
 
-                selectedRows = statement.executeQuery(JOIN_TABLES + " WHERE finalised='N'");
+                listOfProjects = ProjectRepository.findIncomplete(connection);
 
             }
-            // If the parameter is anything else, then all projects are added to the ResultSet.
+            // If the parameter is anything else, then all projects are added to the list.
             else{
 
-                selectedRows = statement.executeQuery(JOIN_TABLES);
+                listOfProjects = ProjectRepository.findAll(connection);
 
             }
 
-            ArrayList<Project> listOfProjects = createProjectObjects(selectedRows);
-
             // If the array list is empty, then a variety of possible error statements are printed.
             // Otherwise, the projects in the array are printed.
-            if (listOfProjects.isEmpty() && printParameter.equals("overdue")) {
-
-                System.out.println("No overdue projects found.");
+            if (listOfProjects.isEmpty()) {
 
-            } else if(listOfProjects.isEmpty() && printParameter.equals("incomplete")) {
-
-                System.out.println("No incomplete projects found.");
-
-            }else if(listOfProjects.isEmpty() && printParameter.equals("all")){
-
-                System.out.println("No projects found.");
+                printNoProjectsFound(printParameter);
 
             }else{
 
-                for(Project project : listOfProjects){
+                for(ProjectSummary project : listOfProjects){
 
                     System.out.println(project);
 
                 }
             }
 
-            selectedRows.close();
-
         } catch(Exception e){
 
             System.out.println("Could not add to database.");
@@ -499,66 +770,82 @@ public class Poised {
         }
     }
 
+    /**
+     * The printNoProjectsFound() method prints the message shown when no projects are listed.
+     * @param printParameter the projects that were listed: 'all', 'incomplete' or 'overdue'
+     */
+    private static void printNoProjectsFound(String printParameter){
+
+        switch (printParameter) {
+            case "overdue" -> System.out.println("No overdue projects found.");
+            case "incomplete" -> System.out.println("No incomplete projects found.");
+            case "all" -> System.out.println("No projects found.");
+            default -> { }
+        }
+    }
+
     /**
      * The searchToUpdate() method allows the user to search for a Project to update using its project name or number.
+     * The user can search again from the update menu, which returns here rather than starting a new search inside
+     * the menu, so the menus never grow the call stack.
      */
     private static void searchToUpdate(){
 
-        // A Prepared Statement is used during the search to allow for safer, dynamic insertion into the mySQL database.
-        try(Connection connection = DriverManager.getConnection(DATABASE_URL, DATABASE_USER, DATABASE_PASS);
-            PreparedStatement statement = connection.prepareStatement(JOIN_TABLES +
-                    " WHERE project_info.proj_num = ? OR proj_name = ?")){
+        boolean searchAgain = true;
+        while(searchAgain){
 
             // The user is asked to enter a project name or number, or to enter 'back' to exit the search function.
-            Scanner userInput = new Scanner(System.in);
             System.out.println("Enter the name or number of the project you wish to update (Enter 'back' to exit): ");
-            String searchString = userInput.nextLine();
+            String searchString = ConsoleInput.readLine();
+
+            if(searchString.equals("back")){
+                return;
+            }
 
-            // A ResultSet, an empty integer and a placeholder statement is declared.
-            ResultSet selectedRows;
-            int projID;
-            statement.setInt(1, 0);
+            // A placeholder project number is declared.
+            int projID = 0;
 
             // If the search string is numerical, then it is parsed into an integer set as the project number.
             if(isNumeric(searchString)){
 
                 projID = Integer.parseInt(searchString);
 
-                statement.setInt(1, projID);
-
             }
 
-            // The search string is set as the project name.
-            statement.setString(2, searchString);
-
-            selectedRows = statement.executeQuery();
+            // An array list of all projects matching the number or the name is created. The connection is closed
+            // before the user is shown the update menu.
+            ArrayList<ProjectSummary> projectList;
+            try(Connection connection = Database.getReadConnection()){
 
-            // An array list of all projects in the ResultSet are created.
-            ArrayList<Project> projectList = createProjectObjects(selectedRows);
+                projectList = ProjectRepository.findByNumberOrName(connection, projID, searchString);
 
-            // If the array list is empty, then the project doesn't exist and the user is told so.
-            if (projectList.isEmpty()) {
+            } catch(SQLException e){
 
-                System.out.println("No project found. Try again.");
+                System.out.println("Could not connect to database.");
+                return;
 
             }
-            // If the array has one project in, the project is printed and the getUpdateOptions() method is called.
-            else if (projectList.size() == 1){
 
-                for(Project project : projectList){
+            // If the array list is empty, the archive is searched. If the project is not there either, then it
+            // doesn't exist and the user is told so.
+            if (projectList.isEmpty()) {
 
-                    System.out.println(project);
+                printArchivedProjects(projID, searchString);
+                searchAgain = false;
 
-                }
+            }
+            // If the array has one project in, the getUpdateOptions() method is called, which loads and prints the
+            // full project.
+            else if (projectList.size() == 1){
 
-                getUpdateOptions(projectList.get(0));
+                searchAgain = getUpdateOptions(projectList.get(0));
 
             }
             // If the array has more than one project, then they are printed out and the user is told to be more
             // specific in their search.
             else{
 
-                for(Project project : projectList){
+                for(ProjectSummary project : projectList){
 
                     System.out.println(project);
 
@@ -566,22 +853,68 @@ public class Poised {
 
                 System.out.println("Multiple projects found. Please refine your search " +
                         "with the appropriate project number.");
+                searchAgain = false;
             }
+        }
+    }
 
-            selectedRows.close();
+    /**
+     * The printArchivedProjects() method prints the archived projects with the given project number or name.
+     * Archived projects can be viewed but not updated.
+     * @param projectNumber the project number searched for, or 0 to search by name only
+     * @param projectName the project name searched for
+     */
+    private static void printArchivedProjects(int projectNumber, String projectName){
 
-        } catch(Exception e){
+        List<Project> archivedProjects = List.of();
+        try(Connection connection = Database.getReadConnection()){
+            archivedProjects = ProjectArchive.find(connection, projectNumber, projectName);
+        } catch(SQLException | IOException e){
+            System.out.println("Could not read the project archive.");
+        }
 
-            System.out.println("Could not connect to database.");
+        if(archivedProjects.isEmpty()){
+
+            System.out.println("No project found. Try again.");
+            return;
+
+        }
 
+        for(Project project : archivedProjects){
+            System.out.println(project);
         }
+        System.out.println("This project has been archived and can no longer be updated.");
     }
 
     /**
-     * This method lets the user choose which aspect of a project they would like to update.
-     * @param projectToUpdate the project that will be updated
+     * This method lets the user choose which aspect of a project they would like to update. The full project,
+     * including the contact details of everyone on it, is only loaded here, once the user has chosen it.
+     * @param summary the summary of the project that will be updated
+     * @return true if the user chose to search for another project
      */
-    private static void getUpdateOptions(Project projectToUpdate){
+    private static boolean getUpdateOptions(ProjectSummary summary){
+
+        Project projectToUpdate;
+        try(Connection connection = Database.getConnection()){
+
+            projectToUpdate = ProjectRepository.findByNumber(connection, summary.projectNumber());
+
+        } catch(SQLException e){
+
+            System.out.println("Could not connect to database.");
+            return false;
+
+        }
+
+        // The project may have been deleted since it was found.
+        if(projectToUpdate == null){
+
+            System.out.println("No project found. Try again.");
+            return false;
+
+        }
+
+        System.out.println(projectToUpdate);
 
         // A menu is printed to allow the user to input what aspect of the project they would like to update.
         boolean exit = false;
@@ -594,12 +927,12 @@ public class Poised {
                         customer - update customer info
                         engineer - update structural engineer info
                         manager - update project manager info
+                        team - add a person to the project team
                         f - finalise project
                         delete - delete project
                         search - search for another project
                         back - go back""");
-            Scanner updateChoice = new Scanner(System.in);
-            String userUpdateChoice = updateChoice.nextLine();
+            String userUpdateChoice = ConsoleInput.readLine();
 
             switch (userUpdateChoice) {
 
@@ -618,22 +951,18 @@ public class Poised {
                             "address - update " + userUpdateChoice + "'s address\n" +
                             "back - go back");
 
-                    String updateAspect = updateChoice.nextLine();
-
-                    // The appropriate method will run based on the user input.
-                    switch (userUpdateChoice) {
-                        case ARCHITECT_STRING -> updateArchitect(projectToUpdate, updateAspect);
-                        case CONTRACTOR_STRING -> updateContractor(projectToUpdate, updateAspect);
-                        case CUSTOMER_STRING -> updateCustomer(projectToUpdate, updateAspect);
-                        case "engineer" -> updateEngineer(projectToUpdate, updateAspect);
-                        case "manager" -> updateManager(projectToUpdate, updateAspect);
-                        default -> {
-                            System.out.println("Invalid input. Try again.");
-                            getUpdateOptions(projectToUpdate);
-                        }
+                    String updateAspect = ConsoleInput.readLine();
 
+                    // If the user inputs 'back', this menu is shown again.
+                    if(updateAspect.equals("back")){
+                        continue;
                     }
+
+                    // The menu choices are the names of the roles, so the role is found from the choice.
+                    updatePerson(projectToUpdate, Person.Type.valueOf(userUpdateChoice.toUpperCase()), updateAspect);
                 }
+                // In this case, another person is added to the project in one of the roles.
+                case "team" -> addTeamMember(projectToUpdate);
                 // In this case, the finalise() method is called and the while loop exits.
                 case "f" -> {
                     finalise(projectToUpdate);
@@ -643,13 +972,17 @@ public class Poised {
                 }
                 // In this case, deleteProject() runs and 'exit' is set to true or false from the method's return.
                 case "delete" -> exit = deleteProject(projectToUpdate);
-                // In this case, the user can search for a different project.
-                case "search" -> searchToUpdate();
+                // In this case, the menu closes and the search asks for a different project.
+                case "search" -> {
+                    return true;
+                }
                 // If the user inputs 'back', then the while loop exits.
                 case "back" -> exit = true;
                 default -> System.out.println(INPUT_ERROR);
             }
         }
+
+        return false;
     }
     /**
      * The updateProjectInfo() method allows a user select which aspect of the project information they would like
@@ -659,7 +992,6 @@ public class Poised {
      */
     private static void updateProjectInfo(Project projectToUpdate){
 
-        Scanner projectInfoChoice = new Scanner(System.in);
         boolean exit = false;
         while(!exit){
 
@@ -673,78 +1005,95 @@ public class Poised {
                             deadline - deadline
                             back - go back""");
 
-            String projectAspect = projectInfoChoice.nextLine();
-
-            // A try-with-resource block is used containing various prepared statements to help update the tables
-            // in the mySQL database in a dynamic way.
-            try(Connection connection = DriverManager.getConnection(DATABASE_URL, DATABASE_USER, DATABASE_PASS);
-                PreparedStatement projectName = connection.prepareStatement("UPDATE project_info SET proj_name = ? " +
-                        "WHERE proj_num = ?");
-                PreparedStatement buildType = connection.prepareStatement("UPDATE build_info SET build_type = ? " +
-                        "WHERE erf_num = ?");
-                PreparedStatement buildAddress = connection.prepareStatement("UPDATE build_info SET build_address = ? " +
-                        "WHERE erf_num = ?");
-                PreparedStatement fee = connection.prepareStatement("UPDATE pay_complete SET total_fee = ? " +
-                        "WHERE proj_num = ?");
-                PreparedStatement owed = connection.prepareStatement("UPDATE pay_complete SET total_owed = ? " +
-                        "WHERE proj_num = ?");
-                PreparedStatement paid = connection.prepareStatement("UPDATE pay_complete SET total_paid = ? " +
-                        "WHERE proj_num = ?");
-                PreparedStatement deadline = connection.prepareStatement("UPDATE pay_complete SET deadline = ? " +
-                        "WHERE proj_num = ?")){
+            String projectAspect = ConsoleInput.readLine();
+
+            // In write-behind mode, fee and payment edits are queued without waiting for a database connection.
+            if(writeBehind != null && (projectAspect.equals("fee") || projectAspect.equals("paid"))){
+
+                queueFinancialEdit(projectToUpdate, projectAspect);
+
+                // The project is printed out with the updated information.
+                System.out.println(projectToUpdate);
+                continue;
+
+            }
+
+            int projectNumber = projectToUpdate.projectInfo.getProjectNumber();
+            int erfNumber = projectToUpdate.projectInfo.getErfNumber();
+
+            // A try-catch block is used to make sure the user inputs the correct type of information. Each change is
+            // saved as an operation, which is kept in the offline journal if the database cannot be reached.
+            try{
 
                 switch (projectAspect){
 
                     // Depending on the input, the relevant aspect will be updated in the appropriate table
-                    // and updated in the project object.
+                    // and updated in the project object. Each change checks the project's row version, so it is
+                    // only saved if nobody else has changed the project since it was loaded.
                     case "name":
                         System.out.println("Enter the new project name:");
-                        String userUpdateChoice = projectInfoChoice.nextLine();
+                        String userUpdateChoice = ConsoleInput.readLine();
 
-                        projectName.setString(1, userUpdateChoice);
-                        projectName.setInt(2, projectToUpdate.projectInfo.getProjectNumber());
+                        SqlOperation rename = ProjectRepository.versionCheck("rename project", projectToUpdate)
+                                .add("UPDATE project_info SET proj_name = ? WHERE proj_num = ?", userUpdateChoice,
+                                        projectNumber)
+                                .publishes(new ProjectEvent.Renamed(projectNumber, userUpdateChoice));
 
-                        projectName.executeUpdate();
-
-                        projectToUpdate.projectInfo.setProjectName(userUpdateChoice);
+                        if(saveProjectChange(projectToUpdate, rename)){
+                            projectToUpdate.projectInfo.setProjectName(userUpdateChoice);
+                        }
 
                         break;
                     case "type":
                         System.out.println("Enter the new building type:");
-                        userUpdateChoice = projectInfoChoice.nextLine();
+                        userUpdateChoice = ConsoleInput.readLine();
 
-                        buildType.setString(1, userUpdateChoice);
-                        buildType.setInt(2, projectToUpdate.projectInfo.getErfNumber());
+                        SqlOperation retype = ProjectRepository.versionCheck("update building type of project",
+                                projectToUpdate)
+                                .add("UPDATE build_info SET build_type = ? WHERE erf_num = ?", userUpdateChoice,
+                                        erfNumber)
+                                .publishes(new ProjectEvent.BuildingChanged(projectNumber, userUpdateChoice,
+                                        projectToUpdate.projectInfo.getAddress()));
 
-                        buildType.executeUpdate();
-
-                        projectToUpdate.projectInfo.setBuildingType(userUpdateChoice);
+                        if(saveProjectChange(projectToUpdate, retype)){
+                            projectToUpdate.projectInfo.setBuildingType(userUpdateChoice);
+                        }
 
                         break;
                     case "address":
                         System.out.println("Enter the address:");
-                        userUpdateChoice = projectInfoChoice.nextLine();
+                        userUpdateChoice = ConsoleInput.readLine();
 
-                        buildAddress.setString(1, userUpdateChoice);
-                        buildAddress.setInt(2, projectToUpdate.projectInfo.getErfNumber());
-                        buildAddress.executeUpdate();
+                        SqlOperation readdress = ProjectRepository.versionCheck("update address of project",
+                                projectToUpdate)
+                                .add("UPDATE build_info SET build_address = ? WHERE erf_num = ?", userUpdateChoice,
+                                        erfNumber)
+                                .publishes(new ProjectEvent.BuildingChanged(projectNumber,
+                                        projectToUpdate.projectInfo.getBuildingType(), userUpdateChoice));
 
-                        projectToUpdate.projectInfo.setAddress(userUpdateChoice);
+                        if(saveProjectChange(projectToUpdate, readdress)){
+                            projectToUpdate.projectInfo.setAddress(userUpdateChoice);
+                        }
 
                         break;
                     case "fee":
                         System.out.println("Enter the new fee:");
-                        double userUpdateChoice2 = projectInfoChoice.nextDouble();
+                        double userUpdateChoice2 = ConsoleInput.readDouble();
 
-                        fee.setDouble(1, userUpdateChoice2);
-                        fee.setInt(2, projectToUpdate.projectInfo.getProjectNumber());
-                        fee.executeUpdate();
+                        // The fee and the amount owed are updated together. The amount owed is worked out from the
+                        // total paid in the database rather than the one in memory.
+                        if(saveProjectChange(projectToUpdate, new SqlOperation("update fee of project " +
+                                projectNumber)
+                                .addCompareAndSet("UPDATE pay_complete SET total_fee = ?, " +
+                                        "total_owed = ? - total_paid, row_version = row_version + 1 " +
+                                        "WHERE proj_num = ? AND row_version = ?",
+                                        userUpdateChoice2, userUpdateChoice2, projectNumber,
+                                        projectToUpdate.projectInfo.getVersion())
+                                .publishes(new ProjectEvent.FeeChanged(projectNumber, userUpdateChoice2)))){
 
-                        projectToUpdate.projectInfo.setTotalFee(userUpdateChoice2);
+                            projectToUpdate.projectInfo.setTotalFee(userUpdateChoice2);
 
-                        owed.setDouble(1, projectToUpdate.projectInfo.getTotalOwed());
-                        owed.setInt(2, projectToUpdate.projectInfo.getProjectNumber());
-                        owed.executeUpdate();
+                        }
 
                         break;
 
@@ -756,36 +1105,42 @@ public class Poised {
 
                         // The user inputs the amount to be paid.
                         System.out.println("Enter amount paid: ");
-                        double newFeePaid = projectInfoChoice.nextDouble();
+                        double newFeePaid = ConsoleInput.readDouble();
 
-                        double newTotalPaid = newFeePaid + projectToUpdate.projectInfo.getTotalPaid();
+                        String paymentReference = inputPaymentReference();
 
-                        paid.setDouble(1, newTotalPaid);
-                        paid.setInt(2, projectToUpdate.projectInfo.getProjectNumber());
-                        paid.executeUpdate();
+                        // The payment is inserted into the payment ledger, which adds it to the total paid in the
+                        // database, so a payment recorded by someone else at the same time is not lost.
+                        String payRef = PaymentLedger.newPaymentRef();
+                        if(saveProjectChange(projectToUpdate, PaymentLedger.recordPayment(payRef, projectNumber,
+                                newFeePaid, LocalDate.now(), paymentReference)
+                                .publishes(new ProjectEvent.PaymentRecorded(projectNumber, newFeePaid, payRef)))){
 
-                        projectToUpdate.projectInfo.setTotalPaid(newTotalPaid);
+                            projectToUpdate.projectInfo.setTotalPaid(newFeePaid +
+                                    projectToUpdate.projectInfo.getTotalPaid());
 
-                        owed.setDouble(1, projectToUpdate.projectInfo.getTotalOwed());
-                        owed.setInt(2, projectToUpdate.projectInfo.getProjectNumber());
-                        owed.executeUpdate();
+                        }
 
                         break;
 
                     case "deadline":
                         System.out.println("The current due date is: " + projectToUpdate.projectInfo.getDeadline()
                                 + "\nEnter new due date (yyyy-mm-dd): ");
-                        userUpdateChoice = projectInfoChoice.nextLine();
+                        userUpdateChoice = ConsoleInput.readLine();
 
                         // The input is converted to a LocalDate variable and returned.
                         LocalDate newDeadlineDate = formatDate(userUpdateChoice);
 
-                        deadline.setString(1, userUpdateChoice);
-                        deadline.setInt(2, projectToUpdate.projectInfo.getProjectNumber());
+                        if(saveProjectChange(projectToUpdate, new SqlOperation("update deadline of project " +
+                                projectNumber)
+                                .addCompareAndSet("UPDATE pay_complete SET deadline = ?, " +
+                                        "row_version = row_version + 1 WHERE proj_num = ? AND row_version = ?",
+                                        userUpdateChoice, projectNumber, projectToUpdate.projectInfo.getVersion())
+                                .publishes(new ProjectEvent.DeadlineChanged(projectNumber, newDeadlineDate)))){
 
-                        deadline.executeUpdate();
+                            projectToUpdate.projectInfo.setDeadline(newDeadlineDate);
 
-                        projectToUpdate.projectInfo.setDeadline(newDeadlineDate);
+                        }
 
                         break;
 
@@ -802,16 +1157,10 @@ public class Poised {
 
                         break;
                 }
-            } catch(InputMismatchException e){
+            } catch(InputMismatchException | DateTimeParseException e){
 
+                // The menu is shown again so that the user can try again.
                 System.out.println(INPUT_ERROR);
-                updateProjectInfo(projectToUpdate);
-
-            } catch(SQLException e){
-
-                System.out.println("Could not connect to database.");
-                System.exit(0);
-                updateProjectInfo(projectToUpdate);
 
             }
             // The project is printed out with the updated information.
@@ -820,625 +1169,208 @@ public class Poised {
     }
 
     /**
-     * The updateArchitect() method updates the relevant information about the project's architect.
+     * The queueFinancialEdit() method updates the total fee or total paid of a project in memory and queues the change
+     * to be written to the database by the write-behind queue. The writer gives the project the row version it was
+     * written with once the edit reaches the database.
      * @param projectToUpdate the project that will be updated
-     * @param updateAspect the type of information being updated - ie name, phone, email, and address.
+     * @param projectAspect either 'fee' or 'paid'
      */
-    private static void updateArchitect(Project projectToUpdate, String updateAspect){
-
-        // A try-with-resource block is used containing various prepared statements to help update the architect table
-        // in the mySQL database in a dynamic way.
-        try(Connection connection = DriverManager.getConnection(DATABASE_URL, DATABASE_USER, DATABASE_PASS);
-            PreparedStatement insertAll = connection.prepareStatement("INSERT INTO architect VALUES (?, ?, ? ,?)");
-            PreparedStatement updateProjectInfo = connection.prepareStatement("UPDATE project_info " +
-                    "SET architect = ? WHERE proj_num = ?");
-            PreparedStatement deleteItem = connection.prepareStatement("DELETE FROM architect WHERE arch_name = ?");
-            PreparedStatement updatePhone = connection.prepareStatement("UPDATE architect SET arch_tele = ? " +
-                    "WHERE arch_name = ?");
-            PreparedStatement updateEmail = connection.prepareStatement("UPDATE architect SET arch_email = ? " +
-                    "WHERE arch_name = ?");
-            PreparedStatement updateAddress = connection.prepareStatement("UPDATE architect SET arch_address = ? " +
-                    "WHERE arch_name = ?")){
-
-            Scanner personInfoChoice = new Scanner(System.in);
-
-            switch(updateAspect){
-
-                // If the update aspect is 'all', then the method itself is called four times with all the parameters
-                // that can be entered. This therefore updates all the aspects of the architect.
-                case "all" -> {
-
-                    updateArchitect(projectToUpdate, "name");
-                    updateArchitect(projectToUpdate, "phone");
-                    updateArchitect(projectToUpdate, "email");
-                    updateArchitect(projectToUpdate, "address");
+    private static void queueFinancialEdit(Project projectToUpdate, String projectAspect){
 
-                }
-                // As an architect's name is a primary key and a secondary key, a new entry needs to be inserted,
-                // the related table needs to be updated and the original entry needs to be deleted.
-                case "name" -> {
-
-                    String originalName = projectToUpdate.architect.getName();
-
-                    System.out.println(ENTER_COMMAND + "new " + ARCHITECT_STRING + PERSON_NAME);
-                    String newArchitectName = personInfoChoice.nextLine();
-
-                    if(newArchitectName.isEmpty()){
-
-                        System.out.println("Make sure you input a name. Try Again.");
-                        updateArchitect(projectToUpdate, updateAspect);
-
-                    }
-
-                    insertAll.setString(1, newArchitectName);
-                    insertAll.setString(2, projectToUpdate.architect.getPhone());
-                    insertAll.setString(3, projectToUpdate.architect.getEmail());
-                    insertAll.setString(4, projectToUpdate.architect.getAddress());
-                    insertAll.executeUpdate();
-
-                    updateProjectInfo.setString(1, newArchitectName);
-                    updateProjectInfo.setInt(2, projectToUpdate.projectInfo.getProjectNumber());
-                    updateProjectInfo.executeUpdate();
-
-                    deleteItem.setString(1, originalName);
-                    deleteItem.executeUpdate();
-
-                    projectToUpdate.architect.setName(newArchitectName);
-
-                }
-                // The architect's phone is updated after being validated as a phone number starting with a 0 or +.
-                case "phone" -> {
-
-                    System.out.println(ENTER_COMMAND + ARCHITECT_STRING + PERSON_PHONE);
-                    String newArchitectPhone = personInfoChoice.nextLine();
-
-                    newArchitectPhone = validatePhoneNum(newArchitectPhone, ARCHITECT_STRING);
+        try{
 
-                    updatePhone.setString(1, newArchitectPhone);
-                    updatePhone.setString(2, projectToUpdate.architect.getName());
-                    updatePhone.executeUpdate();
+            if(projectAspect.equals("fee")){
 
-                    projectToUpdate.architect.setPhone(newArchitectPhone);
+                System.out.println("Enter the new fee:");
+                double newTotalFee = ConsoleInput.readDouble();
 
-                }
-                // The architect's email is updated.
-                case "email" -> {
+                // The edit is only applied to the project once it has been safely journaled.
+                writeBehind.queueFee(projectToUpdate.projectInfo, newTotalFee);
+                projectToUpdate.projectInfo.setTotalFee(newTotalFee);
 
-                    System.out.println(ENTER_COMMAND + ARCHITECT_STRING + PERSON_EMAIL);
-                    String newArchitectEmail = personInfoChoice.nextLine();
+            } else {
 
-                    updateEmail.setString(1, newArchitectEmail);
-                    updateEmail.setString(2, projectToUpdate.architect.getName());
-                    updateEmail.executeUpdate();
+                // The total paid is calculated by adding the new fee paid to the fee already paid.
+                System.out.println("The current amount paid out of R" +
+                        String.format("%.2f", projectToUpdate.projectInfo.getTotalFee()) +
+                        ": R" + String.format("%.2f", projectToUpdate.projectInfo.getTotalPaid()));
 
-                    projectToUpdate.architect.setEmail(newArchitectEmail);
+                System.out.println("Enter amount paid: ");
+                double newFeePaid = ConsoleInput.readDouble();
 
-                }
-                // The architect's address is updated.
-                case "address" -> {
+                writeBehind.queuePayment(projectToUpdate.projectInfo, newFeePaid, inputPaymentReference());
+                projectToUpdate.projectInfo.setTotalPaid(newFeePaid + projectToUpdate.projectInfo.getTotalPaid());
 
-                    System.out.println(ENTER_COMMAND + ARCHITECT_STRING + PERSON_ADDRESS);
-                    String newArchitectAddress = personInfoChoice.nextLine();
-
-                    updateAddress.setString(1, newArchitectAddress);
-                    updateAddress.setString(2, projectToUpdate.architect.getName());
-                    updateAddress.executeUpdate();
+            }
 
-                    projectToUpdate.architect.setAddress(newArchitectAddress);
+        } catch(InputMismatchException e){
 
-                }
-                // In this case, the previous method is called.
-                case "back" -> getUpdateOptions(projectToUpdate);
+            System.out.println(INPUT_ERROR);
 
-                default -> {
+        } catch(IOException e){
 
-                    System.out.println("You have input invalid information. Try Again.");
-                    getUpdateOptions(projectToUpdate);
+            System.out.println("Could not save the edit to the journal.");
 
-                }
-            }
-        } catch(Exception e){
-            System.out.println("Could not connect to database.");
         }
-        // The project is printed out with the updated information.
-        System.out.println(projectToUpdate);
     }
 
     /**
-     * The updateContractor() method updates the relevant information about the project's contractor.
-     * @param projectToUpdate the project that will be updated
-     * @param updateAspect the type of information being updated - ie name, phone, email, and address.
+     * The inputPaymentReference() method asks for the optional reference of a payment, until one that fits in the
+     * payment ledger is entered.
+     * @return the reference, or null if none was entered
      */
-    private static void updateContractor(Project projectToUpdate, String updateAspect){
-
-        // A try-with-resource block is used containing various prepared statements to help update the contractor table
-        // in the mySQL database in a dynamic way.
-        try(Connection connection = DriverManager.getConnection(DATABASE_URL, DATABASE_USER, DATABASE_PASS);
-            PreparedStatement insertAll = connection.prepareStatement("INSERT INTO contractor VALUES (?, ?, ? ,?)");
-            PreparedStatement updateProjectInfo = connection.prepareStatement("UPDATE project_info " +
-                    "SET contractor = ? WHERE proj_num = ?");
-            PreparedStatement deleteItem = connection.prepareStatement("DELETE FROM contractor WHERE cont_name = ?");
-            PreparedStatement updatePhone = connection.prepareStatement("UPDATE contractor SET cont_tele = ? " +
-                    "WHERE cont_name = ?");
-            PreparedStatement updateEmail = connection.prepareStatement("UPDATE contractor SET cont_email = ? " +
-                    "WHERE cont_name = ?");
-            PreparedStatement updateAddress = connection.prepareStatement("UPDATE contractor SET cont_address = ? " +
-                    "WHERE cont_name = ?")){
-
-            Scanner personInfoChoice = new Scanner(System.in);
-
-            switch(updateAspect){
-
-                // If the update aspect is 'all', then the method itself is called four times with all the parameters
-                // that can be entered. This therefore updates all the aspects of the contractor.
-                case "all" -> {
-
-                    updateContractor(projectToUpdate, "name");
-                    updateContractor(projectToUpdate, "phone");
-                    updateContractor(projectToUpdate, "email");
-                    updateContractor(projectToUpdate, "address");
-
-                }
-                // As a contractor's name is a primary key and a secondary key, a new entry needs to be inserted,
-                // the related table needs to be updated and the original entry needs to be deleted.
-                case "name" -> {
-
-                    String originalName = projectToUpdate.contractor.getName();
-
-                    System.out.println(ENTER_COMMAND + "new " + CONTRACTOR_STRING + PERSON_NAME);
-                    String newContractorName = personInfoChoice.nextLine();
-
-                    if(newContractorName.isEmpty()){
-
-                        System.out.println("Make sure you input all relevant information. Try Again.");
-                        updateContractor(projectToUpdate, updateAspect);
-
-                    }
-
-                    insertAll.setString(1, newContractorName);
-                    insertAll.setString(2, projectToUpdate.contractor.getPhone());
-                    insertAll.setString(3, projectToUpdate.contractor.getEmail());
-                    insertAll.setString(4, projectToUpdate.contractor.getAddress());
-                    insertAll.executeUpdate();
+    private static String inputPaymentReference(){
 
-                    updateProjectInfo.setString(1, newContractorName);
-                    updateProjectInfo.setInt(2, projectToUpdate.projectInfo.getProjectNumber());
-                    updateProjectInfo.executeUpdate();
+        System.out.println("Enter the payment reference (Optional): ");
+        String paymentReference = ConsoleInput.readLine();
 
-                    deleteItem.setString(1, originalName);
-                    deleteItem.executeUpdate();
+        while(!PaymentLedger.referenceFits(paymentReference)){
 
-                    projectToUpdate.contractor.setName(newContractorName);
+            System.out.println("The payment reference can be at most " + PaymentLedger.MAX_REFERENCE_LENGTH +
+                    " characters. Try again.");
+            System.out.println("Enter the payment reference (Optional): ");
+            paymentReference = ConsoleInput.readLine();
 
-                }
-                // The contractor's phone is updated after being validated as a phone number starting with a 0 or +.
-                case "phone" -> {
-
-                    System.out.println(ENTER_COMMAND + CONTRACTOR_STRING + PERSON_PHONE);
-                    String newContractorPhone = personInfoChoice.nextLine();
-
-                    newContractorPhone = validatePhoneNum(newContractorPhone, CONTRACTOR_STRING);
-
-                    updatePhone.setString(1, newContractorPhone);
-                    updatePhone.setString(2, projectToUpdate.contractor.getName());
-                    updatePhone.executeUpdate();
-
-                    projectToUpdate.contractor.setPhone(newContractorPhone);
-
-                }
-                // The contractor's email is updated.
-                case "email" -> {
-
-                    System.out.println(ENTER_COMMAND + CONTRACTOR_STRING + PERSON_EMAIL);
-                    String newContractorEmail = personInfoChoice.nextLine();
-
-                    updateEmail.setString(1, newContractorEmail);
-                    updateEmail.setString(2, projectToUpdate.contractor.getName());
-                    updateEmail.executeUpdate();
-
-                    projectToUpdate.contractor.setEmail(newContractorEmail);
-
-                }
-                // The contractor's address is updated.
-                case "address" -> {
-
-                    System.out.println(ENTER_COMMAND + CONTRACTOR_STRING + PERSON_ADDRESS);
-                    String newContractorAddress = personInfoChoice.nextLine();
-
-                    updateAddress.setString(1, newContractorAddress);
-                    updateAddress.setString(2, projectToUpdate.contractor.getName());
-                    updateAddress.executeUpdate();
-
-                    projectToUpdate.contractor.setAddress(newContractorAddress);
-
-                }
-                // In this case, the previous method is called.
-                case "back" -> getUpdateOptions(projectToUpdate);
-                default -> {
-
-                    System.out.println("You have input invalid information. Try Again.");
-                    getUpdateOptions(projectToUpdate);
-
-                }
-            }
-        } catch(Exception e){
-            System.out.println("Invalid input. Try again.");
         }
-        // The project is printed out with the updated information.
-        System.out.println(projectToUpdate);
+
+        return paymentReference.isEmpty() ? null : paymentReference;
     }
 
     /**
-     * The updateCustomer() method updates the relevant information about the project's customer.
+     * The updatePerson() method updates the relevant information about the project's person in the given role.
+     * The change is checked against the project's row version and saved like any other change to the project, so it
+     * is kept in the offline journal if the database cannot be reached.
      * @param projectToUpdate the project that will be updated
-     * @param updateAspect the type of information being updated - ie name, phone, email, and address.
+     * @param type the role of the person being updated
+     * @param updateAspect the type of information being updated - ie all, name, phone, email, and address.
      */
-    private static void updateCustomer(Project projectToUpdate, String updateAspect){
-
-        // A try-with-resource block is used containing various prepared statements to help update the customer table
-        // in the mySQL database in a dynamic way.
-        try(Connection connection = DriverManager.getConnection(DATABASE_URL, DATABASE_USER, DATABASE_PASS);
-            PreparedStatement insertAll = connection.prepareStatement("INSERT INTO customer VALUES (?, ?, ? ,?)");
-            PreparedStatement updateProjectInfo = connection.prepareStatement("UPDATE project_info " +
-                    "SET customer = ? WHERE proj_num = ?");
-            PreparedStatement deleteItem = connection.prepareStatement("DELETE FROM customer WHERE cust_name = ?");
-            PreparedStatement updatePhone = connection.prepareStatement("UPDATE customer SET cust_tele = ? " +
-                    "WHERE cust_name = ?");
-            PreparedStatement updateEmail = connection.prepareStatement("UPDATE customer SET cust_email = ? " +
-                    "WHERE cust_name = ?");
-            PreparedStatement updateAddress = connection.prepareStatement("UPDATE customer SET cust_address = ? " +
-                    "WHERE cust_name = ?")){
-
-            Scanner personInfoChoice = new Scanner(System.in);
-
-            switch(updateAspect){
-
-                // If the update aspect is 'all', then the method itself is called four times with all the parameters
-                // that can be entered. This therefore updates all the aspects of the customer.
-                case "all" -> {
-
-                    updateCustomer(projectToUpdate, "name");
-                    updateCustomer(projectToUpdate, "phone");
-                    updateCustomer(projectToUpdate, "email");
-                    updateCustomer(projectToUpdate, "address");
-
-                }
-                // As a customer's name is a primary key and a secondary key, a new entry needs to be inserted,
-                // the related table needs to be updated and the original entry needs to be deleted.
-                case "name" -> {
-
-                    String originalName = projectToUpdate.customer.getName();
-
-                    System.out.println(ENTER_COMMAND + "new " + CUSTOMER_STRING + PERSON_NAME);
-                    String newCustomerName = personInfoChoice.nextLine();
-
-                    if(newCustomerName.isEmpty()){
-
-                        System.out.println("Make sure you input all relevant information. Try Again.");
-                        updateCustomer(projectToUpdate, updateAspect);
+    private static void updatePerson(Project projectToUpdate, Person.Type type, String updateAspect){
 
-                    }
-
-                    insertAll.setString(1, newCustomerName);
-                    insertAll.setString(2, projectToUpdate.customer.getPhone());
-                    insertAll.setString(3, projectToUpdate.customer.getEmail());
-                    insertAll.setString(4, projectToUpdate.customer.getAddress());
-                    insertAll.executeUpdate();
+        // If the update aspect is 'all', then the method itself is called four times with all the parameters
+        // that can be entered. This therefore updates all the aspects of the person, one after another.
+        if(updateAspect.equals("all")){
 
-                    updateProjectInfo.setString(1, newCustomerName);
-                    updateProjectInfo.setInt(2, projectToUpdate.projectInfo.getProjectNumber());
-                    updateProjectInfo.executeUpdate();
+            updatePerson(projectToUpdate, type, "name");
+            updatePerson(projectToUpdate, type, "phone");
+            updatePerson(projectToUpdate, type, "email");
+            updatePerson(projectToUpdate, type, "address");
+            return;
 
-                    deleteItem.setString(1, originalName);
-                    deleteItem.executeUpdate();
+        }
 
-                    projectToUpdate.customer.setName(newCustomerName);
+        Person person = projectToUpdate.getPerson(type);
+        String role = type.displayName.toLowerCase();
 
-                }
-                // The customer's phone is updated after being validated as a phone number starting with a 0 or +.
-                case "phone" -> {
+        // The new information is read before connecting to the database, so that no connection is held open while
+        // waiting for the user.
+        String newDetail;
+        switch(updateAspect){
 
-                    System.out.println(ENTER_COMMAND + CUSTOMER_STRING + PERSON_PHONE);
-                    String newCustomerPhone = personInfoChoice.nextLine();
+            // The name is asked for again until one is entered.
+            case "name" -> {
 
-                    newCustomerPhone = validatePhoneNum(newCustomerPhone, CUSTOMER_STRING);
+                System.out.println(ENTER_COMMAND + "new " + role + PERSON_NAME);
+                newDetail = ConsoleInput.readLine();
 
-                    updatePhone.setString(1, newCustomerPhone);
-                    updatePhone.setString(2, projectToUpdate.customer.getName());
-                    updatePhone.executeUpdate();
+                while(newDetail.isEmpty()){
 
-                    projectToUpdate.customer.setPhone(newCustomerPhone);
+                    System.out.println("Make sure you input a name. Try Again.");
+                    System.out.println(ENTER_COMMAND + "new " + role + PERSON_NAME);
+                    newDetail = ConsoleInput.readLine();
 
                 }
-                // The customer's email is updated.
-                case "email" -> {
-
-                    System.out.println(ENTER_COMMAND + CUSTOMER_STRING + PERSON_EMAIL);
-                    String newCustomerEmail = personInfoChoice.nextLine();
-
-                    updateEmail.setString(1, newCustomerEmail);
-                    updateEmail.setString(2, projectToUpdate.customer.getName());
-                    updateEmail.executeUpdate();
+            }
+            // The phone number is validated as a phone number starting with a 0 or +.
+            case "phone" -> {
 
-                    projectToUpdate.customer.setEmail(newCustomerEmail);
+                System.out.println(ENTER_COMMAND + role + PERSON_PHONE);
+                newDetail = validatePhoneNum(ConsoleInput.readLine(), role);
 
-                }
-                // The customer's address is updated.
-                case "address" -> {
+            }
+            case "email" -> {
 
-                    System.out.println(ENTER_COMMAND + CUSTOMER_STRING + PERSON_ADDRESS);
-                    String newCustomerAddress = personInfoChoice.nextLine();
+                System.out.println(ENTER_COMMAND + role + PERSON_EMAIL);
+                newDetail = ConsoleInput.readLine();
 
-                    updateAddress.setString(1, newCustomerAddress);
-                    updateAddress.setString(2, projectToUpdate.customer.getName());
-                    updateAddress.executeUpdate();
+            }
+            case "address" -> {
 
-                    projectToUpdate.customer.setAddress(newCustomerAddress);
+                System.out.println(ENTER_COMMAND + role + PERSON_ADDRESS);
+                newDetail = ConsoleInput.readLine();
 
-                }
-                // In this case, the previous method is called.
-                case "back" -> getUpdateOptions(projectToUpdate);
-                default -> {
+            }
+            // If the input is invalid, the user is returned to the update menu.
+            default -> {
 
-                    System.out.println("You have input invalid information. Try Again.");
-                    getUpdateOptions(projectToUpdate);
+                System.out.println(INPUT_ERROR);
+                return;
 
-                }
             }
-        } catch(Exception e){
-            System.out.println("Invalid input. Try again.");
         }
-        // The project is printed out with the updated information.
-        System.out.println(projectToUpdate);
-    }
-
-    /**
-     * The updateEngineer() method updates the relevant information about the project's structural engineer.
-     * @param projectToUpdate the project that will be updated
-     * @param updateAspect the type of information being updated - ie name, phone, email, and address.
-     */
-    private static void updateEngineer(Project projectToUpdate, String updateAspect){
-
-        // A try-with-resource block is used containing various prepared statements to help update the engineer table
-        // in the mySQL database in a dynamic way.
-        try(Connection connection = DriverManager.getConnection(DATABASE_URL, DATABASE_USER, DATABASE_PASS);
-            PreparedStatement insertAll = connection.prepareStatement("INSERT INTO engineer VALUES (?, ?, ? ,?)");
-            PreparedStatement updateProjectInfo = connection.prepareStatement("UPDATE project_info " +
-                    "SET engineer = ? WHERE proj_num = ?");
-            PreparedStatement deleteItem = connection.prepareStatement("DELETE FROM engineer WHERE engi_name = ?");
-            PreparedStatement updatePhone = connection.prepareStatement("UPDATE engineer SET engi_tele = ? " +
-                    "WHERE engi_name = ?");
-            PreparedStatement updateEmail = connection.prepareStatement("UPDATE engineer SET engi_email = ? " +
-                    "WHERE engi_name = ?");
-            PreparedStatement updateAddress = connection.prepareStatement("UPDATE engineer SET engi_address = ? " +
-                    "WHERE engi_name = ?")){
-
-            Scanner personInfoChoice = new Scanner(System.in);
-
-            switch(updateAspect){
-
-                // If the update aspect is 'all', then the method itself is called four times with all the parameters
-                // that can be entered. This therefore updates all the aspects of the engineer.
-                case "all" -> {
-
-                    updateEngineer(projectToUpdate, "name");
-                    updateEngineer(projectToUpdate, "phone");
-                    updateEngineer(projectToUpdate, "email");
-                    updateEngineer(projectToUpdate, "address");
-
-                }
-                // As an engineer's name is a primary key and a secondary key, a new entry needs to be inserted,
-                // the related table needs to be updated and the original entry needs to be deleted.
-                case "name" -> {
-
-                    String originalName = projectToUpdate.engineer.getName();
-
-                    System.out.println(ENTER_COMMAND + "new " + ENGINEER_STRING + PERSON_NAME);
-                    String newEngineerName = personInfoChoice.nextLine();
-
-                    if(newEngineerName.isEmpty()){
-
-                        System.out.println("Make sure you input all relevant information. Try Again.");
-                        updateEngineer(projectToUpdate, updateAspect);
-
-                    }
-
-                    insertAll.setString(1, newEngineerName);
-                    insertAll.setString(2, projectToUpdate.engineer.getPhone());
-                    insertAll.setString(3, projectToUpdate.engineer.getEmail());
-                    insertAll.setString(4, projectToUpdate.engineer.getAddress());
-                    insertAll.executeUpdate();
-
-                    updateProjectInfo.setString(1, newEngineerName);
-                    updateProjectInfo.setInt(2, projectToUpdate.projectInfo.getProjectNumber());
-                    updateProjectInfo.executeUpdate();
-
-                    deleteItem.setString(1, originalName);
-                    deleteItem.executeUpdate();
-
-                    projectToUpdate.engineer.setName(newEngineerName);
-
-                }
-                // The engineer's phone is updated after being validated as a phone number starting with a 0 or +.
-                case "phone" -> {
-
-                    System.out.println(ENTER_COMMAND + ENGINEER_STRING + PERSON_PHONE);
-                    String newEngineerPhone = personInfoChoice.nextLine();
-
-                    newEngineerPhone = validatePhoneNum(newEngineerPhone, ENGINEER_STRING);
-
-                    updatePhone.setString(1, newEngineerPhone);
-                    updatePhone.setString(2, projectToUpdate.engineer.getName());
-                    updatePhone.executeUpdate();
 
-                    projectToUpdate.engineer.setPhone(newEngineerPhone);
+        SqlOperation operation = ProjectRepository.versionCheck("update " + role + " of project", projectToUpdate);
 
-                }
-                // The engineer's email is updated.
-                case "email" -> {
-
-                    System.out.println(ENTER_COMMAND + ENGINEER_STRING + PERSON_EMAIL);
-                    String newEngineerEmail = personInfoChoice.nextLine();
-
-                    updateEmail.setString(1, newEngineerEmail);
-                    updateEmail.setString(2, projectToUpdate.engineer.getName());
-                    updateEmail.executeUpdate();
-
-                    projectToUpdate.engineer.setEmail(newEngineerEmail);
-
-                }
-                // The engineer's address is updated.
-                case "address" -> {
-
-                    System.out.println(ENTER_COMMAND + ENGINEER_STRING + PERSON_ADDRESS);
-                    String newEngineerAddress = personInfoChoice.nextLine();
-
-                    updateAddress.setString(1, newEngineerAddress);
-                    updateAddress.setString(2, projectToUpdate.engineer.getName());
-                    updateAddress.executeUpdate();
-
-                    projectToUpdate.engineer.setAddress(newEngineerAddress);
-
-                }
-                // In this case, the previous method is called.
-                case "back" -> getUpdateOptions(projectToUpdate);
-                default -> {
+        // As a person's name is a primary key and a secondary key, a new entry needs to be inserted and the project
+        // needs to be pointed at it. Any other detail is updated in place.
+        if(updateAspect.equals("name")){
+            PersonRepository.addRename(operation, projectToUpdate.projectInfo.getProjectNumber(), person, newDetail);
+        } else {
+            PersonRepository.addUpdate(operation, person, updateAspect, newDetail);
+        }
 
-                    System.out.println("You have input invalid information. Try Again.");
-                    getUpdateOptions(projectToUpdate);
+        // The person is only changed in memory once the change has been saved.
+        if(saveProjectChange(projectToUpdate, operation)){
 
-                }
+            switch(updateAspect){
+                case "name" -> person.setName(newDetail);
+                case "phone" -> person.setPhone(newDetail);
+                case "email" -> person.setEmail(newDetail);
+                default -> person.setAddress(newDetail);
             }
-        } catch(Exception e){
-            System.out.println("Invalid input. Try again.");
         }
+
         // The project is printed out with the updated information.
         System.out.println(projectToUpdate);
     }
 
     /**
-     * The updateManager() method updates the relevant information about the project's project manager.
+     * The addTeamMember() method adds another person to a project in the role the user chooses, so that a project
+     * can have, for example, more than one structural engineer. The first person in each role stays the one shown
+     * in the update menu.
      * @param projectToUpdate the project that will be updated
-     * @param updateAspect the type of information being updated - ie name, phone, email, and address.
      */
-    private static void updateManager(Project projectToUpdate, String updateAspect){
-
-        // A try-with-resource block is used containing various prepared statements to help update the manager table
-        // in the mySQL database in a dynamic way.
-        try(Connection connection = DriverManager.getConnection(DATABASE_URL, DATABASE_USER, DATABASE_PASS);
-            PreparedStatement insertAll = connection.prepareStatement("INSERT INTO project_manager " +
-                    "VALUES (?, ?, ? ,?)");
-            PreparedStatement updateProjectInfo = connection.prepareStatement("UPDATE project_info " +
-                    "SET project_manager = ? WHERE proj_num = ?");
-            PreparedStatement deleteItem = connection.prepareStatement("DELETE FROM project_manager " +
-                    "WHERE pm_name = ?");
-            PreparedStatement updatePhone = connection.prepareStatement("UPDATE project_manager SET pm_tele = ? " +
-                    "WHERE pm_name = ?");
-            PreparedStatement updateEmail = connection.prepareStatement("UPDATE project_manager SET pm_email = ? " +
-                    "WHERE pm_name = ?");
-            PreparedStatement updateAddress = connection.prepareStatement("UPDATE project_manager SET pm_address = ? " +
-                    "WHERE pm_name = ?")){
-
-            Scanner personInfoChoice = new Scanner(System.in);
-
-            switch(updateAspect){
-
-                // If the update aspect is 'all', then the method itself is called four times with all the parameters
-                // that can be entered. This therefore updates all the aspects of the manager.
-                case "all" -> {
-
-                    updateManager(projectToUpdate, "name");
-                    updateManager(projectToUpdate, "phone");
-                    updateManager(projectToUpdate, "email");
-                    updateManager(projectToUpdate, "address");
-
-                }
-                // As a manager's name is a primary key and a secondary key, a new entry needs to be inserted,
-                // the related table needs to be updated and the original entry needs to be deleted.
-                case "name" -> {
-
-                    String originalName = projectToUpdate.manager.getName();
-
-                    System.out.println(ENTER_COMMAND + "new " + MANAGER_STRING + PERSON_NAME);
-                    String newManagerName = personInfoChoice.nextLine();
-
-                    if(newManagerName.isEmpty()){
-
-                        System.out.println("Make sure you input all relevant information. Try Again.");
-                        updateManager(projectToUpdate, updateAspect);
-
-                    }
+    private static void addTeamMember(Project projectToUpdate){
 
-                    insertAll.setString(1, newManagerName);
-                    insertAll.setString(2, projectToUpdate.manager.getPhone());
-                    insertAll.setString(3, projectToUpdate.manager.getEmail());
-                    insertAll.setString(4, projectToUpdate.manager.getAddress());
-                    insertAll.executeUpdate();
+        System.out.println("""
+                    Which role will the new person have?
+                    architect, contractor, customer, engineer, manager
+                    back - go back""");
+        String roleChoice = ConsoleInput.readLine();
 
-                    updateProjectInfo.setString(1, newManagerName);
-                    updateProjectInfo.setInt(2, projectToUpdate.projectInfo.getProjectNumber());
-                    updateProjectInfo.executeUpdate();
-
-                    deleteItem.setString(1, originalName);
-                    deleteItem.executeUpdate();
-
-                    projectToUpdate.manager.setName(newManagerName);
-
-                }
-                // The manager's phone is updated after being validated as a phone number starting with a 0 or +.
-                case "phone" -> {
-
-                    System.out.println(ENTER_COMMAND + MANAGER_STRING + PERSON_PHONE);
-                    String newManagerPhone = personInfoChoice.nextLine();
-
-                    newManagerPhone = validatePhoneNum(newManagerPhone, MANAGER_STRING);
-
-                    updatePhone.setString(1, newManagerPhone);
-                    updatePhone.setString(2, projectToUpdate.manager.getName());
-                    updatePhone.executeUpdate();
-
-                    projectToUpdate.manager.setPhone(newManagerPhone);
-
-                }
-                // The project manager's email is updated.
-                case "email" -> {
-
-                    System.out.println(ENTER_COMMAND + MANAGER_STRING + PERSON_EMAIL);
-                    String newManagerEmail = personInfoChoice.nextLine();
-
-                    updateEmail.setString(1, newManagerEmail);
-                    updateEmail.setString(2, projectToUpdate.manager.getName());
-                    updateEmail.executeUpdate();
-
-                    projectToUpdate.manager.setEmail(newManagerEmail);
-
-                }
-                // The project manager's address is updated.
-                case "address" -> {
+        if(roleChoice.equals("back")){
+            return;
+        }
 
-                    System.out.println(ENTER_COMMAND + MANAGER_STRING + PERSON_ADDRESS);
-                    String newManagerAddress = personInfoChoice.nextLine();
+        Person.Type type;
+        try{
+            type = Person.Type.valueOf(roleChoice.toUpperCase());
+        } catch(IllegalArgumentException e){
 
-                    updateAddress.setString(1, newManagerAddress);
-                    updateAddress.setString(2, projectToUpdate.manager.getName());
-                    updateAddress.executeUpdate();
+            System.out.println(INPUT_ERROR);
+            return;
 
-                    projectToUpdate.manager.setAddress(newManagerAddress);
+        }
 
-                }
-                // In this case, the previous method is called.
-                case "back" -> getUpdateOptions(projectToUpdate);
-                default -> {
+        Person newMember = inputNewPersonInfo(type.displayName.toLowerCase());
 
-                    System.out.println("You have input invalid information. Try Again.");
-                    getUpdateOptions(projectToUpdate);
+        SqlOperation operation = ProjectRepository.versionCheck("add team member to project", projectToUpdate);
+        PersonRepository.addMember(operation, projectToUpdate.projectInfo.getProjectNumber(), newMember);
 
-                }
-            }
-        } catch(Exception e){
-            System.out.println("Invalid input. Try again.");
+        // The person is only added in memory once the change has been saved.
+        if(saveProjectChange(projectToUpdate, operation)){
+            projectToUpdate.addMember(newMember);
         }
-        // The project is printed out with the updated information.
+
         System.out.println(projectToUpdate);
     }
 
@@ -1450,41 +1382,38 @@ public class Poised {
      */
     private static void finalise(Project projectToUpdate) {
 
-        try(Connection connection = DriverManager.getConnection(DATABASE_URL, DATABASE_USER, DATABASE_PASS);
-            PreparedStatement statement = connection.prepareStatement("UPDATE pay_complete SET finalised = 'Y', " +
-                    "complete_date = ? WHERE proj_num = ?")){
-
-            // If the project is already finalised, then this message will be printed.
-            if(projectToUpdate.finalise){
+        // If the project is already finalised, then this message will be printed.
+        if(projectToUpdate.finalise){
 
-                System.out.println("The project has already been finalised.");
+            System.out.println("The project has already been finalised.");
 
-            }
-            // If the project has not been finalised, then it will be finalised.
-            else {
-
-                // The project's finalise attribute is set to true and the complete date is set to the current date.
-                projectToUpdate.setFinalise(true);
+        }
+        // If the project has not been finalised, then it will be finalised.
+        else {
 
-                statement.setString(1, projectToUpdate.projectInfo.getCompleteDate());
-                statement.setInt(2, projectToUpdate.projectInfo.getProjectNumber());
-                statement.executeUpdate();
+            SqlOperation finalise = ProjectRepository.finalise(projectToUpdate).publishes(new ProjectEvent.Finalised(
+                    projectToUpdate.projectInfo.getProjectNumber(),
+                    formatDate(projectToUpdate.projectInfo.getCompleteDate())));
 
+            if(!saveProjectChange(projectToUpdate, finalise)){
+                System.out.println("The project was not finalised.");
+                return;
             }
 
-            // If the total paid is equal to the total fee, then an invoice is created and printed.
-            if (projectToUpdate.projectInfo.getTotalPaid() != projectToUpdate.projectInfo.getTotalFee()) {
+            // The project's finalise attribute is set to true once the change has been saved.
+            projectToUpdate.setFinalise(true);
 
-                System.out.println(projectToUpdate.createInvoice());
+        }
 
-            }
-            // If the total fee is equal to the total paid, then this message is displayed.
-            else {
-                System.out.println("The customer has already settled their account.");
-            }
+        // If the total paid is equal to the total fee, then an invoice is created and printed.
+        if (projectToUpdate.projectInfo.getTotalPaid() != projectToUpdate.projectInfo.getTotalFee()) {
+
+            System.out.println(projectToUpdate.createInvoice());
 
-        }catch(Exception e){
-            System.out.println("Cannot connect to the database.");
+        }
+        // If the total fee is equal to the total paid, then this message is displayed.
+        else {
+            System.out.println("The customer has already settled their account.");
         }
     }
 
@@ -1496,155 +1425,30 @@ public class Poised {
      */
     private static boolean deleteProject(Project projectToDelete){
 
-        // A try-with-resources block uses prepared statements to delete the related rows from all the tables.
-        try(Connection connection = DriverManager.getConnection(DATABASE_URL, DATABASE_USER, DATABASE_PASS);
-            PreparedStatement delPayComp = connection.prepareStatement("DELETE FROM pay_complete WHERE proj_num = ?");
-            PreparedStatement delBuildInfo = connection.prepareStatement("DELETE FROM build_info WHERE erf_num = ?");
-            PreparedStatement delArchitect = connection.prepareStatement("DELETE FROM architect WHERE arch_name = ?");
-            PreparedStatement delContractor = connection.prepareStatement("DELETE FROM contractor WHERE cont_name = ?");
-            PreparedStatement delCustomer = connection.prepareStatement("DELETE FROM customer WHERE cust_name = ?");
-            PreparedStatement delEngineer = connection.prepareStatement("DELETE FROM engineer WHERE engi_name = ?");
-            PreparedStatement delManager = connection.prepareStatement("DELETE FROM project_manager WHERE pm_name = ?")){
-
-            Scanner toDelete = new Scanner(System.in);
-
-            // The user is asked for confirmation of deletion.
-            System.out.println("Are you sure you want to delete this project? y/n");
-            String deleteConfirmation = toDelete.nextLine();
-
-            // If the user inputs 'y', then the relevant rows are deleted.
-            if(deleteConfirmation.equalsIgnoreCase("y")){
-
-                delPayComp.setInt(1, projectToDelete.projectInfo.getProjectNumber());
-                delPayComp.executeUpdate();
-
-                delBuildInfo.setInt(1, projectToDelete.projectInfo.getErfNumber());
-                delBuildInfo.executeUpdate();
-
-                delArchitect.setString(1, projectToDelete.architect.getName());
-                delArchitect.executeUpdate();
-
-                delContractor.setString(1, projectToDelete.contractor.getName());
-                delContractor.executeUpdate();
-
-                delCustomer.setString(1, projectToDelete.customer.getName());
-                delCustomer.executeUpdate();
-
-                delEngineer.setString(1, projectToDelete.engineer.getName());
-                delEngineer.executeUpdate();
+        // The user is asked for confirmation of deletion.
+        System.out.println("Are you sure you want to delete this project? y/n");
+        String deleteConfirmation = ConsoleInput.readLine();
 
-                delManager.setString(1, projectToDelete.manager.getName());
-                delManager.executeUpdate();
-
-                System.out.println("Project deleted.");
-                // True is returned.
-                return true;
+        // If the user does not input 'y', then false is returned.
+        if(!deleteConfirmation.equalsIgnoreCase("y")){
+            return false;
+        }
 
-            }
+        // The project is marked as deleted, and its rows are removed later in the background.
+        // The project is only deleted if nobody else has changed it since it was loaded.
+        if(!saveChange(ProjectRepository.delete(projectToDelete).publishes(new ProjectEvent.Deleted(
+                projectToDelete.projectInfo.getProjectNumber())))){
 
-        }catch(Exception e){
+            reloadProject(projectToDelete);
             System.out.println("Could not delete project.");
-        }
-        // If the if statement inside the try-with-resources block does not run, then false is returned.
-        return false;
+            return false;
 
-    }
+        }
 
-    /**
-     * The createProjectObjects() method gets information about projects(s) from a ResultSet, creates Project object(s),
-     * and adds them to an array list that is then returned.
-     * @param projectsToCreate the ResultSet that contains row(s) of project information.
-     * @return an array list of the project(s) is returned.
-     */
-    private static ArrayList<Project> createProjectObjects(ResultSet projectsToCreate) throws SQLException {
-
-        ArrayList<Project> listOfProjects = new ArrayList<>();
-
-        while(projectsToCreate.next()){
-
-            int projectNumber = projectsToCreate.getInt("project_info.proj_num");
-            String projectName = projectsToCreate.getString("proj_name");
-            String buildingType = projectsToCreate.getString("build_type");
-            String buildingAddress = projectsToCreate.getString("build_address");
-            int erfNumber = projectsToCreate.getInt("erf_num");
-            double totalFee = projectsToCreate.getDouble("total_fee");
-            double totalPaid = projectsToCreate.getDouble("total_paid");
-
-            // In order to get the correct format for the LocalDate object, the formatDate() method is called.
-            String deadline = projectsToCreate.getString("deadline");
-            LocalDate deadlineDate = formatDate(deadline);
-            // The complete date of the project is captured and will be set below once the Project object is created.
-            Date completeDate = projectsToCreate.getDate("complete_date");
-
-            // A ProjectInfo object is created passing some captured information above.
-            ProjectInfo capturedProjectInfo = new ProjectInfo(projectName, buildingType, buildingAddress, erfNumber,
-                    totalFee, deadlineDate);
-            // The project number and total paid is then set after the ProjectInfo object is created.
-            capturedProjectInfo.setProjectNumber(projectNumber);
-            capturedProjectInfo.setTotalPaid(totalPaid);
-
-            // Architect's information is stored and then a Person object is created.
-            String architectName = projectsToCreate.getString("arch_name");
-            String architectPhone = projectsToCreate.getString("arch_tele");
-            String architectEmail = projectsToCreate.getString("arch_email");
-            String architectAddress = projectsToCreate.getString("arch_address");
-
-            Person capturedArchitect = new Person(Person.Type.ARCHITECT, architectName, architectPhone,
-                    architectEmail, architectAddress);
-
-            // Contractor's information is and then a Person object is created.
-            String contractorName = projectsToCreate.getString("cont_name");
-            String contractorPhone = projectsToCreate.getString("cont_tele");
-            String contractorEmail = projectsToCreate.getString("cont_email");
-            String contractorAddress = projectsToCreate.getString("cont_address");
-
-            Person capturedContractor = new Person(Person.Type.CONTRACTOR, contractorName, contractorPhone,
-                    contractorEmail, contractorAddress);
-
-            // Customer's information is stored and then a Person object is created.
-            String customerName = projectsToCreate.getString("cust_name");
-            String customerPhone = projectsToCreate.getString("cust_tele");
-            String customerEmail = projectsToCreate.getString("cust_email");
-            String customerAddress = projectsToCreate.getString("cust_address");
-
-            Person capturedCustomer = new Person(Person.Type.CUSTOMER, customerName, customerPhone,
-                    customerEmail, customerAddress);
-
-            // Engineer's information is stored and then a Person object is created.
-            String engineerName = projectsToCreate.getString("engi_name");
-            String engineerPhone = projectsToCreate.getString("engi_tele");
-            String engineerEmail = projectsToCreate.getString("engi_email");
-            String engineerAddress = projectsToCreate.getString("engi_address");
-
-            Person capturedEngineer = new Person(Person.Type.ENGINEER, engineerName, engineerPhone,
-                    engineerEmail, engineerAddress);
-
-            // Manager's information is stored and then a Person object is created.
-            String managerName = projectsToCreate.getString("pm_name");
-            String managerPhone = projectsToCreate.getString("pm_tele");
-            String managerEmail = projectsToCreate.getString("pm_email");
-            String managerAddress = projectsToCreate.getString("pm_address");
-
-            Person capturedManager = new Person(Person.Type.MANAGER, managerName, managerPhone,
-                    managerEmail, managerAddress);
-
-            // A Project object is created that passes the above objects.
-            Project capturedProject = new Project(capturedProjectInfo, capturedArchitect, capturedContractor,
-                    capturedCustomer, capturedEngineer, capturedManager);
-
-            // If the completeDate is not null, then the project is set to finalised and the complete date is set.
-            if(completeDate != null){
-
-                capturedProject.finalise = true;
-                LocalDate completeLocalDate = completeDate.toLocalDate();
-                capturedProject.projectInfo.setCompleteDate(completeLocalDate);
+        System.out.println("Project deleted.");
+        // True is returned.
+        return true;
 
-            }
-            // The project is added to the array created before the while statement.
-            listOfProjects.add(capturedProject);
-        }
-        // The array is returned.
-        return listOfProjects;
     }
 
     /**
@@ -1695,13 +1499,11 @@ public class Poised {
      */
     private static String validatePhoneNum(String newPersonPhone, String personString) {
 
-        Scanner personPhoneInfo = new Scanner(System.in);
-
-        while(newPersonPhone.charAt(0) != '0' && newPersonPhone.charAt(0) != '+'){
+        while(newPersonPhone.isEmpty() || newPersonPhone.charAt(0) != '0' && newPersonPhone.charAt(0) != '+'){
 
             System.out.println("Not a valid phone number, try again.");
             System.out.println(ENTER_COMMAND + personString + PERSON_PHONE);
-            newPersonPhone = personPhoneInfo.nextLine();
+            newPersonPhone = ConsoleInput.readLine();
 
         }
         return newPersonPhone;
@@ -1,3 +1,7 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
 /**
  * This class creates Project objects that contain all information about each project.
  */
@@ -11,6 +15,9 @@ public class Project {
     Person engineer;
     Person manager;
     boolean finalise;
+    // Everyone working on the project, in the order of their roles. A project can have more than one person in a
+    // role, in which case the fields above hold the first person in each role.
+    List<Person> team = new ArrayList<>();
 
     /**
      * The constructor for the Project class passes information about a project - this includes four objects.
@@ -29,8 +36,17 @@ public class Project {
         this.engineer = engineer;
         this.manager = manager;
 
-        // If the user chose not to input a project name, then this else if statement runs.
-        if(projectInfo.projectName.equals("") && customer.name.contains(" ")){
+        // The people given are added to the team. A project loaded from the database is created without people,
+        // and its team is added afterwards.
+        for(Person person : new Person[]{architect, contractor, customer, engineer, manager}){
+            if(person != null){
+                team.add(person);
+            }
+        }
+
+        // If the user chose not to input a project name, then this else if statement runs. A project loaded
+        // without people always has a name already.
+        if(customer != null && projectInfo.projectName.equals("") && customer.name.contains(" ")){
 
             /*
             If the user inputs a blank project name AND the customer's name contains a space,
@@ -46,7 +62,7 @@ public class Project {
         If the user inputs a blank project name AND the customer's name does not contain a space,
         then this.projectName is set to the building type plus the customer's only input name.
         */
-        else if(projectInfo.projectName.equals("") && !customer.name.contains(" ")){
+        else if(customer != null && projectInfo.projectName.equals("") && !customer.name.contains(" ")){
 
             projectInfo.setProjectName(projectInfo.buildingType + " " + customer.name);
 
@@ -65,6 +81,43 @@ public class Project {
         this.finalise = finalise;
     }
 
+    /**
+     * Gets the person who fills a role on the project
+     * @param type the role
+     * @return the person in that role
+     */
+    public Person getPerson(Person.Type type){
+
+        return switch (type) {
+            case ARCHITECT -> architect;
+            case CONTRACTOR -> contractor;
+            case CUSTOMER -> customer;
+            case ENGINEER -> engineer;
+            case MANAGER -> manager;
+        };
+    }
+
+    /**
+     * The addMember() method adds a person to the project's team. If the project has nobody in that role yet, the
+     * person also becomes the project's main person in the role.
+     * @param person the person to be added
+     */
+    public void addMember(Person person){
+
+        team.add(person);
+        team.sort(Comparator.comparing(member -> member.personType));
+
+        if(getPerson(person.personType) == null){
+            switch (person.personType) {
+                case ARCHITECT -> architect = person;
+                case CONTRACTOR -> contractor = person;
+                case CUSTOMER -> customer = person;
+                case ENGINEER -> engineer = person;
+                case MANAGER -> manager = person;
+            }
+        }
+    }
+
     /**
      * This method is called when a project is finalised and an invoice needs to be created.
      * @return a string of the invoice is returned.
@@ -95,11 +148,9 @@ public class Project {
             output += "Date Complete: Incomplete\n";
         }
 
-        output += architect;
-        output += contractor;
-        output += customer;
-        output += engineer;
-        output += manager;
+        for(Person person : team){
+            output += person;
+        }
 
         return output;
     }
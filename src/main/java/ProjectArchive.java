@@ -0,0 +1,268 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * This class moves projects that were finalised long ago out of the project tables and into the project_archive
+ * table, so that the tables scanned by the incomplete and overdue views only hold the projects still being worked on.
+ * Archived projects can still be found by the search, but can no longer be changed. As the archive is kept in the
+ * database, every copy of the program sees the same archived projects.
+ * <p>
+ * Each archived project is held in one row, with its team, compressed with Deflate. The row is added in the same
+ * transaction that marks the project as archived, after which ProjectPurge removes the project's other rows. The
+ * payments of archived projects stay in the payment ledger. Each project archived is published as an Archived event,
+ * so that the structures kept of the current projects drop it.
+ * <p>
+ * Archiving is a job for one copy of the program, which is started with --archiver. It archives the projects
+ * finalised more than poised.archiveMonths months ago (24 by default) every poised.archiveSeconds seconds (3600 by
+ * default).
+ */
+public class ProjectArchive {
+
+    private static final long ARCHIVE_INTERVAL_SECONDS = Config.getLong("poised.archiveSeconds", 3600);
+    static final String CREATE_TABLE = "CREATE TABLE project_archive (" +
+            "proj_num INT NOT NULL PRIMARY KEY, " +
+            "proj_name VARCHAR(255) NOT NULL, " +
+            "archived_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, " +
+            "record MEDIUMBLOB NOT NULL, " +
+            "INDEX archive_name (proj_name))";
+
+    /**
+     * The startArchiver() method starts archiving old projects in the background.
+     */
+    public static void startArchiver(){
+
+        ScheduledExecutorService archiver = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "poised-archive");
+            thread.setDaemon(true);
+            return thread;
+        });
+        archiver.scheduleWithFixedDelay(ProjectArchive::archiveQuietly, ARCHIVE_INTERVAL_SECONDS,
+                ARCHIVE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+    }
+
+    /**
+     * The encode() method compresses a project and its team into the form it is archived in.
+     * @param project the project to be archived
+     * @return the compressed project
+     * @throws IOException if the project could not be compressed
+     */
+    static byte[] encode(Project project) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(DataOutputStream output = new DataOutputStream(new DeflaterOutputStream(bytes))){
+
+            ProjectInfo info = project.projectInfo;
+            output.writeInt(info.getProjectNumber());
+            output.writeUTF(info.getProjectName());
+            output.writeUTF(info.getBuildingType());
+            output.writeUTF(info.getAddress());
+            output.writeInt(info.getErfNumber());
+            output.writeDouble(info.getTotalFee());
+            output.writeDouble(info.getTotalPaid());
+            output.writeUTF(info.getDeadline());
+            output.writeUTF(info.getCompleteDate());
+
+            output.writeInt(project.team.size());
+            for(Person person : project.team){
+                output.writeUTF(person.personType.name());
+                output.writeUTF(person.getName());
+                output.writeUTF(person.getPhone());
+                output.writeUTF(person.getEmail());
+                output.writeUTF(person.getAddress());
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The decode() method reads a project back from the form it was archived in.
+     * @param record the compressed project
+     * @return the project
+     * @throws IOException if the record could not be read
+     */
+    static Project decode(byte[] record) throws IOException {
+
+        try(DataInputStream input = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(record)))){
+
+            int projectNumber = input.readInt();
+            String projectName = input.readUTF();
+            String buildingType = input.readUTF();
+            String address = input.readUTF();
+            int erfNumber = input.readInt();
+            double totalFee = input.readDouble();
+            double totalPaid = input.readDouble();
+            LocalDate deadline = Poised.formatDate(input.readUTF());
+            LocalDate completeDate = Poised.formatDate(input.readUTF());
+
+            ProjectInfo info = new ProjectInfo(projectName, buildingType, address, erfNumber, totalFee, deadline);
+            info.setProjectNumber(projectNumber);
+            info.setTotalPaid(totalPaid);
+            info.setCompleteDate(completeDate);
+
+            Project project = new Project(info, null, null, null, null, null);
+            project.finalise = true;
+
+            int teamSize = input.readInt();
+            for(int i = 0; i < teamSize; i++){
+                project.addMember(new Person(Person.Type.valueOf(input.readUTF()), input.readUTF(), input.readUTF(),
+                        input.readUTF(), input.readUTF()));
+            }
+
+            return project;
+        }
+    }
+
+    /**
+     * The find() method finds the archived projects with the given project number or name.
+     * @param connection an open connection to the database
+     * @param projectNumber the project number searched for, or 0 to search by name only
+     * @param projectName the project name searched for
+     * @return a list of the matching projects
+     * @throws SQLException if the database could not be read
+     * @throws IOException if an archived project could not be read
+     */
+    public static List<Project> find(Connection connection, int projectNumber, String projectName)
+            throws SQLException, IOException {
+
+        List<Project> projects = new ArrayList<>();
+
+        try(PreparedStatement statement = connection.prepareStatement("SELECT record FROM project_archive " +
+                "WHERE proj_num = ? OR proj_name = ? ORDER BY proj_num")){
+
+            statement.setInt(1, projectNumber);
+            statement.setString(2, projectName);
+
+            try(ResultSet rows = statement.executeQuery()){
+                while(rows.next()){
+                    projects.add(decode(rows.getBytes("record")));
+                }
+            }
+        }
+
+        return projects;
+    }
+
+    /**
+     * The nameExists() method checks whether an archived project has the given name.
+     * @param connection an open connection to the database
+     * @param projectName the name to be checked
+     * @return true if the name is used by an archived project
+     * @throws SQLException if the database could not be read
+     */
+    public static boolean nameExists(Connection connection, String projectName) throws SQLException {
+
+        try(PreparedStatement statement = connection.prepareStatement("SELECT EXISTS (SELECT 1 FROM project_archive " +
+                "WHERE proj_name = ?)")){
+
+            statement.setString(1, projectName);
+
+            try(ResultSet exists = statement.executeQuery()){
+                return exists.next() && exists.getBoolean(1);
+            }
+        }
+    }
+
+    /**
+     * The findArchived() method finds which of the given projects are in the archive.
+     * @param connection an open connection to the database
+     * @param projects the projects
+     * @return the number of each project that is in the archive mapped to the name it was archived with
+     * @throws SQLException if the database could not be read
+     */
+    private static Map<Integer, String> findArchived(Connection connection, List<Project> projects)
+            throws SQLException {
+
+        Map<Integer, String> archived = new LinkedHashMap<>();
+
+        try(PreparedStatement statement = connection.prepareStatement("SELECT proj_num, proj_name " +
+                "FROM project_archive WHERE proj_num IN " + ProjectRepository.placeholders(projects.size()))){
+
+            for(int i = 0; i < projects.size(); i++){
+                statement.setInt(i + 1, projects.get(i).projectInfo.getProjectNumber());
+            }
+
+            try(ResultSet rows = statement.executeQuery()){
+                while(rows.next()){
+                    archived.put(rows.getInt("proj_num"), rows.getString("proj_name"));
+                }
+            }
+        }
+
+        return archived;
+    }
+
+    /**
+     * The archiveQuietly() method runs the archiving from the background thread. If the database cannot be reached,
+     * the projects are archived by a later run.
+     */
+    private static void archiveQuietly(){
+
+        try{
+            archiveOldProjects();
+        } catch(SQLException | IOException e){
+            // The projects stay in the database until the next run.
+        }
+    }
+
+    /**
+     * The archiveOldProjects() method moves the projects finalised more than poised.archiveMonths months ago into
+     * the archive, poised.archiveBatchSize at a time (100 by default).
+     * @return the number of projects archived
+     * @throws SQLException if the database could not be reached
+     * @throws IOException if a project could not be compressed
+     */
+    public static int archiveOldProjects() throws SQLException, IOException {
+
+        LocalDate cutOff = LocalDate.now().minusMonths(Config.getLong("poised.archiveMonths", 24));
+        int batchSize = Config.getInt("poised.archiveBatchSize", 100);
+        int archived = 0;
+
+        try(Connection connection = Database.getConnection()){
+
+            List<Project> projects;
+            do{
+
+                projects = ProjectRepository.findFinalisedBefore(connection, cutOff, batchSize);
+                if(projects.isEmpty()){
+                    break;
+                }
+
+                SqlOperation operation = new SqlOperation("archive " + projects.size() + " projects");
+
+                for(Project project : projects){
+                    ProjectRepository.addArchive(operation, project, encode(project));
+                }
+
+                // A project changed after it was read is neither marked nor copied, and is archived with its changes
+                // by the next run. Only the projects that were copied are published as archived.
+                operation.execute(connection);
+                for(Map.Entry<Integer, String> project : findArchived(connection, projects).entrySet()){
+                    ProjectEventBus.publish(new ProjectEvent.Archived(project.getKey(), project.getValue()));
+                    archived++;
+                }
+
+            } while(projects.size() == batchSize);
+        }
+
+        return archived;
+    }
+}
@@ -0,0 +1,215 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.RecordComponent;
+import java.time.LocalDate;
+
+/**
+ * This interface is implemented by the events published on the ProjectEventBus. Each event describes one change to a
+ * project that has been saved, so that other parts of the program, and programs reading the event log, can follow
+ * the changes without reading every project again.
+ */
+public sealed interface ProjectEvent {
+
+    /**
+     * Gets the number of the project that was changed
+     * @return the project number
+     */
+    int projectNumber();
+
+    /**
+     * The withProjectNumber() method copies an event with a different project number, as when a project added while
+     * the database could not be reached is given its real number.
+     * @param event the event
+     * @param projectNumber the project number of the copy
+     * @return the copy of the event
+     */
+    static ProjectEvent withProjectNumber(ProjectEvent event, int projectNumber){
+
+        try{
+
+            RecordComponent[] components = event.getClass().getRecordComponents();
+            Object[] values = new Object[components.length];
+            for(int i = 0; i < components.length; i++){
+                values[i] = components[i].getName().equals("projectNumber") ? projectNumber :
+                        components[i].getAccessor().invoke(event);
+            }
+
+            return construct(event.getClass(), values);
+
+        } catch(ReflectiveOperationException e){
+            throw new IllegalStateException("Could not copy " + event, e);
+        }
+    }
+
+    /**
+     * The writeTo() method writes an event in a compact binary form, so that it can be kept in the offline journal
+     * with the change that publishes it. The event's type is written, followed by each of its fields in order.
+     * @param event the event
+     * @param output where the event is written
+     * @throws IOException if the event could not be written
+     */
+    static void writeTo(ProjectEvent event, DataOutput output) throws IOException {
+
+        output.writeUTF(event.getClass().getName());
+
+        try{
+
+            for(RecordComponent component : event.getClass().getRecordComponents()){
+
+                Object value = component.getAccessor().invoke(event);
+                if(component.getType() == int.class){
+                    output.writeInt((Integer) value);
+                } else if(component.getType() == double.class){
+                    output.writeDouble((Double) value);
+                } else {
+
+                    // Strings and dates may be missing, and are written as text.
+                    output.writeBoolean(value != null);
+                    if(value != null){
+                        output.writeUTF(value.toString());
+                    }
+                }
+            }
+
+        } catch(ReflectiveOperationException e){
+            throw new IOException("Could not write " + event, e);
+        }
+    }
+
+    /**
+     * The readFrom() method reads an event that was written by writeTo().
+     * @param input where the event is read from
+     * @return the event
+     * @throws IOException if the event could not be read
+     */
+    static ProjectEvent readFrom(DataInput input) throws IOException {
+
+        String type = input.readUTF();
+
+        try{
+
+            Class<? extends ProjectEvent> eventClass = Class.forName(type).asSubclass(ProjectEvent.class);
+            RecordComponent[] components = eventClass.getRecordComponents();
+            Object[] values = new Object[components.length];
+
+            for(int i = 0; i < components.length; i++){
+
+                Class<?> fieldType = components[i].getType();
+                if(fieldType == int.class){
+                    values[i] = input.readInt();
+                } else if(fieldType == double.class){
+                    values[i] = input.readDouble();
+                } else if(input.readBoolean()){
+                    String text = input.readUTF();
+                    values[i] = fieldType == LocalDate.class ? LocalDate.parse(text) : text;
+                }
+            }
+
+            return construct(eventClass, values);
+
+        } catch(ReflectiveOperationException | ClassCastException e){
+            throw new IOException("Unknown event in journal: " + type, e);
+        }
+    }
+
+    /**
+     * The construct() method creates an event of the given type from the values of its fields.
+     * @param eventClass the type of the event
+     * @param values the values of the event's fields, in order
+     * @return the event
+     * @throws ReflectiveOperationException if the event could not be created
+     */
+    private static ProjectEvent construct(Class<? extends ProjectEvent> eventClass, Object[] values)
+            throws ReflectiveOperationException {
+
+        RecordComponent[] components = eventClass.getRecordComponents();
+        Class<?>[] types = new Class<?>[components.length];
+        for(int i = 0; i < components.length; i++){
+            types[i] = components[i].getType();
+        }
+
+        Constructor<? extends ProjectEvent> constructor = eventClass.getDeclaredConstructor(types);
+        return constructor.newInstance(values);
+    }
+
+    /**
+     * A new project was added.
+     * @param projectNumber the number of the project
+     * @param projectName the name of the project
+     * @param buildingType the type of the project's building
+     * @param address the address of the project's building
+     * @param erfNumber the ERF number of the project's building
+     * @param totalFee the total fee of the project
+     * @param deadline the deadline of the project
+     */
+    record Created(int projectNumber, String projectName, String buildingType, String address, int erfNumber,
+                   double totalFee, LocalDate deadline) implements ProjectEvent {
+    }
+
+    /**
+     * A project was given a new name.
+     * @param projectNumber the number of the project
+     * @param projectName the new name
+     */
+    record Renamed(int projectNumber, String projectName) implements ProjectEvent {
+    }
+
+    /**
+     * The building type or address of a project's building was changed.
+     * @param projectNumber the number of the project
+     * @param buildingType the building type
+     * @param address the address
+     */
+    record BuildingChanged(int projectNumber, String buildingType, String address) implements ProjectEvent {
+    }
+
+    /**
+     * A payment was recorded against a project.
+     * @param projectNumber the number of the project
+     * @param amount the amount paid
+     * @param payRef the unique reference of the payment in the payment ledger
+     */
+    record PaymentRecorded(int projectNumber, double amount, String payRef) implements ProjectEvent {
+    }
+
+    /**
+     * The total fee of a project was changed.
+     * @param projectNumber the number of the project
+     * @param totalFee the new total fee
+     */
+    record FeeChanged(int projectNumber, double totalFee) implements ProjectEvent {
+    }
+
+    /**
+     * The deadline of a project was changed.
+     * @param projectNumber the number of the project
+     * @param deadline the new deadline
+     */
+    record DeadlineChanged(int projectNumber, LocalDate deadline) implements ProjectEvent {
+    }
+
+    /**
+     * A project was finalised.
+     * @param projectNumber the number of the project
+     * @param completeDate the date the project was finalised
+     */
+    record Finalised(int projectNumber, LocalDate completeDate) implements ProjectEvent {
+    }
+
+    /**
+     * A project was deleted.
+     * @param projectNumber the number of the project
+     */
+    record Deleted(int projectNumber) implements ProjectEvent {
+    }
+
+    /**
+     * A finalised project was moved into the archive, and is no longer one of the current projects.
+     * @param projectNumber the number of the project
+     * @param projectName the name of the project, which stays in use
+     */
+    record Archived(int projectNumber, String projectName) implements ProjectEvent {
+    }
+}
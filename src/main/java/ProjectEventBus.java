@@ -0,0 +1,293 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.lang.reflect.RecordComponent;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * This class passes the changes made to projects on to anything that needs to know about them. A ProjectEvent is
+ * published once its change has been saved, and a single background thread hands the events, in the order they were
+ * published, to each sink: the append-only log file {@value #EVENT_LOG}, which programs outside this one can follow,
+ * and the subscribers registered in this program.
+ * <p>
+ * Events are handed on in batches of up to poised.eventBatchSize (500 by default), each written to the log with one
+ * write. At most poised.eventQueueCapacity events (10000 by default, read when the program starts) wait to be handed
+ * on. If a sink falls that far behind, publishing waits for room, so a slow sink slows the program down rather than
+ * events being lost or memory filling up.
+ * <p>
+ * Each line of the log is a JSON object, written in UTF-8, holding the event's sequence number, the time it was
+ * published, the type of event and each of its fields, for example
+ * {@code {"sequence":12,"time":"2024-05-01T09:30:00Z","type":"Renamed","projectNumber":3,"projectName":"Hill"}}.
+ * The sequence numbers carry on from the last one in the log, so they keep increasing across runs of the program.
+ */
+public class ProjectEventBus {
+
+    public static final String EVENT_LOG = "poised-events.log";
+    // Every line of the log starts with this, followed by the event's sequence number.
+    private static final String SEQUENCE_FIELD = "{\"sequence\":";
+
+    private static final BlockingQueue<Stamped> QUEUE = new ArrayBlockingQueue<>(
+            Config.getInt("poised.eventQueueCapacity", 10000));
+    private static final List<Consumer<List<ProjectEvent>>> SUBSCRIBERS = new CopyOnWriteArrayList<>();
+    private static long nextSequence = lastLoggedSequence() + 1;
+    // The sequence number of the last event handed on to every sink.
+    private static long handedOn;
+    // Whether the last batch could not be written to the log, so that a failure is reported once rather than for
+    // every batch.
+    private static boolean logFailing;
+
+    /**
+     * This class holds an event with the sequence number and time it was given when it was published.
+     * @param sequence the position of the event among all the events published by the program
+     * @param time the time the event was published
+     * @param event the event
+     */
+    private record Stamped(long sequence, Instant time, ProjectEvent event) {
+    }
+
+    static {
+
+        Thread dispatcher = new Thread(ProjectEventBus::runDispatcher, "poised-events");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+
+        // The events still waiting when the program exits are handed on before it stops.
+        Runtime.getRuntime().addShutdownHook(new Thread(ProjectEventBus::flush));
+
+    }
+
+    /**
+     * The subscribe() method registers a subscriber, which is given every event published from then on, in batches.
+     * A subscriber is called from the background thread and should return quickly.
+     * @param subscriber the subscriber
+     */
+    public static void subscribe(Consumer<List<ProjectEvent>> subscriber){
+        SUBSCRIBERS.add(subscriber);
+    }
+
+    /**
+     * The publish() method adds an event to be handed on to the sinks. If too many events are already waiting, it
+     * waits until there is room.
+     * @param event the event
+     */
+    public static void publish(ProjectEvent event){
+
+        try{
+
+            // The sequence number is given out and the event queued together, so the queue is always in sequence.
+            synchronized(QUEUE){
+                QUEUE.put(new Stamped(nextSequence++, Instant.now(), event));
+            }
+
+        } catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The lastLoggedSequence() method reads the sequence number of the last event in the event log. Only the end of
+     * the log is read.
+     * @return the last sequence number, or 0 if the log is empty or cannot be read
+     */
+    private static long lastLoggedSequence(){
+
+        try(RandomAccessFile log = new RandomAccessFile(Database.tenantFile(EVENT_LOG).toFile(), "r")){
+
+            // A line cut short when the program stopped is skipped, along with anything else that is not a full line.
+            long start = Math.max(0, log.length() - 64 * 1024);
+            byte[] tail = new byte[(int) (log.length() - start)];
+            log.seek(start);
+            log.readFully(tail);
+
+            String[] lines = new String(tail, StandardCharsets.UTF_8).split("\n");
+            for(int i = lines.length - 1; i >= 0; i--){
+
+                // Quotes inside a value are escaped, so only the start of a line can look like this.
+                String line = lines[i];
+                int comma = line.indexOf(',');
+                if(line.startsWith(SEQUENCE_FIELD) && comma > 0 && line.endsWith("}")){
+                    try{
+                        return Long.parseLong(line.substring(SEQUENCE_FIELD.length(), comma));
+                    } catch(NumberFormatException e){
+                        // The line is not one the log would hold, so an earlier one is tried.
+                    }
+                }
+            }
+
+        } catch(IOException e){
+            // There is no log yet.
+        }
+
+        return 0;
+    }
+
+    /**
+     * The flush() method waits until every event published so far has been handed on to the sinks.
+     */
+    public static void flush(){
+
+        long published;
+        synchronized(QUEUE){
+            published = nextSequence - 1;
+        }
+
+        synchronized(ProjectEventBus.class){
+
+            while(handedOn < published){
+
+                try{
+                    ProjectEventBus.class.wait(100);
+                } catch(InterruptedException e){
+
+                    Thread.currentThread().interrupt();
+                    return;
+
+                }
+            }
+        }
+    }
+
+    /**
+     * The runDispatcher() method takes batches of events off the queue and hands them on to the sinks.
+     */
+    private static void runDispatcher(){
+
+        List<Stamped> batch = new ArrayList<>();
+
+        while(true){
+
+            try{
+
+                batch.add(QUEUE.take());
+                QUEUE.drainTo(batch, Config.getInt("poised.eventBatchSize", 500) - 1);
+
+                writeToLog(batch);
+
+                List<ProjectEvent> events = batch.stream().map(Stamped::event).toList();
+                for(Consumer<List<ProjectEvent>> subscriber : SUBSCRIBERS){
+
+                    // A subscriber that fails does not stop the others from receiving the events.
+                    try{
+                        subscriber.accept(events);
+                    } catch(RuntimeException e){
+                        // The subscriber misses this batch, and is given the next one as usual.
+                    }
+                }
+
+                synchronized(ProjectEventBus.class){
+                    handedOn = batch.get(batch.size() - 1).sequence();
+                    ProjectEventBus.class.notifyAll();
+                }
+                batch.clear();
+
+            } catch(InterruptedException e){
+                return;
+            }
+        }
+    }
+
+    /**
+     * The writeToLog() method appends a batch of events to the event log. If the log cannot be written, the failure
+     * is reported, and the events are still handed on to the subscribers.
+     * @param batch the events
+     */
+    private static void writeToLog(List<Stamped> batch){
+
+        try(Writer log = Files.newBufferedWriter(Database.tenantFile(EVENT_LOG), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)){
+
+            StringBuilder lines = new StringBuilder();
+            for(Stamped stamped : batch){
+                appendLine(lines, stamped);
+            }
+            log.write(lines.toString());
+
+            if(logFailing){
+                System.out.println("The event log is being written again.");
+            }
+            logFailing = false;
+
+        } catch(IOException e){
+
+            if(!logFailing){
+                System.out.println("Could not write to the event log " + EVENT_LOG + ": " + e.getMessage() +
+                        ". Events will not be logged until it can be written.");
+            }
+            logFailing = true;
+
+        }
+    }
+
+    /**
+     * The appendLine() method adds the line of the event log for an event, as a JSON object holding its sequence
+     * number, time and type followed by each of its fields in order.
+     * @param lines where the line is added
+     * @param stamped the event
+     * @throws IOException if the event's fields could not be read
+     */
+    private static void appendLine(StringBuilder lines, Stamped stamped) throws IOException {
+
+        ProjectEvent event = stamped.event();
+        lines.append(SEQUENCE_FIELD).append(stamped.sequence()).append(",\"time\":");
+        appendString(lines, stamped.time().toString());
+        lines.append(",\"type\":");
+        appendString(lines, event.getClass().getSimpleName());
+
+        try{
+
+            for(RecordComponent component : event.getClass().getRecordComponents()){
+
+                lines.append(',');
+                appendString(lines, component.getName());
+                lines.append(':');
+
+                Object value = component.getAccessor().invoke(event);
+                if(value == null || value instanceof Double number && !Double.isFinite(number)){
+                    lines.append("null");
+                } else if(value instanceof Number){
+                    lines.append(value);
+                } else {
+                    // Dates are written as text, in the same form as they are stored.
+                    appendString(lines, value.toString());
+                }
+            }
+
+        } catch(ReflectiveOperationException e){
+            throw new IOException("Could not write " + event, e);
+        }
+
+        lines.append("}\n");
+    }
+
+    /**
+     * The appendString() method adds text as a JSON string, escaping quotes, backslashes and control characters so
+     * that every event stays on one line.
+     * @param lines where the string is added
+     * @param text the text
+     */
+    private static void appendString(StringBuilder lines, String text){
+
+        lines.append('"');
+        for(int i = 0; i < text.length(); i++){
+
+            char c = text.charAt(i);
+            if(c == '"' || c == '\\'){
+                lines.append('\\').append(c);
+            } else if(c < 0x20){
+                lines.append(String.format("\\u%04x", (int) c));
+            } else {
+                lines.append(c);
+            }
+        }
+        lines.append('"');
+    }
+}
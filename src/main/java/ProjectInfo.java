@@ -17,6 +17,9 @@ public class ProjectInfo {
     double totalPaid;
     double totalOwed;
     LocalDate completeDate;
+    // The row version of the project when it was loaded, used to detect changes made by other users. The write-behind
+    // writer updates it from its own thread once it has written an edit to the project.
+    volatile int version;
 
     /**
      * The constructor for the ProjectInfo class takes in six parameters that are used to set the attributes.
@@ -120,6 +123,14 @@ public class ProjectInfo {
 
     }
 
+    /**
+     * Sets the row version of the project
+     * @param newVersion the row version stored in the database
+     */
+    public void setVersion(int newVersion){
+        version = newVersion;
+    }
+
     /**
      * Gets the project number
      * @return integer of the project number
@@ -197,6 +208,14 @@ public class ProjectInfo {
 
     }
 
+    /**
+     * Gets the row version
+     * @return integer of the row version the project was loaded with
+     */
+    public int getVersion(){
+        return version;
+    }
+
     /**
      * Gets the complete date. If complete date is null, then it is set to today's date. The complete date is formatted
      * into a string.
@@ -0,0 +1,302 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class answers whether a project name or an ERF number might already be used, without asking the database.
+ * The names of all the projects, archived ones included, and the ERF numbers of all the buildings are held in two
+ * BloomFilters, so a name or number that is new to the filters is known straight away, and only one that might be
+ * used is looked up in the database to be sure.
+ * <p>
+ * The filters are built from the ProjectSnapshot when the program starts, and the names and numbers of the projects
+ * added, renamed or archived afterwards are added from the events on the ProjectEventBus. They are built again from
+ * the database every poised.keyFilterRebuildSeconds seconds (600 by default), which picks up the projects added by
+ * other copies of the program and makes room for the ones added since the last build. The names of the archived
+ * projects are read from the database on every build. Each filter is sized for twice the number of entries it is
+ * built with, at a false positive rate of poised.keyFilterFalsePositiveRate (0.01 by default).
+ * <p>
+ * The filters can miss the projects added by other copies of the program since they were last built, so a name or
+ * number they have not seen is only trusted when the database would reject it anyway: an ERF number is the key of
+ * build_info, and a name is only trusted once SchemaUpdates has made the name index unique, which it does when no two
+ * projects share a name. Until then every name is looked up in the database.
+ * <p>
+ * The database compares names without regard to case or accents, and treats letters such as sharp s and ae as the two
+ * letters they stand for, so names are added and checked with those differences removed. A name is always folded at
+ * least as far as the database folds it, as a name folded further is only looked up in the database, while one
+ * folded less could be reported as new when it is used. Trailing spaces are removed as well.
+ */
+public class ProjectKeyFilter {
+
+    private static final long REBUILD_INTERVAL_SECONDS = Config.getLong("poised.keyFilterRebuildSeconds", 600);
+
+    private BloomFilter names;
+    private BloomFilter erfNumbers;
+    // Whether the database rejects a name that is already used, so that a name the filter has not seen can be trusted.
+    private volatile boolean namesUnique;
+    // The keys added by events while the filters are being built, which are added to the new filters as well.
+    private List<String> addedNames;
+    private List<String> addedErfNumbers;
+
+    /**
+     * The constructor creates empty filters.
+     */
+    private ProjectKeyFilter(){
+
+        names = new BloomFilter(1, 0.01);
+        erfNumbers = new BloomFilter(1, 0.01);
+
+    }
+
+    /**
+     * The start() method builds the filters, subscribes to the project events and starts building the filters again
+     * in the background.
+     * @return the filter
+     * @throws SQLException if the filters could not be built
+     */
+    public static ProjectKeyFilter start() throws SQLException {
+
+        // The events are subscribed to first, so that no project saved while the filters are being built is missed.
+        ProjectKeyFilter filter = new ProjectKeyFilter();
+        ProjectEventBus.subscribe(filter::apply);
+        filter.rebuild(true);
+
+        ScheduledExecutorService rebuilder = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "poised-key-filter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rebuilder.scheduleWithFixedDelay(filter::rebuildQuietly, REBUILD_INTERVAL_SECONDS, REBUILD_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+
+        return filter;
+    }
+
+    /**
+     * The rebuild() method builds the filters from every project name and ERF number in the database, and replaces
+     * the filters in use with them.
+     * @throws SQLException if the database could not be read
+     */
+    public void rebuild() throws SQLException {
+        rebuild(false);
+    }
+
+    /**
+     * The rebuild() method builds the filters from every project name and ERF number, and replaces the filters in use
+     * with them.
+     * @param fromSnapshot true if the names and numbers are taken from the ProjectSnapshot, as when the program
+     *                     starts, or false if they are read from the database
+     * @throws SQLException if the database could not be read
+     */
+    private void rebuild(boolean fromSnapshot) throws SQLException {
+
+        synchronized(this){
+            addedNames = new ArrayList<>();
+            addedErfNumbers = new ArrayList<>();
+        }
+
+        try{
+
+            List<List<String>> loadedNames;
+            List<List<String>> loadedErfNumbers;
+
+            if(fromSnapshot){
+
+                // Every building has a project, as ProjectPurge removes a building with the last project on it.
+                List<String> snapshotNames = new ArrayList<>();
+                List<String> snapshotErfNumbers = new ArrayList<>();
+                for(ProjectSnapshot.Row row : ProjectSnapshot.rows()){
+                    snapshotNames.add(normalise(row.projectName()));
+                    snapshotErfNumbers.add(Integer.toString(row.erfNumber()));
+                }
+                loadedNames = List.of(snapshotNames);
+                loadedErfNumbers = List.of(snapshotErfNumbers);
+
+            } else {
+
+                // The primary is read, as a replica may not have the latest projects yet.
+                loadedNames = ParallelScan.scan("project_info", "proj_num", (connection, low, high) ->
+                        loadKeys(connection, "SELECT proj_name FROM project_info WHERE proj_num BETWEEN ? AND ?", low,
+                                high));
+                loadedErfNumbers = ParallelScan.scan("build_info", "erf_num", (connection, low, high) ->
+                        loadKeys(connection, "SELECT erf_num FROM build_info WHERE erf_num BETWEEN ? AND ?", low,
+                                high));
+
+            }
+
+            // Archived projects keep their names. The archive is read after the projects, and a project is copied
+            // into it before it is removed from them, so a project archived in between is found in one or the other.
+            List<List<String>> allNames = new ArrayList<>(loadedNames);
+            allNames.addAll(ParallelScan.scan("project_archive", "proj_num", (connection, low, high) ->
+                    loadKeys(connection, "SELECT proj_name FROM project_archive WHERE proj_num BETWEEN ? AND ?", low,
+                            high)));
+
+            // The index is checked on each build, as it is added by the first start after duplicate names are removed.
+            try(Connection connection = Database.getConnection()){
+                namesUnique = SchemaUpdates.indexExists(connection, "project_info",
+                        ProjectRepository.UNIQUE_NAME_INDEX);
+            }
+
+            double falsePositiveRate = Config.getDouble("poised.keyFilterFalsePositiveRate", 0.01);
+            BloomFilter builtNames = build(allNames, falsePositiveRate);
+            BloomFilter builtErfNumbers = build(loadedErfNumbers, falsePositiveRate);
+
+            synchronized(this){
+
+                addedNames.forEach(builtNames::add);
+                addedErfNumbers.forEach(builtErfNumbers::add);
+                names = builtNames;
+                erfNumbers = builtErfNumbers;
+
+            }
+
+        } finally{
+
+            synchronized(this){
+                addedNames = null;
+                addedErfNumbers = null;
+            }
+        }
+    }
+
+    /**
+     * The rebuildQuietly() method builds the filters again from the background thread. If the database cannot be
+     * reached, the filters in use are kept until the next build.
+     */
+    private void rebuildQuietly(){
+
+        try{
+            rebuild();
+        } catch(SQLException e){
+            // The filters are built again at the next interval.
+        }
+    }
+
+    /**
+     * The loadKeys() method reads one column of a range of rows of a table, as the keys the filter holds.
+     * @param connection an open connection to the database
+     * @param sql the query selecting the column, with the lowest and highest key of the range as parameters
+     * @param low the lowest key in the range
+     * @param high the highest key in the range
+     * @return the keys
+     * @throws SQLException if the database could not be read
+     */
+    private static List<String> loadKeys(Connection connection, String sql, long low, long high)
+            throws SQLException {
+
+        List<String> keys = new ArrayList<>();
+
+        try(PreparedStatement statement = connection.prepareStatement(sql)){
+
+            statement.setLong(1, low);
+            statement.setLong(2, high);
+
+            try(ResultSet rows = statement.executeQuery()){
+                while(rows.next()){
+                    keys.add(normalise(rows.getString(1)));
+                }
+            }
+        }
+
+        return keys;
+    }
+
+    /**
+     * The build() method creates a filter holding the given keys, with room for as many again.
+     * @param ranges the keys, read in ranges
+     * @param falsePositiveRate the false positive rate once the filter is full
+     * @return the filter
+     */
+    private static BloomFilter build(List<List<String>> ranges, double falsePositiveRate){
+
+        long count = ranges.stream().mapToLong(List::size).sum();
+        BloomFilter filter = new BloomFilter(Math.max(count * 2, 1024), falsePositiveRate);
+        ranges.forEach(keys -> keys.forEach(filter::add));
+
+        return filter;
+    }
+
+    /**
+     * The apply() method adds the names and ERF numbers of new, renamed and archived projects to the filters. The name
+     * of an archived project is usually there already, and is added in case it was archived by another copy of the
+     * program under a name this copy has not seen.
+     * @param events the events, in the order they were published
+     */
+    private synchronized void apply(List<ProjectEvent> events){
+
+        for(ProjectEvent event : events){
+
+            if(event instanceof ProjectEvent.Created created){
+
+                addName(created.projectName());
+                addErfNumber(created.erfNumber());
+
+            } else if(event instanceof ProjectEvent.Renamed renamed){
+                addName(renamed.projectName());
+            } else if(event instanceof ProjectEvent.Archived archived){
+                addName(archived.projectName());
+            }
+        }
+    }
+
+    /**
+     * The addName() method adds a project name to the filter in use, and to the one being built if there is one.
+     * @param projectName the project name
+     */
+    private void addName(String projectName){
+
+        String key = normalise(projectName);
+        names.add(key);
+        if(addedNames != null){
+            addedNames.add(key);
+        }
+    }
+
+    /**
+     * The addErfNumber() method adds an ERF number to the filter in use, and to the one being built if there is one.
+     * @param erfNumber the ERF number
+     */
+    private void addErfNumber(int erfNumber){
+
+        String key = Integer.toString(erfNumber);
+        erfNumbers.add(key);
+        if(addedErfNumbers != null){
+            addedErfNumbers.add(key);
+        }
+    }
+
+    /**
+     * The nameMightExist() method checks whether a project name might already be used. A name the filter has not seen
+     * is only reported as new while the database rejects names that are already used.
+     * @param projectName the project name
+     * @return false if the name is new to the filter and the database would reject it if it is used, or true if it
+     *         might be used
+     */
+    public synchronized boolean nameMightExist(String projectName){
+        return !namesUnique || names.mightContain(normalise(projectName));
+    }
+
+    /**
+     * The erfMightExist() method checks whether an ERF number might already be used.
+     * @param erfNumber the ERF number
+     * @return false if the number is definitely not used, or true if it might be
+     */
+    public synchronized boolean erfMightExist(int erfNumber){
+        return erfNumbers.mightContain(Integer.toString(erfNumber));
+    }
+
+    /**
+     * The normalise() method removes the differences between names that the database ignores when comparing them, in
+     * the same way as the lookups of project names do.
+     * @param key the name, or null
+     * @return the folded name
+     */
+    private static String normalise(String key){
+        return ProjectRepository.foldName(key);
+    }
+}
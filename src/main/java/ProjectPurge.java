@@ -0,0 +1,153 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class removes deleted projects from the database in the background. Deleting a project from the menus only
+ * marks it as deleted, which is a single quick update. The purge later removes the rows of the deleted projects, and
+ * of the projects moved to the ProjectArchive, from every table, poised.purgeBatchSize projects per transaction (100 by
+ * default), and then removes the people who no longer work on any project in the same sized batches, so no purge
+ * holds locks for long.
+ * <p>
+ * The purge runs at the interval set by the poised.purgeSeconds setting (300 seconds by default), for every tenant
+ * hosted by the deployment.
+ */
+public class ProjectPurge {
+
+    private static final long PURGE_INTERVAL_SECONDS = Config.getLong("poised.purgeSeconds", 300);
+
+    /**
+     * The start() method starts purging deleted projects in the background.
+     */
+    public static void start(){
+
+        ScheduledExecutorService purger = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "poised-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        purger.scheduleWithFixedDelay(ProjectPurge::purgeQuietly, PURGE_INTERVAL_SECONDS, PURGE_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+
+    }
+
+    /**
+     * The purgeQuietly() method runs a purge from the background thread. If the database cannot be reached, the
+     * deleted projects are left for the next purge.
+     */
+    private static void purgeQuietly(){
+
+        try{
+            purge();
+        } catch(SQLException e){
+            // The deleted projects stay hidden until the next purge removes them.
+        }
+    }
+
+    /**
+     * The purge() method purges the deleted projects of every tenant in turn.
+     * @return the number of projects removed
+     * @throws SQLException if a tenant's database could not be reached or a batch could not be removed
+     */
+    public static int purge() throws SQLException {
+
+        int[] purged = {0};
+        Database.forEachTenant(tenant -> purged[0] += purgeTenant());
+
+        return purged[0];
+    }
+
+    /**
+     * The purgeTenant() method removes every deleted project of the current tenant, and then every person who no
+     * longer works on a project.
+     * @return the number of projects removed
+     * @throws SQLException if the database could not be reached or a batch could not be removed
+     */
+    private static int purgeTenant() throws SQLException {
+
+        int purged = 0;
+        int batchSize = Config.getInt("poised.purgeBatchSize", 100);
+
+        try(Connection connection = Database.getConnection()){
+
+            int removed;
+            do{
+                removed = purgeBatch(connection, batchSize);
+                purged += removed;
+            } while(removed == batchSize);
+
+            for(Person.Type type : Person.Type.values()){
+                while(PersonRepository.deleteOrphans(connection, type, batchSize) == batchSize){
+                    // Each batch is committed on its own, until fewer than a full batch are left.
+                }
+            }
+        }
+
+        return purged;
+    }
+
+    /**
+     * The purgeBatch() method removes one batch of deleted projects in one transaction. A building's row is only
+     * removed if no other project is on the same ERF.
+     * @param connection an open connection to the database
+     * @param batchSize the most projects to remove
+     * @return the number of projects removed
+     * @throws SQLException if the batch could not be removed
+     */
+    private static int purgeBatch(Connection connection, int batchSize) throws SQLException {
+
+        List<Object> projectNumbers = new ArrayList<>();
+        List<Object> erfNumbers = new ArrayList<>();
+        // The payments of archived projects are kept, so only those of deleted projects are removed.
+        List<Object> deletedNumbers = new ArrayList<>();
+
+        try(PreparedStatement statement = connection.prepareStatement("SELECT proj_num, erf_num, deleted " +
+                "FROM project_info WHERE deleted IN ('Y', 'A') LIMIT ?")){
+
+            statement.setInt(1, batchSize);
+
+            try(ResultSet deleted = statement.executeQuery()){
+                while(deleted.next()){
+
+                    projectNumbers.add(deleted.getInt("proj_num"));
+                    erfNumbers.add(deleted.getInt("erf_num"));
+                    if(deleted.getString("deleted").equals("Y")){
+                        deletedNumbers.add(deleted.getInt("proj_num"));
+                    }
+
+                }
+            }
+        }
+
+        if(projectNumbers.isEmpty()){
+            return 0;
+        }
+
+        String projects = ProjectRepository.placeholders(projectNumbers.size());
+        Object[] projectParameters = projectNumbers.toArray();
+
+        SqlOperation operation = new SqlOperation("purge " + projectNumbers.size() + " deleted projects");
+        if(!deletedNumbers.isEmpty()){
+            operation.add("DELETE FROM payment WHERE proj_num IN " +
+                    ProjectRepository.placeholders(deletedNumbers.size()), deletedNumbers.toArray());
+        }
+
+        // The rows that refer to project_info are removed before it, and the rows it refers to after it.
+        operation.add("DELETE FROM project_member WHERE proj_num IN " + projects, projectParameters)
+                .add("DELETE FROM project_info WHERE deleted IN ('Y', 'A') AND proj_num IN " + projects,
+                        projectParameters)
+                .add("DELETE FROM pay_complete WHERE proj_num IN " + projects, projectParameters)
+                .add("DELETE FROM build_info WHERE erf_num IN " + ProjectRepository.placeholders(erfNumbers.size()) +
+                        " AND NOT EXISTS (SELECT 1 FROM project_info WHERE project_info.erf_num = build_info.erf_num)",
+                        erfNumbers.toArray())
+                .execute(connection);
+
+        return projectNumbers.size();
+    }
+}
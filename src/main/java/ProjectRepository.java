@@ -0,0 +1,593 @@
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * This class holds the queries and changes the program makes to projects, separate from the menus that ask the user
+ * for input. Queries are run on a connection given by the caller. Changes are returned as SqlOperations, so that the
+ * caller decides whether they are written straight away or kept in the offline journal.
+ */
+public class ProjectRepository {
+
+    // This is variable contains a SQL statement that joins all the tables together based on the linked columns.
+    // The people on each project are loaded afterwards, for all the projects found at once.
+    // Projects that have been deleted but not yet purged are left out.
+    public static final String JOIN_TABLES = "SELECT * FROM project_info " +
+            "INNER JOIN pay_complete ON project_info.proj_num = pay_complete.proj_num " +
+            "INNER JOIN build_info ON project_info.erf_num = build_info.erf_num WHERE project_info.deleted = 'N'";
+    // The columns shown when projects are listed. Only the full project that the user opens is loaded with
+    // JOIN_TABLES.
+    public static final String SELECT_SUMMARIES = "SELECT project_info.proj_num, proj_name, project_info.erf_num, " +
+            "deadline, total_owed, finalised FROM project_info " +
+            "INNER JOIN pay_complete ON project_info.proj_num = pay_complete.proj_num " +
+            "WHERE project_info.deleted = 'N'";
+    // New project numbers are taken from a single counter row, which starts at the highest number already used.
+    static final String CREATE_COUNTER_TABLE = "CREATE TABLE project_counter (" +
+            "id INT NOT NULL PRIMARY KEY, " +
+            "last_num INT NOT NULL)";
+    static final String SEED_COUNTER = "INSERT INTO project_counter " +
+            "SELECT 1, COALESCE(MAX(proj_num), 0) FROM project_info";
+    private static final String ALLOCATE_NUMBERS = "UPDATE project_counter " +
+            "SET last_num = LAST_INSERT_ID(last_num + ?) WHERE id = 1";
+    // No two projects may have the same name. The index is only added once the names already used are all different.
+    static final String UNIQUE_NAME_INDEX = "project_name_unique";
+    static final String ADD_UNIQUE_NAME_INDEX = "CREATE UNIQUE INDEX " + UNIQUE_NAME_INDEX +
+            " ON project_info (proj_name)";
+    static final String FIND_DUPLICATE_NAMES = "SELECT EXISTS (SELECT 1 FROM project_info " +
+            "GROUP BY proj_name HAVING COUNT(*) > 1)";
+    // The MySQL error code of a statement that would give two rows the same unique key.
+    private static final int DUPLICATE_KEY = 1062;
+
+    // The letters that the database compares as other letters, or as two letters, which decomposing does not split:
+    // sharp s, ae, oe, o with stroke, d with stroke, eth, thorn, l with stroke, h with stroke, dotless i, t with
+    // stroke, b with stroke and z with stroke.
+    private static final Map<Character, String> EXPANSIONS = Map.ofEntries(Map.entry('\u00df', "ss"),
+            Map.entry('\u00e6', "ae"), Map.entry('\u0153', "oe"), Map.entry('\u00f8', "o"),
+            Map.entry('\u0111', "d"), Map.entry('\u00f0', "d"), Map.entry('\u00fe', "th"),
+            Map.entry('\u0142', "l"), Map.entry('\u0127', "h"), Map.entry('\u0131', "i"),
+            Map.entry('\u0167', "t"), Map.entry('\u0180', "b"), Map.entry('\u01b6', "z"));
+    // Marks, and the format and control characters the database ignores.
+    private static final Pattern IGNORED = Pattern.compile("[\\p{M}\\p{Cf}\\p{Cc}]");
+
+    /**
+     * The nameExists() method checks whether a project with the given name is already in the database.
+     * @param connection an open connection to the database
+     * @param projectName the name to be checked
+     * @return true if the name is already used
+     * @throws SQLException if the database could not be read
+     */
+    public static boolean nameExists(Connection connection, String projectName) throws SQLException {
+
+        // Only whether a row exists is asked for, which the project_name index answers without reading any rows.
+        try(PreparedStatement statement = connection.prepareStatement("SELECT EXISTS (SELECT 1 FROM project_info " +
+                "WHERE proj_name = ?)")){
+
+            statement.setString(1, projectName);
+
+            try(ResultSet exists = statement.executeQuery()){
+                return exists.next() && exists.getBoolean(1);
+            }
+        }
+    }
+
+    /**
+     * The isDuplicateName() method checks whether a change was rejected because it would give a project the name of
+     * another project.
+     * @param e the exception the change was rejected with
+     * @return true if the name is already used
+     */
+    public static boolean isDuplicateName(SQLException e){
+        return e.getErrorCode() == DUPLICATE_KEY && e.getMessage() != null &&
+                e.getMessage().contains(UNIQUE_NAME_INDEX);
+    }
+
+    /**
+     * The erfExists() method checks whether a building with the given ERF number is already in the database.
+     * @param connection an open connection to the database
+     * @param erfNumber the ERF number to be checked
+     * @return true if the ERF number is already used
+     * @throws SQLException if the database could not be read
+     */
+    public static boolean erfExists(Connection connection, int erfNumber) throws SQLException {
+
+        try(PreparedStatement statement = connection.prepareStatement("SELECT EXISTS (SELECT 1 FROM build_info " +
+                "WHERE erf_num = ?)")){
+
+            statement.setInt(1, erfNumber);
+
+            try(ResultSet exists = statement.executeQuery()){
+                return exists.next() && exists.getBoolean(1);
+            }
+        }
+    }
+
+    /**
+     * The allocateProjectNumbers() method takes the next project numbers from the counter row in project_counter.
+     * The counter only ever goes up, so a number is never given out twice, even after its project has been purged or
+     * archived. The counter is changed in its own statement, which holds its row lock only briefly when the
+     * connection is in auto-commit mode.
+     * @param connection an open connection to the database
+     * @param count how many numbers are needed
+     * @return the first of the numbers, which follow on from each other
+     * @throws SQLException if the database could not be reached
+     */
+    public static int allocateProjectNumbers(Connection connection, int count) throws SQLException {
+
+        try(PreparedStatement statement = connection.prepareStatement(ALLOCATE_NUMBERS)){
+
+            statement.setInt(1, count);
+            statement.executeUpdate();
+
+        }
+
+        // LAST_INSERT_ID() gives back the value the counter was set to on this connection.
+        try(PreparedStatement statement = connection.prepareStatement("SELECT LAST_INSERT_ID()");
+            ResultSet number = statement.executeQuery()){
+
+            number.next();
+            return number.getInt(1) - count + 1;
+        }
+    }
+
+    /**
+     * The findAll() method lists every project.
+     * @param connection an open connection to the database
+     * @return a summary of each project
+     * @throws SQLException if the database could not be read
+     */
+    public static ArrayList<ProjectSummary> findAll(Connection connection) throws SQLException {
+
+        try(PreparedStatement statement = connection.prepareStatement(SELECT_SUMMARIES);
+            ResultSet selectedRows = statement.executeQuery()){
+
+            return readSummaries(selectedRows);
+        }
+    }
+
+    /**
+     * The findIncomplete() method lists the projects that have not been finalised.
+     * @param connection an open connection to the database
+     * @return a summary of each incomplete project
+     * @throws SQLException if the database could not be read
+     */
+    public static ArrayList<ProjectSummary> findIncomplete(Connection connection) throws SQLException {
+
+        try(PreparedStatement statement = connection.prepareStatement(SELECT_SUMMARIES +
+                " AND finalised = 'N'");
+            ResultSet selectedRows = statement.executeQuery()){
+
+            return readSummaries(selectedRows);
+        }
+    }
+
+    /**
+     * The findOverdue() method lists the projects whose deadline is before the given date.
+     * @param connection an open connection to the database
+     * @param today the date the deadlines are compared with
+     * @return a summary of each overdue project
+     * @throws SQLException if the database could not be read
+     */
+    public static ArrayList<ProjectSummary> findOverdue(Connection connection, LocalDate today) throws SQLException {
+
+        try(PreparedStatement statement = connection.prepareStatement(SELECT_SUMMARIES +
+                " AND pay_complete.deadline < ?")){
+
+            statement.setString(1, today.toString());
+
+            try(ResultSet selectedRows = statement.executeQuery()){
+                return readSummaries(selectedRows);
+            }
+        }
+    }
+
+    /**
+     * The findByNumberOrName() method lists the projects with the given project number or name.
+     * @param connection an open connection to the database
+     * @param projectNumber the project number searched for, or 0 to search by name only
+     * @param projectName the project name searched for
+     * @return a summary of each matching project
+     * @throws SQLException if the database could not be read
+     */
+    public static ArrayList<ProjectSummary> findByNumberOrName(Connection connection, int projectNumber,
+                                                               String projectName) throws SQLException {
+
+        try(PreparedStatement statement = connection.prepareStatement(SELECT_SUMMARIES +
+                " AND (project_info.proj_num = ? OR proj_name = ?)")){
+
+            statement.setInt(1, projectNumber);
+            statement.setString(2, projectName);
+
+            try(ResultSet selectedRows = statement.executeQuery()){
+                return readSummaries(selectedRows);
+            }
+        }
+    }
+
+    /**
+     * The findFinalisedBefore() method loads projects that were finalised before the given date.
+     * @param connection an open connection to the database
+     * @param cutOff the date the projects must have been finalised before
+     * @param limit the largest number of projects loaded
+     * @return a list of the projects
+     * @throws SQLException if the database could not be read
+     */
+    public static ArrayList<Project> findFinalisedBefore(Connection connection, LocalDate cutOff, int limit)
+            throws SQLException {
+
+        try(PreparedStatement statement = connection.prepareStatement(JOIN_TABLES +
+                " AND finalised = 'Y' AND complete_date < ? ORDER BY project_info.proj_num LIMIT ?")){
+
+            statement.setString(1, cutOff.toString());
+            statement.setInt(2, limit);
+
+            try(ResultSet selectedRows = statement.executeQuery()){
+                return readProjects(connection, selectedRows);
+            }
+        }
+    }
+
+    /**
+     * The findMany() method looks up many projects at once. Each search term is matched against the project names,
+     * without regard to case or accents as the database compares them, and, if it is a number, against the project
+     * numbers and ERF numbers. The terms are looked up poised.searchBatchSize at a time (500 by default), each group
+     * in one query.
+     * @param connection an open connection to the database
+     * @param searchTerms the project numbers, names and ERF numbers to be found
+     * @return the projects matching each search term, in the order the terms were given, with an empty list for a
+     * term that matched nothing
+     * @throws SQLException if the database could not be read
+     */
+    public static Map<String, List<ProjectSummary>> findMany(Connection connection, List<String> searchTerms)
+            throws SQLException {
+
+        Map<String, List<ProjectSummary>> matches = new LinkedHashMap<>();
+        for(String term : searchTerms){
+            matches.put(term, new ArrayList<>());
+        }
+
+        List<String> terms = new ArrayList<>(matches.keySet());
+        int batchSize = Config.getInt("poised.searchBatchSize", 500);
+
+        for(int first = 0; first < terms.size(); first += batchSize){
+
+            List<String> batch = terms.subList(first, Math.min(first + batchSize, terms.size()));
+
+            // The database matches names without regard to case or accents, so each name is kept folded the same
+            // way, with the terms it was written as, such as House Smith and house smith.
+            Map<String, List<String>> names = new HashMap<>();
+            // The terms that are numbers, each with the terms it was written as, such as 42 and 0042.
+            Map<Integer, List<String>> numbers = new HashMap<>();
+            for(String term : batch){
+                names.computeIfAbsent(foldName(term), name -> new ArrayList<>()).add(term);
+                if(term.matches("\\d{1,9}")){
+                    numbers.computeIfAbsent(Integer.parseInt(term), number -> new ArrayList<>()).add(term);
+                }
+            }
+
+            String sql = SELECT_SUMMARIES + " AND (proj_name IN " + placeholders(batch.size());
+            if(!numbers.isEmpty()){
+                sql += " OR project_info.proj_num IN " + placeholders(numbers.size()) + " OR project_info.erf_num IN " +
+                        placeholders(numbers.size());
+            }
+            sql += ")";
+
+            try(PreparedStatement statement = connection.prepareStatement(sql)){
+
+                int index = 1;
+                for(String term : batch){
+                    statement.setString(index++, term);
+                }
+                // The numbers are given twice, once for the project numbers and once for the ERF numbers.
+                for(int i = 0; i < 2 && !numbers.isEmpty(); i++){
+                    for(int number : numbers.keySet()){
+                        statement.setInt(index++, number);
+                    }
+                }
+
+                try(ResultSet selectedRows = statement.executeQuery()){
+
+                    // Each project is added to every term it matches, once.
+                    for(ProjectSummary summary : readSummaries(selectedRows)){
+
+                        List<String> matchedTerms = new ArrayList<>(names.getOrDefault(
+                                foldName(summary.projectName()), List.of()));
+                        matchedTerms.addAll(numbers.getOrDefault(summary.projectNumber(), List.of()));
+                        matchedTerms.addAll(numbers.getOrDefault(summary.erfNumber(), List.of()));
+
+                        matchedTerms.stream().distinct().forEach(term -> matches.get(term).add(summary));
+                    }
+                }
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * The foldName() method removes the differences between project names that the database ignores when comparing
+     * them: case, accents, ligatures and other compatibility characters, and letters such as sharp s that it compares
+     * as the letters they stand for. Trailing spaces are removed as well. A name is always folded at least as far as
+     * the database folds it, so two names the database compares as equal always give the same folded name.
+     * @param name the name, or null
+     * @return the folded name, which is empty for null
+     */
+    static String foldName(String name){
+
+        if(name == null){
+            return "";
+        }
+
+        String folded = IGNORED.matcher(Normalizer.normalize(name.toLowerCase(Locale.ROOT), Normalizer.Form.NFKD))
+                .replaceAll("");
+
+        StringBuilder result = new StringBuilder(folded.length());
+        for(int i = 0; i < folded.length(); i++){
+
+            String expansion = EXPANSIONS.get(folded.charAt(i));
+            if(expansion != null){
+                result.append(expansion);
+            } else {
+                result.append(folded.charAt(i));
+            }
+        }
+
+        return result.toString().stripTrailing();
+    }
+
+    /**
+     * The placeholders() method builds the list of parameters of an IN clause.
+     * @param count the number of parameters
+     * @return the list, such as (?, ?, ?)
+     */
+    static String placeholders(int count){
+        return "(" + String.join(", ", Collections.nCopies(count, "?")) + ")";
+    }
+
+    /**
+     * The findByNumber() method loads one project by its project number.
+     * @param connection an open connection to the database
+     * @param projectNumber the number of the project
+     * @return the project, or null if there is no project with that number
+     * @throws SQLException if the database could not be read
+     */
+    public static Project findByNumber(Connection connection, int projectNumber) throws SQLException {
+
+        try(PreparedStatement statement = connection.prepareStatement(JOIN_TABLES +
+                " AND project_info.proj_num = ?")){
+
+            statement.setInt(1, projectNumber);
+
+            try(ResultSet selectedRows = statement.executeQuery()){
+
+                ArrayList<Project> projects = readProjects(connection, selectedRows);
+
+                return projects.isEmpty() ? null : projects.get(0);
+            }
+        }
+    }
+
+    /**
+     * The insert() method creates an operation that inserts a new project and its people. The project_info row is
+     * inserted last because it refers to the rows in the other tables.
+     * @param project the new project
+     * @return the operation adding the project
+     */
+    public static SqlOperation insert(Project project){
+
+        SqlOperation operation = new SqlOperation("add project " + project.projectInfo.getProjectNumber())
+                .creates(project.projectInfo.getProjectNumber());
+
+        // Each person is inserted into the table of their role.
+        for(Person person : project.team){
+            PersonRepository.addInsert(operation, person);
+        }
+
+        return addProjectInserts(operation, project);
+    }
+
+    /**
+     * The insertWithExistingPeople() method creates an operation that inserts a new project whose people are
+     * already in the database.
+     * @param project the new project
+     * @return the operation adding the project
+     */
+    public static SqlOperation insertWithExistingPeople(Project project){
+
+        return addProjectInserts(new SqlOperation("add project " + project.projectInfo.getProjectNumber())
+                .creates(project.projectInfo.getProjectNumber()), project);
+    }
+
+    /**
+     * The addPersonInsert() method adds an insert of a person into the table of their role to an operation.
+     * @param operation the operation the insert is added to
+     * @param person the person to be inserted
+     */
+    public static void addPersonInsert(SqlOperation operation, Person person){
+
+        PersonRepository.addInsert(operation, person);
+
+    }
+
+    /**
+     * The versionCheck() method starts an operation on a project with a statement that increases the project's row
+     * version, but only if it still matches the version the project was loaded with. Changes to tables without a
+     * version of their own are added after it, so they are rolled back if the project has changed.
+     * @param description a short description of the change, without the project number
+     * @param project the project being changed
+     * @return the new operation
+     */
+    public static SqlOperation versionCheck(String description, Project project){
+
+        int projectNumber = project.projectInfo.getProjectNumber();
+
+        return new SqlOperation(description + " " + projectNumber)
+                .addCompareAndSet("UPDATE pay_complete SET row_version = row_version + 1 " +
+                        "WHERE proj_num = ? AND row_version = ?", projectNumber, project.projectInfo.getVersion());
+    }
+
+    /**
+     * The finalise() method creates an operation that marks a project as finalised on its complete date, provided
+     * nobody else has changed it since it was loaded.
+     * @param project the project to be finalised
+     * @return the operation finalising the project
+     */
+    public static SqlOperation finalise(Project project){
+
+        return new SqlOperation("finalise project " + project.projectInfo.getProjectNumber())
+                .addCompareAndSet("UPDATE pay_complete SET finalised = 'Y', complete_date = ?, " +
+                        "row_version = row_version + 1 WHERE proj_num = ? AND row_version = ?",
+                        project.projectInfo.getCompleteDate(), project.projectInfo.getProjectNumber(),
+                        project.projectInfo.getVersion());
+    }
+
+    /**
+     * The delete() method creates an operation that marks a project as deleted, provided nobody else has changed it
+     * since it was loaded. The project disappears from every list straight away, and its rows, and any people who
+     * no longer work on a project, are removed later by ProjectPurge.
+     * @param project the project to be deleted
+     * @return the operation deleting the project
+     */
+    public static SqlOperation delete(Project project){
+
+        return versionCheck("delete project", project)
+                .add("UPDATE project_info SET deleted = 'Y' WHERE proj_num = ?",
+                        project.projectInfo.getProjectNumber());
+    }
+
+    /**
+     * The addArchive() method adds the statements that mark a project as archived and copy it into the
+     * project_archive table, provided nobody has changed it since it was loaded. An archived project is hidden like a
+     * deleted one and removed by ProjectPurge, but its payments are kept.
+     * @param operation the operation the statements are added to
+     * @param project the project being archived
+     * @param record the project compressed by the ProjectArchive
+     */
+    public static void addArchive(SqlOperation operation, Project project, byte[] record){
+
+        int projectNumber = project.projectInfo.getProjectNumber();
+
+        operation.add("UPDATE project_info INNER JOIN pay_complete ON project_info.proj_num = pay_complete.proj_num " +
+                "SET project_info.deleted = 'A' WHERE project_info.proj_num = ? AND pay_complete.row_version = ?",
+                projectNumber, project.projectInfo.getVersion());
+        // The copy is only made if the project was marked above.
+        operation.add("INSERT INTO project_archive (proj_num, proj_name, record) SELECT proj_num, proj_name, ? " +
+                "FROM project_info WHERE proj_num = ? AND deleted = 'A' " +
+                "ON DUPLICATE KEY UPDATE proj_name = VALUES(proj_name), record = VALUES(record)", record,
+                projectNumber);
+    }
+
+    /**
+     * The readProjects() method gets information about projects(s) from a ResultSet, creates Project object(s),
+     * and adds them to an array list that is then returned. The teams of all the projects are then loaded together.
+     * @param connection the connection the ResultSet was read from
+     * @param projectsToCreate the ResultSet that contains row(s) of project information.
+     * @return an array list of the project(s) is returned.
+     * @throws SQLException if the rows could not be read
+     */
+    static ArrayList<Project> readProjects(Connection connection, ResultSet projectsToCreate) throws SQLException {
+
+        ArrayList<Project> listOfProjects = new ArrayList<>();
+        Map<Integer, Project> projectsByNumber = new LinkedHashMap<>();
+
+        while(projectsToCreate.next()){
+
+            int projectNumber = projectsToCreate.getInt("project_info.proj_num");
+            String projectName = projectsToCreate.getString("proj_name");
+            String buildingType = projectsToCreate.getString("build_type");
+            String buildingAddress = projectsToCreate.getString("build_address");
+            int erfNumber = projectsToCreate.getInt("erf_num");
+            double totalFee = projectsToCreate.getDouble("total_fee");
+            double totalPaid = projectsToCreate.getDouble("total_paid");
+
+            // In order to get the correct format for the LocalDate object, the formatDate() method is called.
+            String deadline = projectsToCreate.getString("deadline");
+            LocalDate deadlineDate = Poised.formatDate(deadline);
+            // The complete date of the project is captured and will be set below once the Project object is created.
+            Date completeDate = projectsToCreate.getDate("complete_date");
+
+            // A ProjectInfo object is created passing some captured information above.
+            ProjectInfo capturedProjectInfo = new ProjectInfo(projectName, buildingType, buildingAddress, erfNumber,
+                    totalFee, deadlineDate);
+            // The project number and total paid is then set after the ProjectInfo object is created.
+            capturedProjectInfo.setProjectNumber(projectNumber);
+            capturedProjectInfo.setTotalPaid(totalPaid);
+            capturedProjectInfo.setVersion(projectsToCreate.getInt("row_version"));
+
+            // A Project object is created without its people, who are added once all the rows have been read.
+            Project capturedProject = new Project(capturedProjectInfo, null, null, null, null, null);
+
+            // If the completeDate is not null, then the project is set to finalised and the complete date is set.
+            if(completeDate != null){
+
+                capturedProject.finalise = true;
+                LocalDate completeLocalDate = completeDate.toLocalDate();
+                capturedProject.projectInfo.setCompleteDate(completeLocalDate);
+
+            }
+            // The project is added to the array created before the while statement.
+            listOfProjects.add(capturedProject);
+            projectsByNumber.put(projectNumber, capturedProject);
+        }
+
+        PersonRepository.loadTeams(connection, projectsByNumber);
+
+        // The array is returned.
+        return listOfProjects;
+    }
+
+    /**
+     * The readSummaries() method creates a ProjectSummary from each row of a query on SELECT_SUMMARIES.
+     * @param rows the rows to be read
+     * @return a list of the summaries
+     * @throws SQLException if the rows could not be read
+     */
+    static ArrayList<ProjectSummary> readSummaries(ResultSet rows) throws SQLException {
+
+        ArrayList<ProjectSummary> summaries = new ArrayList<>();
+
+        while(rows.next()){
+            summaries.add(new ProjectSummary(rows.getInt("proj_num"), rows.getString("proj_name"),
+                    rows.getInt("erf_num"), Poised.formatDate(rows.getString("deadline")),
+                    rows.getDouble("total_owed"), rows.getString("finalised").equals("Y")));
+        }
+
+        return summaries;
+    }
+
+    /**
+     * The addProjectInserts() method adds the inserts of a project's own rows to an operation.
+     * @param operation the operation the inserts are added to
+     * @param project the new project
+     * @return the operation
+     */
+    private static SqlOperation addProjectInserts(SqlOperation operation, Project project){
+
+        ProjectInfo info = project.projectInfo;
+
+        // The columns are named because pay_complete and project_info have gained columns since they were created.
+        operation.add("INSERT INTO pay_complete (proj_num, total_fee, total_paid, total_owed, deadline, finalised, " +
+                        "complete_date) VALUES (?, ?, ?, ?, ?, ?, ?)", info.getProjectNumber(), info.getTotalFee(),
+                        0.0, info.getTotalOwed(), info.getDeadline(), "N", null)
+                .add("INSERT INTO build_info VALUES (?, ?, ?)", info.getErfNumber(), info.getBuildingType(),
+                        info.getAddress())
+                .add("INSERT INTO project_info (proj_num, proj_name, erf_num, architect, contractor, customer, " +
+                        "engineer, project_manager) VALUES (?, ?, ?, ?, ?, ?, ?, ?)", info.getProjectNumber(),
+                        info.getProjectName(), info.getErfNumber(), project.architect.getName(),
+                        project.contractor.getName(), project.customer.getName(), project.engineer.getName(),
+                        project.manager.getName());
+
+        return operation;
+    }
+}
@@ -0,0 +1,417 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * This class keeps a copy of the details of every project that the in-memory structures are built from in the binary
+ * file {@value #SNAPSHOT_FILE}, so that when the program starts they can be built from the file instead of reading
+ * every project from the database. Only the projects changed since the file was written are read from the database,
+ * found with the changed_at column that project_info and pay_complete carry.
+ * <p>
+ * The file is written when the program starts and every poised.snapshotSeconds seconds (900 by default), from the
+ * last file and the changes since it was written, and replaces the last file in one step. The changes are read from
+ * poised.snapshotMarginSeconds seconds (60 by default) before the file's time, so that a change saved by a
+ * transaction that was still open when the file was written is not missed.
+ * <p>
+ * The file is read by mapping it into memory. It holds, in order:
+ * <ol>
+ *     <li>the format {@value #FORMAT}, and the time of the database the file is up to date with, in milliseconds</li>
+ *     <li>the number of strings in the dictionary, and each string as its length followed by its UTF-8 bytes</li>
+ *     <li>the number of projects, and each project in {@value #ROW_BYTES} bytes: its number, the position of its name
+ *     in the dictionary (or -1 if it has none), its ERF number, total fee, total paid, deadline as a day number,
+ *     whether it is finalised, and its deleted mark</li>
+ *     <li>a CRC32 checksum of everything before it</li>
+ * </ol>
+ * A file that is missing, of another format or whose checksum does not match is ignored, and every project is read
+ * from the database instead.
+ */
+public class ProjectSnapshot {
+
+    public static final String SNAPSHOT_FILE = "poised-snapshot.dat";
+    private static final int FORMAT = 1;
+    private static final int ROW_BYTES = 34;
+    private static final long WRITE_INTERVAL_SECONDS = Config.getLong("poised.snapshotSeconds", 900);
+    private static final String SELECT_COLUMNS = "SELECT project_info.proj_num, proj_name, project_info.erf_num, " +
+            "total_fee, total_paid, deadline, finalised, project_info.deleted FROM project_info " +
+            "INNER JOIN pay_complete ON pay_complete.proj_num = project_info.proj_num ";
+    private static final String SELECT_RANGE = SELECT_COLUMNS + "WHERE project_info.proj_num BETWEEN ? AND ?";
+    private static final String SELECT_CHANGED = SELECT_COLUMNS + "WHERE project_info.changed_at >= ? UNION " +
+            SELECT_COLUMNS + "WHERE pay_complete.changed_at >= ?";
+
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "poised-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // The projects loaded for the structures built when the program starts, until release() is called.
+    private static Map<Integer, Row> loaded;
+
+    /**
+     * This class holds the details of one project kept in the snapshot.
+     * @param projectNumber the number of the project
+     * @param projectName the name of the project, or null
+     * @param erfNumber the ERF number of the project's building
+     * @param totalFee the total fee of the project
+     * @param totalPaid the amount paid so far
+     * @param deadline the deadline of the project
+     * @param finalised true if the project is finalised
+     * @param deleted 'N' if the project is in use, 'Y' if it is deleted or 'A' if it is archived
+     */
+    public record Row(int projectNumber, String projectName, int erfNumber, double totalFee, double totalPaid,
+                      LocalDate deadline, boolean finalised, char deleted) {
+
+        /**
+         * Checks whether the project is in use
+         * @return true if the project is neither deleted nor archived
+         */
+        public boolean isCurrent(){
+            return deleted == 'N';
+        }
+    }
+
+    /**
+     * This class holds the projects read from a snapshot or the database, and the time of the database they are up
+     * to date with.
+     * @param rows the projects, keyed on their project numbers
+     * @param watermark the time of the database
+     */
+    private record Snapshot(Map<Integer, Row> rows, Timestamp watermark) {
+    }
+
+    /**
+     * The start() method starts writing the snapshot in the background every poised.snapshotSeconds seconds.
+     */
+    public static void start(){
+
+        WRITER.scheduleWithFixedDelay(ProjectSnapshot::updateQuietly, WRITE_INTERVAL_SECONDS, WRITE_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+
+    }
+
+    /**
+     * The rows() method returns the details of every project for the structures built when the program starts. The
+     * projects are loaded by the first call, from the snapshot and the changes since it was written, and a new
+     * snapshot is written from them in the background. Later calls return the same projects until release() is
+     * called.
+     * @return the details of every project, including the deleted and archived ones
+     * @throws SQLException if the database could not be read
+     */
+    public static synchronized Collection<Row> rows() throws SQLException {
+
+        if(loaded == null){
+
+            Snapshot snapshot = load();
+            loaded = snapshot.rows();
+            WRITER.execute(() -> writeQuietly(snapshot));
+
+        }
+
+        return loaded.values();
+    }
+
+    /**
+     * The release() method forgets the projects returned by rows(), once the structures have been built from them.
+     */
+    public static synchronized void release(){
+        loaded = null;
+    }
+
+    /**
+     * The load() method reads the snapshot and brings it up to date with the database, or reads every project from
+     * the database if there is no snapshot that can be used.
+     * @return the projects and the time of the database they are up to date with
+     * @throws SQLException if the database could not be read
+     */
+    private static Snapshot load() throws SQLException {
+
+        // The time is read first, so that anything changed while the projects are being read is read again next time.
+        Timestamp now;
+        try(Connection connection = Database.getConnection();
+            PreparedStatement statement = connection.prepareStatement("SELECT NOW(6)");
+            ResultSet time = statement.executeQuery()){
+
+            time.next();
+            now = time.getTimestamp(1);
+
+        }
+
+        Snapshot snapshot = null;
+        try{
+            snapshot = read(Database.tenantFile(SNAPSHOT_FILE));
+        } catch(IOException e){
+            // The projects are read from the database instead.
+        }
+
+        if(snapshot == null){
+
+            Map<Integer, Row> rows = new HashMap<>();
+            ParallelScan.scan("project_info", "proj_num", ProjectSnapshot::loadRange).forEach(range ->
+                    range.forEach(row -> rows.put(row.projectNumber(), row)));
+            return new Snapshot(rows, now);
+
+        }
+
+        Timestamp since = new Timestamp(snapshot.watermark().getTime() -
+                Config.getLong("poised.snapshotMarginSeconds", 60) * 1000);
+        applyChanges(snapshot.rows(), since);
+        return new Snapshot(snapshot.rows(), now);
+    }
+
+    /**
+     * The loadRange() method reads the details of one range of projects.
+     * @param connection an open connection to the database
+     * @param low the lowest project number in the range
+     * @param high the highest project number in the range
+     * @return the projects
+     * @throws SQLException if the database could not be read
+     */
+    private static List<Row> loadRange(Connection connection, long low, long high) throws SQLException {
+
+        try(PreparedStatement statement = connection.prepareStatement(SELECT_RANGE)){
+
+            statement.setLong(1, low);
+            statement.setLong(2, high);
+            return readRows(statement);
+
+        }
+    }
+
+    /**
+     * The applyChanges() method brings the projects read from a snapshot up to date with the database. The projects
+     * removed since are dropped, and the projects added or changed since are read again.
+     * @param rows the projects, keyed on their project numbers
+     * @param since the time from which changes are read
+     * @throws SQLException if the database could not be read
+     */
+    private static void applyChanges(Map<Integer, Row> rows, Timestamp since) throws SQLException {
+
+        try(Connection connection = Database.getConnection()){
+
+            // The numbers are read from the primary key alone, which is much quicker than reading the projects.
+            BitSet existing = new BitSet();
+            try(PreparedStatement statement = connection.prepareStatement("SELECT proj_num FROM project_info");
+                ResultSet numbers = statement.executeQuery()){
+                while(numbers.next()){
+                    existing.set(numbers.getInt(1));
+                }
+            }
+            rows.keySet().removeIf(projectNumber -> !existing.get(projectNumber));
+
+            try(PreparedStatement statement = connection.prepareStatement(SELECT_CHANGED)){
+
+                statement.setTimestamp(1, since);
+                statement.setTimestamp(2, since);
+                readRows(statement).forEach(row -> rows.put(row.projectNumber(), row));
+
+            }
+        }
+    }
+
+    /**
+     * The readRows() method runs a query of the details of projects.
+     * @param statement the query
+     * @return the projects
+     * @throws SQLException if the database could not be read
+     */
+    private static List<Row> readRows(PreparedStatement statement) throws SQLException {
+
+        List<Row> read = new ArrayList<>();
+
+        try(ResultSet rows = statement.executeQuery()){
+            while(rows.next()){
+                read.add(new Row(rows.getInt("proj_num"), rows.getString("proj_name"), rows.getInt("erf_num"),
+                        rows.getDouble("total_fee"), rows.getDouble("total_paid"),
+                        Poised.formatDate(rows.getString("deadline")), rows.getString("finalised").equals("Y"),
+                        rows.getString("deleted").charAt(0)));
+            }
+        }
+
+        return read;
+    }
+
+    /**
+     * The read() method reads a snapshot file by mapping it into memory.
+     * @param file the snapshot file
+     * @return the projects in the file and the time of the database they are up to date with, or null if there is
+     * no file or it cannot be used
+     * @throws IOException if the file could not be read
+     */
+    private static Snapshot read(Path file) throws IOException {
+
+        if(!Files.exists(file)){
+            return null;
+        }
+
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+
+            long size = channel.size();
+            if(size < 28 || size > Integer.MAX_VALUE){
+                return null;
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int end = (int) size - 8;
+
+            CRC32 checksum = new CRC32();
+            checksum.update(buffer.slice(0, end));
+            if(checksum.getValue() != buffer.getLong(end) || buffer.getInt() != FORMAT){
+                return null;
+            }
+
+            Timestamp watermark = new Timestamp(buffer.getLong());
+
+            String[] dictionary = new String[buffer.getInt()];
+            byte[] bytes = new byte[256];
+            for(int i = 0; i < dictionary.length; i++){
+
+                int length = buffer.getInt();
+                if(length > bytes.length){
+                    bytes = new byte[Math.max(length, bytes.length * 2)];
+                }
+                buffer.get(bytes, 0, length);
+                dictionary[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+
+            }
+
+            int count = buffer.getInt();
+            if(buffer.position() + (long) count * ROW_BYTES != end){
+                return null;
+            }
+
+            Map<Integer, Row> rows = new HashMap<>(count * 4 / 3 + 1);
+            for(int i = 0; i < count; i++){
+
+                int projectNumber = buffer.getInt();
+                int name = buffer.getInt();
+                rows.put(projectNumber, new Row(projectNumber, name < 0 ? null : dictionary[name], buffer.getInt(),
+                        buffer.getDouble(), buffer.getDouble(), LocalDate.ofEpochDay(buffer.getInt()),
+                        buffer.get() != 0, (char) buffer.get()));
+
+            }
+
+            return new Snapshot(rows, watermark);
+
+        } catch(BufferUnderflowException | BufferOverflowException | IndexOutOfBoundsException e){
+            // The checksum matched, but the file was not written by this format.
+            return null;
+        }
+    }
+
+    /**
+     * The write() method writes a snapshot file, and replaces the last one with it once it is on disk.
+     * @param file the snapshot file
+     * @param snapshot the projects and the time of the database they are up to date with
+     * @throws IOException if the file could not be written
+     */
+    private static void write(Path file, Snapshot snapshot) throws IOException {
+
+        // Each name is written once however many projects have it, and the projects refer to it by its position.
+        Map<String, Integer> positions = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        for(Row row : snapshot.rows().values()){
+            if(row.projectName() != null && !positions.containsKey(row.projectName())){
+                positions.put(row.projectName(), dictionary.size());
+                dictionary.add(row.projectName());
+            }
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)){
+
+            CRC32 checksum = new CRC32();
+            OutputStream stream = Channels.newOutputStream(channel);
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(stream, checksum), 1 << 16));
+
+            output.writeInt(FORMAT);
+            output.writeLong(snapshot.watermark().getTime());
+
+            output.writeInt(dictionary.size());
+            for(String name : dictionary){
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            }
+
+            output.writeInt(snapshot.rows().size());
+            for(Row row : snapshot.rows().values()){
+
+                output.writeInt(row.projectNumber());
+                output.writeInt(row.projectName() == null ? -1 : positions.get(row.projectName()));
+                output.writeInt(row.erfNumber());
+                output.writeDouble(row.totalFee());
+                output.writeDouble(row.totalPaid());
+                output.writeInt((int) row.deadline().toEpochDay());
+                output.writeByte(row.finalised() ? 1 : 0);
+                output.writeByte(row.deleted());
+
+            }
+
+            output.flush();
+            // The checksum is taken before it is written, so it covers everything in the file before it.
+            new DataOutputStream(stream).writeLong(checksum.getValue());
+            channel.force(true);
+
+        }
+
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    }
+
+    /**
+     * The updateQuietly() method brings the snapshot up to date with the database and writes it again, from the
+     * background thread. If the database cannot be reached, the last snapshot is kept until the next interval.
+     */
+    private static void updateQuietly(){
+
+        try{
+            writeQuietly(load());
+        } catch(SQLException e){
+            // The snapshot is written again at the next interval.
+        }
+    }
+
+    /**
+     * The writeQuietly() method writes the snapshot from the background thread. If the file cannot be written, the
+     * last snapshot is kept, and the changes since it are read from the database when the program next starts.
+     * @param snapshot the projects and the time of the database they are up to date with
+     */
+    private static void writeQuietly(Snapshot snapshot){
+
+        try{
+            write(Database.tenantFile(SNAPSHOT_FILE), snapshot);
+        } catch(IOException e){
+            // The snapshot is written again at the next interval.
+        }
+    }
+}
@@ -0,0 +1,26 @@
+import java.time.LocalDate;
+
+/**
+ * This class holds the few details of a project that are shown when projects are listed. It is read with a narrow
+ * query on project_info and pay_complete, so listing many projects does not load the building details or the people
+ * on each project. The full project is only loaded when the user opens it.
+ * @param projectNumber the number of the project
+ * @param projectName the name of the project
+ * @param erfNumber the ERF number of the building site
+ * @param deadline the deadline of the project
+ * @param totalOwed the amount still owed on the project
+ * @param finalised true if the project has been finalised
+ */
+public record ProjectSummary(int projectNumber, String projectName, int erfNumber, LocalDate deadline,
+                             double totalOwed, boolean finalised) {
+
+    /**
+     * @return The toString() method returns the summary on one line, so that long lists are easy to read.
+     */
+    @Override
+    public String toString(){
+
+        return String.format("%-6d %-30s Deadline: %s  Owed: R%.2f  %s", projectNumber, projectName, deadline,
+                totalOwed, finalised ? "Finalised" : "Incomplete");
+    }
+}
@@ -0,0 +1,274 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * This class measures every database call made by the program. Connections handed out by the Database class are
+ * wrapped so that each statement records its latency, the number of rows it returned or changed, and whether it
+ * failed. The time taken to open each connection is recorded as well.
+ * <p>
+ * Statements slower than the threshold set by the poised.slowQueryMillis setting (200 ms by default), and
+ * statements that fail, are written to {@value #SLOW_QUERY_LOG}. A summary of all the statements is written to
+ * {@value #METRICS_FILE} at the interval set by poised.metricsDumpSeconds (60 seconds by default) and when the
+ * program exits.
+ */
+public class QueryMetrics {
+
+    public static final String SLOW_QUERY_LOG = "poised-slow-queries.log";
+    public static final String METRICS_FILE = "poised-metrics.txt";
+    private static final long DUMP_INTERVAL_SECONDS = Config.getLong("poised.metricsDumpSeconds", 60);
+    // The methods of Statement and PreparedStatement that send a statement to the database.
+    private static final Set<String> EXECUTE_METHODS = Set.of("execute", "executeQuery", "executeUpdate",
+            "executeLargeUpdate", "executeBatch", "executeLargeBatch");
+    // Literals are replaced with ? so that statements built by joining strings are counted together.
+    private static final Pattern STRING_LITERAL = Pattern.compile("'[^']*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(\\.\\d+)?\\b");
+
+    private static final Map<String, StatementStats> STATEMENTS = new ConcurrentHashMap<>();
+    private static final LatencyHistogram CONNECTION_ACQUIRE = new LatencyHistogram();
+    private static final LongAdder CONNECTION_FAILURES = new LongAdder();
+    // Read once rather than on every statement, and read again when the properties file changes.
+    private static volatile long slowQueryMicros = Config.getLong("poised.slowQueryMillis", 200) * 1000;
+
+    static {
+
+        Config.onReload(() -> slowQueryMicros = Config.getLong("poised.slowQueryMillis", 200) * 1000);
+
+        ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "poised-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(QueryMetrics::dump, DUMP_INTERVAL_SECONDS, DUMP_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(QueryMetrics::dump));
+
+    }
+
+    /**
+     * This class holds the measurements of one statement.
+     */
+    static class StatementStats {
+
+        final LatencyHistogram latencyMicros = new LatencyHistogram();
+        final LongAdder rows = new LongAdder();
+        final LongAdder errors = new LongAdder();
+
+    }
+
+    /**
+     * The recordConnection() method records the time taken to open a connection.
+     * @param nanos the time taken in nanoseconds
+     */
+    static void recordConnection(long nanos){
+        CONNECTION_ACQUIRE.record(nanos / 1000);
+    }
+
+    /**
+     * The recordConnectionFailure() method counts a connection that could not be opened and logs the reason.
+     * @param e the exception thrown when opening the connection
+     */
+    static void recordConnectionFailure(SQLException e){
+
+        CONNECTION_FAILURES.increment();
+        log("CONNECT FAILED " + e.getSQLState() + " " + e.getMessage());
+
+    }
+
+    /**
+     * The instrument() method wraps a connection so that the statements created from it are measured.
+     * @param connection the connection to be wrapped
+     * @return the wrapped connection
+     */
+    static Connection instrument(Connection connection){
+
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+
+                    Object result = invoke(connection, method, args);
+
+                    // Prepared statements remember their SQL, and plain statements are given it when executed.
+                    if(result instanceof PreparedStatement prepared && method.getName().startsWith("prepare")){
+                        return wrapStatement(prepared, PreparedStatement.class, (String) args[0]);
+                    }
+                    if(result instanceof Statement statement && method.getName().equals("createStatement")){
+                        return wrapStatement(statement, Statement.class, null);
+                    }
+
+                    return result;
+                });
+    }
+
+    /**
+     * The dump() method writes the measurements of all statements to the metrics file, slowest first.
+     */
+    static void dump(){
+
+        // The statements with the highest 99th percentile are listed first.
+        List<Map.Entry<String, StatementStats>> statements = new ArrayList<>(STATEMENTS.entrySet());
+        statements.sort(Comparator.comparingLong((Map.Entry<String, StatementStats> entry) ->
+                entry.getValue().latencyMicros.getPercentile(99)).reversed());
+
+        try(PrintWriter writer = new PrintWriter(new FileWriter(METRICS_FILE))){
+
+            writer.println("Poised database metrics at " + LocalDateTime.now());
+            writer.println("connections: " + CONNECTION_ACQUIRE.summary("us") + " failures=" +
+                    CONNECTION_FAILURES.sum());
+
+            for(Map.Entry<String, StatementStats> entry : statements){
+
+                StatementStats stats = entry.getValue();
+                writer.println(stats.latencyMicros.summary("us") + " rows=" + stats.rows.sum() + " errors=" +
+                        stats.errors.sum());
+                writer.println("    " + entry.getKey());
+
+            }
+
+        } catch(IOException e){
+            // The metrics are written again at the next interval.
+        }
+    }
+
+    /**
+     * The wrapStatement() method wraps a statement so that each time it is executed, the time taken, the rows and
+     * any failure are recorded against its SQL.
+     * @param statement the statement to be wrapped
+     * @param type the JDBC interface of the statement
+     * @param preparedSql the SQL of a prepared statement, or null for a plain statement
+     * @return the wrapped statement
+     */
+    private static <T extends Statement> T wrapStatement(T statement, Class<T> type, String preparedSql){
+
+        InvocationHandler handler = (proxy, method, args) -> {
+
+            if(!EXECUTE_METHODS.contains(method.getName())){
+                return invoke(statement, method, args);
+            }
+
+            // A batch of plain statements has no single SQL string, so it is counted under one name.
+            String sql = preparedSql != null ? preparedSql : args == null ? "(statement batch)" : (String) args[0];
+            StatementStats stats = STATEMENTS.computeIfAbsent(normalise(sql), key -> new StatementStats());
+
+            long start = System.nanoTime();
+            try{
+
+                Object result = invoke(statement, method, args);
+                long micros = (System.nanoTime() - start) / 1000;
+
+                stats.latencyMicros.record(micros);
+                if(micros >= slowQueryMicros){
+                    log("SLOW " + (micros / 1000) + "ms " + sql);
+                }
+
+                return countRows(result, stats);
+
+            } catch(SQLException e){
+
+                stats.latencyMicros.record((System.nanoTime() - start) / 1000);
+                stats.errors.increment();
+                log("FAILED " + e.getSQLState() + " " + e.getMessage() + " " + sql);
+                throw e;
+
+            }
+        };
+
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    /**
+     * The countRows() method adds the rows changed by an update to a statement's row count. A ResultSet is wrapped
+     * so that its rows are counted as they are read.
+     * @param result what the statement returned
+     * @param stats the measurements of the statement
+     * @return the result, wrapped if it is a ResultSet
+     */
+    private static Object countRows(Object result, StatementStats stats){
+
+        if(result instanceof Integer changed){
+            stats.rows.add(changed);
+        } else if(result instanceof Long changed){
+            stats.rows.add(changed);
+        } else if(result instanceof int[] changed){
+            for(int rows : changed){
+                stats.rows.add(Math.max(rows, 0));
+            }
+        } else if(result instanceof ResultSet resultSet){
+
+            return Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                    (proxy, method, args) -> {
+
+                        Object value = invoke(resultSet, method, args);
+                        if(method.getName().equals("next") && Boolean.TRUE.equals(value)){
+                            stats.rows.increment();
+                        }
+                        return value;
+                    });
+        }
+
+        return result;
+    }
+
+    /**
+     * The invoke() method calls a method on the wrapped JDBC object and throws any exception it threw.
+     * @param target the wrapped object
+     * @param method the method being called
+     * @param args the arguments of the call
+     * @return what the method returned
+     * @throws Throwable the exception thrown by the method
+     */
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+
+        try{
+            return method.invoke(target, args);
+        } catch(InvocationTargetException e){
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * The normalise() method replaces the literals in a statement with ?.
+     * @param sql the statement
+     * @return the statement without literals
+     */
+    private static String normalise(String sql){
+
+        String withoutStrings = STRING_LITERAL.matcher(sql).replaceAll("?");
+
+        return NUMBER_LITERAL.matcher(withoutStrings).replaceAll("?");
+    }
+
+    /**
+     * The log() method adds a line to the slow query log.
+     * @param message the line to be added
+     */
+    private static synchronized void log(String message){
+
+        try(PrintWriter writer = new PrintWriter(new FileWriter(SLOW_QUERY_LOG, true))){
+            writer.println(LocalDateTime.now() + " " + message);
+        } catch(IOException e){
+            // The slow query log is only for diagnosis, so a failure to write it is ignored.
+        }
+    }
+}
@@ -0,0 +1,141 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class sends the statements that only read, such as the project lists and searches, to replicas of the
+ * database, so that reporting does not slow down the changes being made on the primary. The replicas are listed,
+ * separated by commas, in the poised.replicaUrls setting, and use the same credentials and schemas as the primary.
+ * With no replicas listed, every read goes to the primary.
+ * <p>
+ * The reads are spread over the replicas in turn. A replica that cannot be reached is left out for
+ * poised.replicaRetryMillis milliseconds (30000 by default), and every replica is checked in the background every
+ * poised.replicaCheckSeconds seconds (10 by default, read when the first read is made), so a replica that has
+ * stopped is noticed before a read is sent to it and one that has recovered is used again. If no replica can be used,
+ * the read goes to the primary.
+ * <p>
+ * A replica may not have received the latest changes yet, so for poised.replicaStickyMillis milliseconds (5000 by
+ * default) after this program commits a change for a tenant, whether by commit() or by a statement run in autocommit
+ * mode, that tenant's reads go to the primary, and the user always sees their own changes.
+ */
+public class ReadReplicas {
+
+    // The time until which each replica that could not be reached is left out, keyed on its URL.
+    private static final Map<String, Long> DOWN_UNTIL = new ConcurrentHashMap<>();
+    // The time of the last change committed for each tenant.
+    private static final Map<String, Long> LAST_WRITE = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT = new AtomicInteger();
+    private static final AtomicBoolean CHECKING = new AtomicBoolean();
+
+    /**
+     * The getConnection() method returns a connection to the next replica that can be used, or to the primary if
+     * there is none or the current tenant has just made a change.
+     * @return a connection, which the caller must close
+     * @throws SQLException if no database could be reached
+     */
+    static Connection getConnection() throws SQLException {
+
+        List<String> replicas = replicaUrls();
+        if(replicas.isEmpty()){
+            return Database.getConnection();
+        }
+        startChecking();
+
+        long now = System.currentTimeMillis();
+        Long lastWrite = LAST_WRITE.get(Database.getTenant());
+        if(lastWrite != null && now - lastWrite < Config.getLong("poised.replicaStickyMillis", 5000)){
+            return Database.getConnection();
+        }
+
+        int first = Math.floorMod(NEXT.getAndIncrement(), replicas.size());
+        for(int i = 0; i < replicas.size(); i++){
+
+            String replica = replicas.get((first + i) % replicas.size());
+            if(DOWN_UNTIL.getOrDefault(replica, 0L) > now){
+                continue;
+            }
+
+            try{
+                return Database.getConnection(replica);
+            } catch(SQLException e){
+                markDown(replica);
+            }
+        }
+
+        return Database.getConnection();
+    }
+
+    /**
+     * The recordWrite() method records that a change has been committed to the primary for a tenant.
+     * @param tenant the tenant's ID
+     */
+    static void recordWrite(String tenant){
+        LAST_WRITE.put(tenant, System.currentTimeMillis());
+    }
+
+    /**
+     * The replicaUrls() method reads the list of replicas from the settings.
+     * @return the URLs of the replicas, which is empty if none are set up
+     */
+    private static List<String> replicaUrls(){
+
+        String urls = Config.getString("poised.replicaUrls", "");
+        return urls.isEmpty() ? List.of() : List.of(urls.split("\\s*,\\s*"));
+    }
+
+    /**
+     * The markDown() method leaves a replica out until the retry time has passed.
+     * @param replica the URL of the replica
+     */
+    private static void markDown(String replica){
+        DOWN_UNTIL.put(replica, System.currentTimeMillis() + Config.getLong("poised.replicaRetryMillis", 30000));
+    }
+
+    /**
+     * The startChecking() method starts checking the replicas in the background, the first time it is called.
+     */
+    private static void startChecking(){
+
+        if(!CHECKING.compareAndSet(false, true)){
+            return;
+        }
+
+        long interval = Config.getLong("poised.replicaCheckSeconds", 10);
+        ScheduledExecutorService checker = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "poised-replica-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(ReadReplicas::checkReplicas, interval, interval, TimeUnit.SECONDS);
+
+    }
+
+    /**
+     * The checkReplicas() method connects to each replica, and marks it as usable if it answers or leaves it out if
+     * it does not.
+     */
+    private static void checkReplicas(){
+
+        for(String replica : replicaUrls()){
+
+            try(Connection connection = Database.getConnection(replica)){
+
+                if(connection.isValid(2)){
+                    DOWN_UNTIL.remove(replica);
+                } else {
+                    markDown(replica);
+                }
+
+            } catch(SQLException e){
+                markDown(replica);
+            }
+        }
+    }
+}
@@ -0,0 +1,473 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class keeps running totals of the fees, payments and amounts owed on all projects, split into incomplete
+ * projects that are on time, incomplete projects that are overdue, and finalised projects, so the totals can be shown
+ * straight away however many projects there are.
+ * <p>
+ * The totals are loaded from the ProjectSnapshot when the program starts, and then kept up to date from the events on
+ * the ProjectEventBus. Each event only moves one project's amounts from one set of totals to another. Changes made by
+ * other copies of the program are picked up when the totals are reloaded from the database, at the interval set by the
+ * poised.receivablesReconcileSeconds setting (600 seconds by default).
+ * <p>
+ * The events that arrive while the amounts are being loaded are recorded, and applied again once the loaded amounts
+ * have replaced the old ones, as the load may have read the projects before the changes were made. A payment cannot
+ * safely be added twice, so the projects paid during the load are read again instead, until no more payments arrive.
+ */
+public class ReceivablesSummary {
+
+    private static final long RECONCILE_INTERVAL_SECONDS = Config.getLong("poised.receivablesReconcileSeconds", 600);
+    private static final String SELECT_BALANCES = "SELECT pay_complete.proj_num, total_fee, total_paid, deadline, " +
+            "finalised FROM pay_complete INNER JOIN project_info ON project_info.proj_num = pay_complete.proj_num " +
+            "WHERE project_info.deleted = 'N' AND pay_complete.proj_num BETWEEN ? AND ?";
+    // The times the projects paid during a load are read again before their payments are simply added.
+    private static final int MAX_REREADS = 3;
+
+    /**
+     * The groups the projects are totalled in.
+     */
+    enum Status { INCOMPLETE, OVERDUE, FINALISED }
+
+    /**
+     * This class holds the amounts of one project that the totals are made from.
+     */
+    private static class Balance {
+
+        double totalFee;
+        double totalPaid;
+        LocalDate deadline;
+        boolean finalised;
+
+        Balance(double totalFee, double totalPaid, LocalDate deadline, boolean finalised){
+
+            this.totalFee = totalFee;
+            this.totalPaid = totalPaid;
+            this.deadline = deadline;
+            this.finalised = finalised;
+
+        }
+    }
+
+    /**
+     * This class holds the totals of one group of projects.
+     */
+    static class Totals {
+
+        int count;
+        double totalFee;
+        double totalPaid;
+
+        /**
+         * Gets the total amount owed
+         * @return the total fee less the total paid
+         */
+        double getTotalOwed(){
+            return totalFee - totalPaid;
+        }
+    }
+
+    private final Map<Integer, Balance> balances = new HashMap<>();
+    private final Map<Status, Totals> totals = new EnumMap<>(Status.class);
+    // The day the overdue projects were last worked out for.
+    private LocalDate today;
+    // The events that arrived while the amounts are being loaded, or null when they are not being loaded.
+    private List<ProjectEvent> recorded;
+
+    /**
+     * The constructor creates empty totals.
+     */
+    private ReceivablesSummary(){
+
+        for(Status status : Status.values()){
+            totals.put(status, new Totals());
+        }
+    }
+
+    /**
+     * The start() method loads the totals from the ProjectSnapshot, subscribes to the project events and starts
+     * reloading the totals from the database in the background.
+     * @return the summary
+     * @throws SQLException if the totals could not be loaded
+     */
+    public static ReceivablesSummary start() throws SQLException {
+
+        // The events are subscribed to first, as projects can be changed while the totals are loading.
+        ReceivablesSummary summary = new ReceivablesSummary();
+        ProjectEventBus.subscribe(summary::apply);
+        summary.startRecording();
+
+        try{
+
+            Map<Integer, Balance> loaded = new HashMap<>();
+            for(ProjectSnapshot.Row row : ProjectSnapshot.rows()){
+                if(row.isCurrent()){
+                    loaded.put(row.projectNumber(), new Balance(row.totalFee(), row.totalPaid(), row.deadline(),
+                            row.finalised()));
+                }
+            }
+            summary.replaceBalances(loaded);
+
+        } finally{
+            summary.stopRecording();
+        }
+
+        ScheduledExecutorService reconciler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "poised-receivables");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reconciler.scheduleWithFixedDelay(summary::reconcileQuietly, RECONCILE_INTERVAL_SECONDS,
+                RECONCILE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+        return summary;
+    }
+
+    /**
+     * The reconcile() method reloads every project's amounts from the database and works out the totals again.
+     * @throws SQLException if the database could not be read
+     */
+    public void reconcile() throws SQLException {
+
+        startRecording();
+
+        try{
+
+            Map<Integer, Balance> loaded = new HashMap<>();
+            ParallelScan.scan("pay_complete", "proj_num", ReceivablesSummary::load).forEach(loaded::putAll);
+            replaceBalances(loaded);
+
+        } finally{
+            stopRecording();
+        }
+    }
+
+    /**
+     * The startRecording() method starts recording the events that arrive while the amounts are being loaded.
+     */
+    private synchronized void startRecording(){
+        recorded = new ArrayList<>();
+    }
+
+    /**
+     * The stopRecording() method stops recording events once the loaded amounts are in use.
+     */
+    private synchronized void stopRecording(){
+        recorded = null;
+    }
+
+    /**
+     * The replaceBalances() method puts the loaded amounts in place of the old ones and applies the events recorded
+     * while they were loaded. The projects paid in the meantime are read again from the database, as their payments
+     * may or may not be in the loaded amounts.
+     * @param loaded the loaded amounts of each project, keyed on its project number
+     * @throws SQLException if the database could not be read
+     */
+    private void replaceBalances(Map<Integer, Balance> loaded) throws SQLException {
+
+        Set<Integer> paid;
+
+        synchronized(this){
+
+            balances.clear();
+            balances.putAll(loaded);
+            recount(LocalDate.now());
+            paid = applyRecorded(false);
+
+        }
+
+        for(int reread = 0; !paid.isEmpty(); reread++){
+
+            // Payments that keep arriving are added as they are, and any counted twice are put right by the next
+            // reload.
+            if(reread == MAX_REREADS){
+
+                synchronized(this){
+                    applyRecorded(true);
+                }
+                return;
+
+            }
+
+            Map<Integer, Balance> latest;
+            try(Connection connection = Database.getConnection()){
+                latest = loadProjects(connection, paid);
+            }
+
+            synchronized(this){
+
+                for(int projectNumber : paid){
+
+                    Balance old = balances.remove(projectNumber);
+                    if(old != null){
+                        add(old, -1);
+                    }
+
+                    // A project that was deleted in the meantime is not read again.
+                    Balance balance = latest.get(projectNumber);
+                    if(balance != null){
+                        balances.put(projectNumber, balance);
+                        add(balance, 1);
+                    }
+                }
+
+                paid = applyRecorded(false);
+
+            }
+        }
+    }
+
+    /**
+     * The applyRecorded() method applies the events recorded since it was last called, and clears them.
+     * @param includePayments true if payments are added to the amounts, or false if they are left out
+     * @return the numbers of the projects whose payments were left out
+     */
+    private Set<Integer> applyRecorded(boolean includePayments){
+
+        Set<Integer> paid = new LinkedHashSet<>();
+
+        for(ProjectEvent event : recorded){
+            if(event instanceof ProjectEvent.PaymentRecorded && !includePayments){
+                paid.add(event.projectNumber());
+            } else {
+                applyEvent(event);
+            }
+        }
+        recorded.clear();
+
+        return paid;
+    }
+
+    /**
+     * The loadProjects() method loads the amounts of the given projects.
+     * @param connection an open connection to the database
+     * @param projectNumbers the numbers of the projects
+     * @return the amounts of each project that is still in use, keyed on its project number
+     * @throws SQLException if the database could not be read
+     */
+    private static Map<Integer, Balance> loadProjects(Connection connection, Set<Integer> projectNumbers)
+            throws SQLException {
+
+        Map<Integer, Balance> loaded = new HashMap<>();
+
+        try(PreparedStatement statement = connection.prepareStatement(SELECT_BALANCES.replace("BETWEEN ? AND ?",
+                "IN " + ProjectRepository.placeholders(projectNumbers.size())))){
+
+            int index = 1;
+            for(int projectNumber : projectNumbers){
+                statement.setInt(index++, projectNumber);
+            }
+
+            try(ResultSet rows = statement.executeQuery()){
+                while(rows.next()){
+                    loaded.put(rows.getInt("proj_num"), readBalance(rows));
+                }
+            }
+        }
+
+        return loaded;
+    }
+
+    /**
+     * The load() method loads the amounts of one range of projects.
+     * @param connection an open connection to the database
+     * @param low the lowest project number in the range
+     * @param high the highest project number in the range
+     * @return the amounts of each project, keyed on its project number
+     * @throws SQLException if the database could not be read
+     */
+    private static Map<Integer, Balance> load(Connection connection, long low, long high) throws SQLException {
+
+        Map<Integer, Balance> loaded = new HashMap<>();
+
+        try(PreparedStatement statement = connection.prepareStatement(SELECT_BALANCES)){
+
+            statement.setLong(1, low);
+            statement.setLong(2, high);
+
+            try(ResultSet rows = statement.executeQuery()){
+                while(rows.next()){
+                    loaded.put(rows.getInt("proj_num"), readBalance(rows));
+                }
+            }
+        }
+
+        return loaded;
+    }
+
+    /**
+     * The readBalance() method reads the amounts of a project from the current row of a ResultSet.
+     * @param rows the rows selected with SELECT_BALANCES
+     * @return the project's amounts
+     * @throws SQLException if the row could not be read
+     */
+    private static Balance readBalance(ResultSet rows) throws SQLException {
+
+        return new Balance(rows.getDouble("total_fee"), rows.getDouble("total_paid"),
+                Poised.formatDate(rows.getString("deadline")), rows.getString("finalised").equals("Y"));
+    }
+
+    /**
+     * The reconcileQuietly() method reloads the totals from the background thread. If the database cannot be
+     * reached, the totals are kept up to date from the events until the next reload.
+     */
+    private void reconcileQuietly(){
+
+        try{
+            reconcile();
+        } catch(SQLException e){
+            // The totals are reloaded at the next interval.
+        }
+    }
+
+    /**
+     * The recount() method works out every total from the amounts of each project.
+     * @param day the day the overdue projects are worked out for
+     */
+    private void recount(LocalDate day){
+
+        today = day;
+        for(Status status : Status.values()){
+            totals.put(status, new Totals());
+        }
+        for(Balance balance : balances.values()){
+            add(balance, 1);
+        }
+    }
+
+    /**
+     * The apply() method updates the totals from a batch of events, and records them if the amounts are being loaded.
+     * @param events the events, in the order they were published
+     */
+    private synchronized void apply(List<ProjectEvent> events){
+
+        if(recorded != null){
+            recorded.addAll(events);
+        }
+        events.forEach(this::applyEvent);
+
+    }
+
+    /**
+     * The applyEvent() method updates the totals from one event.
+     * @param event the event
+     */
+    private void applyEvent(ProjectEvent event){
+
+        int projectNumber = event.projectNumber();
+
+        if(event instanceof ProjectEvent.Created created){
+
+            // The project may already have been loaded from the database by a reload.
+            Balance balance = new Balance(created.totalFee(), 0, created.deadline(), false);
+            Balance loaded = balances.put(projectNumber, balance);
+            if(loaded != null){
+                add(loaded, -1);
+            }
+            add(balance, 1);
+            return;
+
+        }
+
+        // A project that is not in the totals yet is added at the next reload.
+        boolean removed = event instanceof ProjectEvent.Deleted || event instanceof ProjectEvent.Archived;
+        Balance balance = removed ? balances.remove(projectNumber) : balances.get(projectNumber);
+        if(balance == null){
+            return;
+        }
+
+        // The project's amounts are taken out of the totals, changed, and added back in.
+        add(balance, -1);
+
+        if(removed){
+            return;
+        } else if(event instanceof ProjectEvent.PaymentRecorded payment){
+            balance.totalPaid += payment.amount();
+        } else if(event instanceof ProjectEvent.FeeChanged fee){
+            balance.totalFee = fee.totalFee();
+        } else if(event instanceof ProjectEvent.DeadlineChanged deadline){
+            balance.deadline = deadline.deadline();
+        } else if(event instanceof ProjectEvent.Finalised){
+            balance.finalised = true;
+        }
+
+        add(balance, 1);
+    }
+
+    /**
+     * The add() method adds a project's amounts to, or takes them from, the totals of its group.
+     * @param balance the project's amounts
+     * @param sign 1 to add the amounts, or -1 to take them away
+     */
+    private void add(Balance balance, int sign){
+
+        Totals group = totals.get(statusOf(balance));
+        group.count += sign;
+        group.totalFee += sign * balance.totalFee;
+        group.totalPaid += sign * balance.totalPaid;
+
+    }
+
+    /**
+     * The statusOf() method finds the group a project is totalled in.
+     * @param balance the project's amounts
+     * @return the group
+     */
+    private Status statusOf(Balance balance){
+
+        if(balance.finalised){
+            return Status.FINALISED;
+        }
+        return balance.deadline.isBefore(today) ? Status.OVERDUE : Status.INCOMPLETE;
+    }
+
+    /**
+     * The print() method prints the totals of each group, and of all the projects that are not finalised.
+     */
+    public synchronized void print(){
+
+        // Projects become overdue as the days pass, so the groups are worked out again on a new day.
+        if(!LocalDate.now().equals(today)){
+            recount(LocalDate.now());
+        }
+
+        Totals outstanding = new Totals();
+        for(Status status : List.of(Status.INCOMPLETE, Status.OVERDUE)){
+            outstanding.count += totals.get(status).count;
+            outstanding.totalFee += totals.get(status).totalFee;
+            outstanding.totalPaid += totals.get(status).totalPaid;
+        }
+
+        System.out.printf("%-22s %8s %16s %16s %16s%n", "", "Projects", "Total Fee", "Total Paid", "Total Owed");
+        printRow("On time", totals.get(Status.INCOMPLETE));
+        printRow("Overdue", totals.get(Status.OVERDUE));
+        printRow("All incomplete", outstanding);
+        printRow("Finalised", totals.get(Status.FINALISED));
+
+    }
+
+    /**
+     * The printRow() method prints the totals of one group.
+     * @param label the name of the group
+     * @param group the totals
+     */
+    private static void printRow(String label, Totals group){
+
+        System.out.printf("%-22s %8d %16s %16s %16s%n", label, group.count,
+                "R" + String.format("%.2f", group.totalFee), "R" + String.format("%.2f", group.totalPaid),
+                "R" + String.format("%.2f", group.getTotalOwed()));
+    }
+}
@@ -0,0 +1,236 @@
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * This class brings an existing PoisedPMS database up to date with the columns and tables that newer versions of the
+ * program rely on. Every update checks whether it has already been made, so it is safe to run each time the program
+ * starts.
+ */
+public class SchemaUpdates {
+
+    private static final String CHANGED_AT = "TIMESTAMP(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6) " +
+            "ON UPDATE CURRENT_TIMESTAMP(6)";
+
+    /**
+     * The apply() method makes any updates that are missing from the schema of every tenant in turn.
+     * @throws SQLException if a tenant's database could not be reached or an update failed
+     */
+    public static void apply() throws SQLException {
+        Database.forEachTenant(tenant -> applyTenant());
+    }
+
+    /**
+     * The applyTenant() method connects to the current tenant's database and makes any updates that are missing.
+     * @throws SQLException if the database could not be reached or an update failed
+     */
+    private static void applyTenant() throws SQLException {
+
+        try(Connection connection = Database.getConnection()){
+
+            // Each project's pay_complete row carries a version that is increased on every change, so that an
+            // update based on an out-of-date copy of the project can be detected and rejected.
+            addColumnIfMissing(connection, "pay_complete", "row_version", "INT NOT NULL DEFAULT 0");
+            // The sequence number of the last write-behind edit written to the project, so that replayed edits
+            // are not applied twice.
+            addColumnIfMissing(connection, "pay_complete", "write_seq", "BIGINT NOT NULL DEFAULT 0");
+
+            // A deleted project is only marked as deleted, and removed later by ProjectPurge. The index lets the
+            // purge find deleted projects without reading every project.
+            addColumnIfMissing(connection, "project_info", "deleted", "CHAR(1) NOT NULL DEFAULT 'N'");
+            addIndexIfMissing(connection, "project_info", "project_deleted", "deleted");
+            // The check that a new project's name is not already used looks the name up in this index. Once no two
+            // projects share a name, the index is made unique, so that a name added by another copy of the program
+            // since ProjectKeyFilter was built is still rejected, and the plain index it replaces is dropped.
+            if(!indexExists(connection, "project_info", ProjectRepository.UNIQUE_NAME_INDEX) &&
+                    !hasRows(connection, ProjectRepository.FIND_DUPLICATE_NAMES)){
+
+                try(Statement statement = connection.createStatement()){
+                    statement.executeUpdate(ProjectRepository.ADD_UNIQUE_NAME_INDEX);
+                }
+            }
+            if(indexExists(connection, "project_info", ProjectRepository.UNIQUE_NAME_INDEX)){
+                dropIndexIfPresent(connection, "project_info", "project_name");
+            } else {
+                addIndexIfMissing(connection, "project_info", "project_name", "proj_name");
+            }
+
+            // The time each project was last changed, so that ProjectSnapshot only reads the projects changed since
+            // its file was written. A payment changes the project's pay_complete row through the payment trigger.
+            addColumnIfMissing(connection, "project_info", "changed_at", CHANGED_AT);
+            addIndexIfMissing(connection, "project_info", "project_changed", "changed_at");
+            addColumnIfMissing(connection, "pay_complete", "changed_at", CHANGED_AT);
+            addIndexIfMissing(connection, "pay_complete", "pay_changed", "changed_at");
+
+            // Payments are recorded one row each in the payment ledger, which keeps the balances in pay_complete up
+            // to date through a trigger. The opening balances are copied before the trigger is created so that they
+            // are not added to the balances a second time.
+            if(!tableExists(connection, "payment")){
+
+                try(Statement statement = connection.createStatement()){
+
+                    statement.executeUpdate(PaymentLedger.CREATE_TABLE);
+                    statement.executeUpdate(PaymentLedger.COPY_OPENING_BALANCES);
+                    statement.executeUpdate(PaymentLedger.CREATE_TRIGGER);
+
+                }
+            }
+
+            // The people on each project are listed in project_member, which starts with the people named in
+            // project_info. The trigger adds the same people for every project inserted afterwards.
+            if(!tableExists(connection, "project_member")){
+
+                try(Statement statement = connection.createStatement()){
+
+                    statement.executeUpdate(PersonRepository.CREATE_MEMBER_TABLE);
+                    statement.executeUpdate(PersonRepository.COPY_MEMBERS);
+                    statement.executeUpdate(PersonRepository.CREATE_MEMBER_TRIGGER);
+
+                }
+            }
+
+            // Archived projects are kept in the database, so that every copy of the program can find them.
+            if(!tableExists(connection, "project_archive")){
+
+                try(Statement statement = connection.createStatement()){
+                    statement.executeUpdate(ProjectArchive.CREATE_TABLE);
+                }
+            }
+
+            // Project numbers are given out by a counter, so that the numbers of purged projects are not used again.
+            if(!tableExists(connection, "project_counter")){
+
+                try(Statement statement = connection.createStatement()){
+
+                    statement.executeUpdate(ProjectRepository.CREATE_COUNTER_TABLE);
+                    statement.executeUpdate(ProjectRepository.SEED_COUNTER);
+
+                }
+            }
+
+            // The real numbers given to projects added while offline are kept so that a journal is replayed once.
+            if(!tableExists(connection, "offline_project")){
+
+                try(Statement statement = connection.createStatement()){
+                    statement.executeUpdate(OfflineJournal.CREATE_NUMBER_TABLE);
+                }
+            }
+
+        }
+    }
+
+    /**
+     * The tableExists() method checks whether the database has a table with the given name.
+     * @param connection an open connection to the database
+     * @param table the name of the table
+     * @return true if the table exists
+     * @throws SQLException if the database could not be read
+     */
+    static boolean tableExists(Connection connection, String table) throws SQLException {
+
+        try(ResultSet tables = connection.getMetaData().getTables(connection.getCatalog(), null, table, null)){
+            return tables.next();
+        }
+    }
+
+    /**
+     * The hasRows() method checks whether a query that selects a single true or false value returns true.
+     * @param connection an open connection to the database
+     * @param sql the query
+     * @return the value selected
+     * @throws SQLException if the database could not be read
+     */
+    private static boolean hasRows(Connection connection, String sql) throws SQLException {
+
+        try(Statement statement = connection.createStatement();
+            ResultSet result = statement.executeQuery(sql)){
+            return result.next() && result.getBoolean(1);
+        }
+    }
+
+    /**
+     * The indexExists() method checks whether a table has an index with the given name.
+     * @param connection an open connection to the database
+     * @param table the name of the table
+     * @param index the name of the index
+     * @return true if the index exists
+     * @throws SQLException if the database could not be read
+     */
+    static boolean indexExists(Connection connection, String table, String index) throws SQLException {
+
+        try(ResultSet indexes = connection.getMetaData().getIndexInfo(connection.getCatalog(), null, table, false,
+                false)){
+            while(indexes.next()){
+                if(index.equalsIgnoreCase(indexes.getString("INDEX_NAME"))){
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * The addIndexIfMissing() method adds an index to a table unless the table already has an index with that name.
+     * @param connection an open connection to the database
+     * @param table the table the index is added to
+     * @param index the name of the index
+     * @param columns the columns of the index, separated by commas
+     * @throws SQLException if the index could not be added
+     */
+    static void addIndexIfMissing(Connection connection, String table, String index, String columns)
+            throws SQLException {
+
+        if(indexExists(connection, table, index)){
+            return;
+        }
+
+        try(Statement statement = connection.createStatement()){
+            statement.executeUpdate("CREATE INDEX " + index + " ON " + table + " (" + columns + ")");
+        }
+    }
+
+    /**
+     * The dropIndexIfPresent() method removes an index from a table if the table has an index with that name.
+     * @param connection an open connection to the database
+     * @param table the table the index is removed from
+     * @param index the name of the index
+     * @throws SQLException if the index could not be removed
+     */
+    static void dropIndexIfPresent(Connection connection, String table, String index) throws SQLException {
+
+        if(!indexExists(connection, table, index)){
+            return;
+        }
+
+        try(Statement statement = connection.createStatement()){
+            statement.executeUpdate("DROP INDEX " + index + " ON " + table);
+        }
+    }
+
+    /**
+     * The addColumnIfMissing() method adds a column to a table unless the table already has it.
+     * @param connection an open connection to the database
+     * @param table the table the column is added to
+     * @param column the name of the column
+     * @param definition the type and constraints of the column
+     * @throws SQLException if the column could not be added
+     */
+    static void addColumnIfMissing(Connection connection, String table, String column, String definition)
+            throws SQLException {
+
+        DatabaseMetaData metaData = connection.getMetaData();
+
+        try(ResultSet columns = metaData.getColumns(connection.getCatalog(), null, table, column)){
+            if(columns.next()){
+                return;
+            }
+        }
+
+        try(Statement statement = connection.createStatement()){
+            statement.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
+    }
+}
@@ -0,0 +1,375 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class describes a change to the database as a list of SQL statements and their parameters, which are run
+ * together in one transaction. Because the change is described rather than run straight away, it can be written to
+ * the offline journal and run later when the database can be reached again.
+ * <p>
+ * The ProjectEvents describing the change are carried with it, and published once the transaction has been
+ * committed, whether that is straight away or when the change is sent from the offline journal.
+ */
+public class SqlOperation {
+
+    // The tags used to store the type of each parameter in the journal.
+    private static final byte NULL_TAG = 0;
+    private static final byte INT_TAG = 1;
+    private static final byte DOUBLE_TAG = 2;
+    private static final byte STRING_TAG = 3;
+    private static final byte BYTES_TAG = 4;
+
+    private final String description;
+    // The number of the project this operation adds, or 0 if it does not add one. A number below zero is a
+    // provisional number given to a project added while the database could not be reached.
+    private int createdProject;
+    private final List<String> statements = new ArrayList<>();
+    private final List<Object[]> parameters = new ArrayList<>();
+    // Statements marked here must change exactly one row, otherwise the operation is rolled back.
+    private final List<Boolean> expectsOneRow = new ArrayList<>();
+    private final List<ProjectEvent> events = new ArrayList<>();
+
+    /**
+     * The constructor for the SqlOperation class sets a description used when telling the user about the change.
+     * @param description a short description of the change, e.g. 'finalise project 12'
+     */
+    SqlOperation(String description){
+        this.description = description;
+    }
+
+    /**
+     * The add() method adds a statement to the operation. Parameters may be Integers, Doubles, Strings, byte arrays,
+     * or null.
+     * @param sql the SQL statement with ? placeholders
+     * @param statementParameters the values of the placeholders in order
+     * @return this operation, so that statements can be chained
+     */
+    public SqlOperation add(String sql, Object... statementParameters){
+        return add(sql, false, statementParameters);
+    }
+
+    /**
+     * The addCompareAndSet() method adds a statement that must change exactly one row, such as an UPDATE whose WHERE
+     * clause checks the row version the user last saw. If it changes no rows, the row was changed by someone else
+     * and the whole operation is rolled back with a ConcurrentUpdateException.
+     * @param sql the SQL statement with ? placeholders
+     * @param statementParameters the values of the placeholders in order
+     * @return this operation, so that statements can be chained
+     */
+    public SqlOperation addCompareAndSet(String sql, Object... statementParameters){
+        return add(sql, true, statementParameters);
+    }
+
+    /**
+     * This add() method adds a statement and records whether it must change exactly one row.
+     * @param sql the SQL statement with ? placeholders
+     * @param oneRow true if the statement must change exactly one row
+     * @param statementParameters the values of the placeholders in order
+     * @return this operation, so that statements can be chained
+     */
+    private SqlOperation add(String sql, boolean oneRow, Object[] statementParameters){
+
+        for(Object parameter : statementParameters){
+            if(parameter != null && !(parameter instanceof Integer) && !(parameter instanceof Double)
+                    && !(parameter instanceof String) && !(parameter instanceof byte[])){
+                throw new IllegalArgumentException("Unsupported parameter type: " + parameter.getClass());
+            }
+        }
+
+        statements.add(sql);
+        parameters.add(statementParameters.clone());
+        expectsOneRow.add(oneRow);
+
+        return this;
+    }
+
+    /**
+     * The creates() method records that this operation adds a project, so that a project added while the database
+     * could not be reached can be given its real number when it is sent to the database.
+     * @param projectNumber the number of the project, which is provisional if it is below zero
+     * @return this operation, so that statements can be chained
+     */
+    public SqlOperation creates(int projectNumber){
+
+        createdProject = projectNumber;
+        return this;
+    }
+
+    /**
+     * The publishes() method adds an event to be published once the operation has been committed.
+     * @param event the event describing the change
+     * @return this operation, so that statements can be chained
+     */
+    public SqlOperation publishes(ProjectEvent event){
+
+        events.add(event);
+        return this;
+    }
+
+    public String getDescription(){
+        return description;
+    }
+
+    /**
+     * Gets the number of the project this operation adds
+     * @return the project number, which is provisional if it is below zero, or 0 if the operation adds no project
+     */
+    public int getCreatedProject(){
+        return createdProject;
+    }
+
+    /**
+     * The provisionalNumbers() method finds the provisional project numbers the operation refers to. Project numbers
+     * are the only whole-number parameters that can be below zero.
+     * @return the provisional numbers, in the order they are first used
+     */
+    public Set<Integer> provisionalNumbers(){
+
+        Set<Integer> numbers = new LinkedHashSet<>();
+        for(Object[] statementParameters : parameters){
+            for(Object parameter : statementParameters){
+                if(parameter instanceof Integer number && number < 0){
+                    numbers.add(number);
+                }
+            }
+        }
+
+        return numbers;
+    }
+
+    /**
+     * The renumber() method makes a copy of the operation with a provisional project number replaced by the real one.
+     * @param provisional the provisional project number
+     * @param actual the number the project has in the database
+     * @return the copy
+     */
+    public SqlOperation renumber(int provisional, int actual){
+
+        SqlOperation copy = new SqlOperation(description.replaceAll("project " + provisional + "\\b",
+                "project " + actual));
+        copy.createdProject = createdProject == provisional ? actual : createdProject;
+
+        for(int i = 0; i < statements.size(); i++){
+
+            Object[] statementParameters = parameters.get(i).clone();
+            for(int j = 0; j < statementParameters.length; j++){
+                if(statementParameters[j] instanceof Integer number && number == provisional){
+                    statementParameters[j] = actual;
+                }
+            }
+            copy.add(statements.get(i), expectsOneRow.get(i), statementParameters);
+
+        }
+
+        for(ProjectEvent event : events){
+            copy.events.add(event.projectNumber() == provisional ? ProjectEvent.withProjectNumber(event, actual) :
+                    event);
+        }
+
+        return copy;
+    }
+
+    /**
+     * The execute() method runs all the statements of the operation in one transaction on the given connection.
+     * If any statement fails, the transaction is rolled back. Once it has been committed, the operation's events are
+     * published.
+     * @param connection an open connection to the database
+     * @throws ConcurrentUpdateException if a compare-and-set statement found the row had been changed
+     * @throws SQLException if any of the statements fail
+     */
+    public void execute(Connection connection) throws SQLException {
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+
+        try{
+
+            executeStatements(connection);
+            connection.commit();
+
+        } catch(SQLException e){
+
+            connection.rollback();
+            throw e;
+
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        events.forEach(ProjectEventBus::publish);
+    }
+
+    /**
+     * The executeStatements() method runs all the statements of the operation in the caller's transaction, so that
+     * several operations can be committed together.
+     * @param connection an open connection to the database with auto-commit turned off
+     * @throws ConcurrentUpdateException if a compare-and-set statement found the row had been changed
+     * @throws SQLException if any of the statements fail
+     */
+    void executeStatements(Connection connection) throws SQLException {
+
+        for(int i = 0; i < statements.size(); i++){
+
+            try(PreparedStatement statement = connection.prepareStatement(statements.get(i))){
+
+                Object[] statementParameters = parameters.get(i);
+                for(int j = 0; j < statementParameters.length; j++){
+                    setParameter(statement, j + 1, statementParameters[j]);
+                }
+
+                int rowsChanged = statement.executeUpdate();
+
+                if(expectsOneRow.get(i) && rowsChanged != 1){
+                    throw new ConcurrentUpdateException(description);
+                }
+
+            }
+        }
+    }
+
+    /**
+     * The writeTo() method writes the operation in a compact binary form so that it can be stored in the journal.
+     * @param output where the operation is written
+     * @throws IOException if the operation could not be written
+     */
+    public void writeTo(DataOutput output) throws IOException {
+
+        output.writeUTF(description);
+        output.writeInt(createdProject);
+        output.writeShort(statements.size());
+
+        for(int i = 0; i < statements.size(); i++){
+
+            output.writeUTF(statements.get(i));
+            output.writeBoolean(expectsOneRow.get(i));
+
+            Object[] statementParameters = parameters.get(i);
+            output.writeShort(statementParameters.length);
+
+            for(Object parameter : statementParameters){
+
+                if(parameter == null){
+                    output.writeByte(NULL_TAG);
+                } else if(parameter instanceof Integer intValue){
+                    output.writeByte(INT_TAG);
+                    output.writeInt(intValue);
+                } else if(parameter instanceof Double doubleValue){
+                    output.writeByte(DOUBLE_TAG);
+                    output.writeDouble(doubleValue);
+                } else if(parameter instanceof byte[] bytes){
+                    output.writeByte(BYTES_TAG);
+                    output.writeInt(bytes.length);
+                    output.write(bytes);
+                } else {
+                    output.writeByte(STRING_TAG);
+                    output.writeUTF((String) parameter);
+                }
+            }
+        }
+
+        output.writeShort(events.size());
+        for(ProjectEvent event : events){
+            ProjectEvent.writeTo(event, output);
+        }
+    }
+
+    /**
+     * The readFrom() method reads an operation that was written by writeTo().
+     * @param input where the operation is read from
+     * @return the operation that was read
+     * @throws IOException if the operation could not be read
+     */
+    public static SqlOperation readFrom(DataInput input) throws IOException {
+
+        SqlOperation operation = new SqlOperation(input.readUTF());
+        operation.createdProject = input.readInt();
+        int statementCount = input.readShort();
+
+        for(int i = 0; i < statementCount; i++){
+
+            String sql = input.readUTF();
+            boolean oneRow = input.readBoolean();
+            Object[] statementParameters = new Object[input.readShort()];
+
+            for(int j = 0; j < statementParameters.length; j++){
+
+                byte tag = input.readByte();
+                statementParameters[j] = switch (tag) {
+                    case NULL_TAG -> null;
+                    case INT_TAG -> input.readInt();
+                    case DOUBLE_TAG -> input.readDouble();
+                    case STRING_TAG -> input.readUTF();
+                    case BYTES_TAG -> {
+                        byte[] bytes = new byte[input.readInt()];
+                        input.readFully(bytes);
+                        yield bytes;
+                    }
+                    default -> throw new IOException("Unknown parameter type in journal: " + tag);
+                };
+            }
+
+            operation.add(sql, oneRow, statementParameters);
+        }
+
+        int eventCount = input.readShort();
+        for(int i = 0; i < eventCount; i++){
+            operation.events.add(ProjectEvent.readFrom(input));
+        }
+
+        return operation;
+    }
+
+    /**
+     * The setParameter() method sets a placeholder of a prepared statement using the type of the value.
+     * @param statement the prepared statement
+     * @param index the index of the placeholder, starting at 1
+     * @param value the value of the placeholder
+     * @throws SQLException if the value could not be set
+     */
+    private static void setParameter(PreparedStatement statement, int index, Object value) throws SQLException {
+
+        if(value == null){
+            statement.setNull(index, Types.VARCHAR);
+        } else if(value instanceof Integer intValue){
+            statement.setInt(index, intValue);
+        } else if(value instanceof Double doubleValue){
+            statement.setDouble(index, doubleValue);
+        } else if(value instanceof byte[] bytes){
+            statement.setBytes(index, bytes);
+        } else {
+            statement.setString(index, (String) value);
+        }
+    }
+
+    /**
+     * The describe() method lists the statements of the operation and their parameters, so that someone can see
+     * what a change that the database rejected would have done.
+     * @return the description of the operation, followed by one line for each statement
+     */
+    public String describe(){
+
+        StringBuilder text = new StringBuilder(description);
+        for(int i = 0; i < statements.size(); i++){
+            text.append(System.lineSeparator()).append("    ").append(statements.get(i)).append(" ")
+                    .append(Arrays.toString(parameters.get(i)));
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * @return The toString() method returns the description of the operation.
+     */
+    public String toString(){
+        return description;
+    }
+}
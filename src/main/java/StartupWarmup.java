@@ -0,0 +1,160 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class loads the program's in-memory structures in the background when it starts, so the menus can be used
+ * straight away. The structures are loaded at the same time, by up to poised.warmupThreads threads (4 by default),
+ * from the ProjectSnapshot or by reading their tables in ranges with ParallelScan. Anything that needs a structure
+ * that is not ready yet goes to the database instead, or says that it is still loading.
+ * <p>
+ * A line is printed when a structure could not be loaded, and when every structure has been loaded, with how long
+ * the program took to be ready and how long each structure took.
+ */
+public class StartupWarmup {
+
+    /**
+     * This interface is implemented by the loading of one structure.
+     */
+    @FunctionalInterface
+    public interface Step {
+
+        /**
+         * Loads the structure
+         * @throws Exception if it could not be loaded
+         */
+        void run() throws Exception;
+    }
+
+    /**
+     * This class holds one structure to be loaded.
+     * @param name the name shown in the progress line
+     * @param failureMessage the message printed if the structure could not be loaded
+     * @param step the loading of the structure
+     */
+    private record Task(String name, String failureMessage, Step step) {
+    }
+
+    private final List<Task> tasks = new ArrayList<>();
+    // How long each structure took to load, in milliseconds.
+    private final Map<String, Long> loadMillis = new ConcurrentHashMap<>();
+    private final AtomicInteger remaining = new AtomicInteger(-1);
+    private final List<Runnable> whenReady = new ArrayList<>();
+    private long startNanos;
+
+    /**
+     * The add() method adds a structure to be loaded.
+     * @param name the name shown in the progress line
+     * @param failureMessage the message printed if the structure could not be loaded
+     * @param step the loading of the structure
+     * @return the warm-up
+     */
+    public StartupWarmup add(String name, String failureMessage, Step step){
+
+        tasks.add(new Task(name, failureMessage, step));
+        return this;
+    }
+
+    /**
+     * The whenReady() method adds a task run once every structure has finished loading, whether or not it could be
+     * loaded.
+     * @param task the task
+     * @return the warm-up
+     */
+    public StartupWarmup whenReady(Runnable task){
+
+        whenReady.add(task);
+        return this;
+    }
+
+    /**
+     * The start() method starts loading every structure in the background, and returns straight away.
+     */
+    public void start(){
+
+        startNanos = System.nanoTime();
+        remaining.set(tasks.size());
+
+        ExecutorService loaders = Executors.newFixedThreadPool(Math.max(1, Config.getInt("poised.warmupThreads", 4)),
+                task -> {
+                    Thread thread = new Thread(task, "poised-warmup");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        for(Task task : tasks){
+            loaders.execute(() -> run(task));
+        }
+        loaders.shutdown();
+
+    }
+
+    /**
+     * The run() method loads one structure and records how long it took. The last structure to finish runs the
+     * tasks added with whenReady() and prints the time the program took to be ready. A structure counts as finished
+     * however its loading ends, even with an Error, so the warm-up always becomes ready.
+     * @param task the structure to be loaded
+     */
+    private void run(Task task){
+
+        long taskStart = System.nanoTime();
+
+        try{
+
+            task.step().run();
+            loadMillis.put(task.name(), (System.nanoTime() - taskStart) / 1_000_000);
+
+        } catch(Exception e){
+            System.out.println(task.failureMessage());
+        } finally{
+
+            if(remaining.decrementAndGet() == 0){
+                whenReady.forEach(Runnable::run);
+                System.out.println(progress());
+            }
+        }
+    }
+
+    /**
+     * The isReady() method checks whether every structure has finished loading, whether or not it could be loaded.
+     * @return true if the warm-up has finished
+     */
+    public boolean isReady(){
+        return remaining.get() == 0;
+    }
+
+    /**
+     * The progress() method describes how far the warm-up has got.
+     * @return the number of structures loaded, and how long each took, or the time the program took to be ready
+     */
+    public String progress(){
+
+        StringBuilder line = new StringBuilder();
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+
+        if(isReady()){
+            line.append(String.format("Ready in %.1f s", elapsedMillis / 1000.0));
+        } else {
+            line.append(String.format("Loaded %d of %d after %.1f s", tasks.size() - Math.max(remaining.get(), 0),
+                    tasks.size(), elapsedMillis / 1000.0));
+        }
+
+        List<String> loaded = new ArrayList<>();
+        for(Task task : tasks){
+
+            Long millis = loadMillis.get(task.name());
+            if(millis != null){
+                loaded.add(String.format("%s %.1f s", task.name(), millis / 1000.0));
+            }
+        }
+        if(!loaded.isEmpty()){
+            line.append(" (").append(String.join(", ", loaded)).append(")");
+        }
+
+        return line.append(".").toString();
+    }
+}
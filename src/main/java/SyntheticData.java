@@ -0,0 +1,235 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class generates realistic projects and people for testing the program at a larger scale than can be typed in.
+ * Everything is drawn from a Random created with the given seed, so the same seed always produces the same data.
+ * <p>
+ * Projects generated with nextProject() share their people with other projects, as a firm works with the same
+ * architects and engineers many times. Deadlines are spread from six months in the past to a year ahead, about a
+ * third of the projects are finalised, and the amount paid varies from nothing to the full fee.
+ */
+public class SyntheticData {
+
+    private static final String[] FIRST_NAMES = {"Thabo", "Lerato", "Sipho", "Ayesha", "Johan", "Naledi", "Pieter",
+            "Zanele", "Ravi", "Carla", "Musa", "Fatima", "Werner", "Nomsa", "David", "Precious"};
+    private static final String[] LAST_NAMES = {"Mokoena", "Naidoo", "van der Merwe", "Dlamini", "Botha", "Khumalo",
+            "Pillay", "Smith", "Nkosi", "Jacobs", "Pretorius", "Mahlangu", "Adams", "Ndlovu", "Fourie", "Moodley"};
+    private static final String[] STREETS = {"Main", "Church", "Long", "Victoria", "Jan Smuts", "Beach", "Oak",
+            "Station", "Kloof", "Market"};
+    private static final String[] CITIES = {"Cape Town", "Johannesburg", "Durban", "Pretoria", "Gqeberha",
+            "Bloemfontein", "Stellenbosch"};
+    private static final String[] BUILDING_TYPES = {"House", "Apartment Block", "Office", "Warehouse", "School",
+            "Clinic", "Shopping Centre"};
+    // ERF numbers of generated projects start here so that they do not collide with real ones.
+    private static final int ERF_BASE = 500000;
+    private static final double FINALISED_RATIO = 0.35;
+
+    private final Random random;
+    // Deadlines and complete dates are set relative to this date rather than the clock, so they repeat too.
+    private final LocalDate today;
+    private final List<List<Person>> peopleByType = new ArrayList<>();
+
+    /**
+     * The constructor for the SyntheticData class creates a generator that always produces the same data for the
+     * same seed and date.
+     * @param seed the seed of the random numbers
+     * @param today the date the generated deadlines are spread around
+     */
+    SyntheticData(long seed, LocalDate today){
+
+        this.random = new Random(seed);
+        this.today = today;
+
+        for(int i = 0; i < Person.Type.values().length; i++){
+            peopleByType.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * The createPeople() method generates the people that projects from nextProject() are shared between.
+     * @param type the role of the people
+     * @param count how many people to generate
+     * @return the generated people, which must be added to the database before any project using them
+     */
+    public List<Person> createPeople(Person.Type type, int count){
+
+        List<Person> people = peopleByType.get(type.ordinal());
+
+        for(int i = 0; i < count; i++){
+            people.add(newPerson(type, String.valueOf(people.size() + 1)));
+        }
+
+        return people;
+    }
+
+    /**
+     * The nextProject() method generates a project whose people are chosen from those made by createPeople().
+     * @param projectNumber the number of the project
+     * @return the generated project
+     */
+    public Project nextProject(int projectNumber){
+
+        return newProject(projectNumber, sharedPerson(Person.Type.ARCHITECT), sharedPerson(Person.Type.CONTRACTOR),
+                sharedPerson(Person.Type.CUSTOMER), sharedPerson(Person.Type.ENGINEER),
+                sharedPerson(Person.Type.MANAGER));
+    }
+
+    /**
+     * The nextProjectWithNewPeople() method generates a project with people of its own, as when a user enters a
+     * new project.
+     * @param projectNumber the number of the project
+     * @return the generated project
+     */
+    public Project nextProjectWithNewPeople(int projectNumber){
+
+        String suffix = "P" + projectNumber;
+
+        return newProject(projectNumber, newPerson(Person.Type.ARCHITECT, suffix),
+                newPerson(Person.Type.CONTRACTOR, suffix), newPerson(Person.Type.CUSTOMER, suffix),
+                newPerson(Person.Type.ENGINEER, suffix), newPerson(Person.Type.MANAGER, suffix));
+    }
+
+    /**
+     * The nextPayments() method generates the payments made towards a project's fee. About a quarter of projects
+     * have no payments, a fifth are paid in full, and the rest are paid in part in one to four instalments.
+     * @param project the project being paid for
+     * @return the amounts paid, which add up to no more than the fee
+     */
+    public List<Double> nextPayments(Project project){
+
+        List<Double> payments = new ArrayList<>();
+        double fee = project.projectInfo.getTotalFee();
+        double share = random.nextDouble();
+
+        double toPay;
+        if(share < 0.25){
+            toPay = 0;
+        } else if(share < 0.45){
+            toPay = fee;
+        } else {
+            toPay = Math.round(fee * random.nextDouble() * 100) / 100.0;
+        }
+
+        int instalments = 1 + random.nextInt(4);
+        double paid = 0;
+
+        for(int i = 1; i <= instalments && toPay > 0; i++){
+
+            // The last instalment pays whatever is left, so the amounts add up exactly.
+            double amount = i == instalments ? Math.round((toPay - paid) * 100) / 100.0
+                    : Math.round(toPay / instalments * 100) / 100.0;
+            payments.add(amount);
+            paid += amount;
+
+        }
+
+        return payments;
+    }
+
+    /**
+     * The nextInt() method draws a number from the generator, so that choices made while using the data can be
+     * repeated with the same seed.
+     * @param bound the number of possible values
+     * @return a number from 0 to bound - 1
+     */
+    public int nextInt(int bound){
+        return random.nextInt(bound);
+    }
+
+    /**
+     * The nextAmount() method draws an amount of money up to the given maximum, rounded to cents.
+     * @param maximum the largest amount
+     * @return the amount
+     */
+    public double nextAmount(double maximum){
+        return Math.round(random.nextDouble() * maximum * 100) / 100.0;
+    }
+
+    /**
+     * The nextAddress() method draws a street address.
+     * @return the address
+     */
+    public String nextAddress(){
+
+        return (1 + random.nextInt(300)) + " " + pick(STREETS) + " Street, " + pick(CITIES);
+    }
+
+    /**
+     * The newProject() method generates the project information and puts it together with the given people.
+     * @param projectNumber the number of the project
+     * @param architect the architect of the project
+     * @param contractor the contractor of the project
+     * @param customer the customer of the project
+     * @param engineer the structural engineer of the project
+     * @param manager the project manager of the project
+     * @return the generated project
+     */
+    private Project newProject(int projectNumber, Person architect, Person contractor, Person customer,
+                               Person engineer, Person manager){
+
+        String buildingType = pick(BUILDING_TYPES);
+        String[] customerName = customer.getName().split(" ");
+
+        // Fees are between R50 000 and R2 000 000 in steps of R500.
+        double fee = 50000 + 500 * random.nextInt(3901);
+        LocalDate deadline = today.plusDays(random.nextInt(546) - 180);
+
+        ProjectInfo info = new ProjectInfo(buildingType + " " + customerName[customerName.length - 2] + " " +
+                projectNumber, buildingType, nextAddress(), ERF_BASE + projectNumber, fee, deadline);
+        info.setProjectNumber(projectNumber);
+
+        Project project = new Project(info, architect, contractor, customer, engineer, manager);
+
+        // A finalised project was completed some time before today.
+        if(random.nextDouble() < FINALISED_RATIO){
+
+            project.setFinalise(true);
+            info.setCompleteDate(today.minusDays(1 + random.nextInt(365)));
+
+        }
+
+        return project;
+    }
+
+    /**
+     * The newPerson() method generates a person. The suffix keeps the name unique, as people are found by name.
+     * @param type the role of the person
+     * @param suffix a number or code that no other generated person has
+     * @return the generated person
+     */
+    private Person newPerson(Person.Type type, String suffix){
+
+        String firstName = pick(FIRST_NAMES);
+        String lastName = pick(LAST_NAMES);
+        String phone = "0" + (60 + random.nextInt(30)) + String.format("%07d", random.nextInt(10000000));
+        String email = (firstName + "." + lastName).toLowerCase().replace(" ", "") + "." +
+                suffix.toLowerCase() + "@example.com";
+
+        return new Person(type, firstName + " " + lastName + " " + suffix, phone, email, nextAddress());
+    }
+
+    /**
+     * The sharedPerson() method picks one of the people made by createPeople(). Earlier people are picked more
+     * often, as a few regular clients and consultants account for most of a firm's work.
+     * @param type the role of the person
+     * @return the chosen person
+     */
+    private Person sharedPerson(Person.Type type){
+
+        List<Person> people = peopleByType.get(type.ordinal());
+        if(people.isEmpty()){
+            throw new IllegalStateException("No " + type + " people have been created.");
+        }
+
+        int index = (int) (people.size() * Math.pow(random.nextDouble(), 2));
+
+        return people.get(index);
+    }
+
+    private String pick(String[] values){
+        return values[random.nextInt(values.length)];
+    }
+}
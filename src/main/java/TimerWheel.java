@@ -0,0 +1,151 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * This class is a hierarchical timer wheel that counts in whole ticks, such as days. Scheduling and cancelling a
+ * timer take the same time however many timers there are, and moving the wheel on by one tick only looks at the
+ * timers due on that tick, apart from an occasional move of a block of later timers to a lower wheel.
+ * <p>
+ * The lowest wheel has a slot for each of the next {@value #SLOTS} ticks. Each higher wheel has a slot for each block
+ * of {@value #SLOTS} slots of the wheel below it, so three wheels cover {@value #SLOTS} cubed ticks. Timers further
+ * away than that wait in an overflow list. When the lowest wheel comes round to its first slot, the timers in the
+ * current slot of the wheel above are moved down, and so on up the wheels.
+ * @param <T> the type of value held by each timer
+ */
+public class TimerWheel<T> {
+
+    private static final int SLOT_BITS = 6;
+    static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 3;
+    private static final long SLOT_MASK = SLOTS - 1;
+
+    private final List<Deque<Timer<T>>> wheels = new ArrayList<>();
+    private final List<Timer<T>> overflow = new ArrayList<>();
+    // The next tick to be reached. Every timer due before it has already fired.
+    private long now;
+
+    /**
+     * This class holds one scheduled value.
+     * @param <T> the type of the value
+     */
+    public static final class Timer<T> {
+
+        final long due;
+        final T value;
+        boolean cancelled;
+
+        Timer(long due, T value){
+
+            this.due = due;
+            this.value = value;
+
+        }
+    }
+
+    /**
+     * The constructor creates an empty wheel.
+     * @param start the first tick the wheel will reach
+     */
+    public TimerWheel(long start){
+
+        for(int i = 0; i < LEVELS * SLOTS; i++){
+            wheels.add(new ArrayDeque<>());
+        }
+        now = start;
+
+    }
+
+    /**
+     * The schedule() method adds a timer. A timer due before the wheel's current tick fires on the current tick.
+     * @param due the tick the timer fires on
+     * @param value the value handed back when the timer fires
+     * @return the timer, which can be cancelled
+     */
+    public Timer<T> schedule(long due, T value){
+
+        Timer<T> timer = new Timer<>(Math.max(due, now), value);
+        place(timer);
+
+        return timer;
+    }
+
+    /**
+     * The cancel() method stops a timer from firing. The timer is left in its slot and skipped when it is reached.
+     * @param timer the timer, or null
+     */
+    public void cancel(Timer<T> timer){
+
+        if(timer != null){
+            timer.cancelled = true;
+        }
+    }
+
+    /**
+     * The place() method puts a timer in the slot for its due tick, on the lowest wheel that reaches that far.
+     * @param timer the timer
+     */
+    private void place(Timer<T> timer){
+
+        long delta = timer.due - now;
+
+        for(int level = 0; level < LEVELS; level++){
+
+            if(delta < 1L << (SLOT_BITS * (level + 1))){
+
+                int slot = (int) ((timer.due >> (SLOT_BITS * level)) & SLOT_MASK);
+                wheels.get(level * SLOTS + slot).add(timer);
+                return;
+
+            }
+        }
+
+        overflow.add(timer);
+    }
+
+    /**
+     * The advance() method moves the wheel on to the given tick, and hands back the values of the timers that fire
+     * on the way, in the order of their ticks.
+     * @param to the last tick to be reached
+     * @return the values of the timers that fired
+     */
+    public List<T> advance(long to){
+
+        List<T> fired = new ArrayList<>();
+
+        for(; now <= to; now++){
+
+            // At the start of each block of ticks, the timers due in the block are moved down from the wheels above,
+            // starting with the highest wheel so that they can move down more than one wheel.
+            if((now & ((1L << (SLOT_BITS * LEVELS)) - 1)) == 0){
+
+                List<Timer<T>> waiting = new ArrayList<>(overflow);
+                overflow.clear();
+                waiting.forEach(this::place);
+
+            }
+            for(int level = LEVELS - 1; level > 0; level--){
+
+                if((now & ((1L << (SLOT_BITS * level)) - 1)) == 0){
+
+                    Deque<Timer<T>> slot = wheels.get(level * SLOTS + (int) ((now >> (SLOT_BITS * level)) & SLOT_MASK));
+                    List<Timer<T>> moving = new ArrayList<>(slot);
+                    slot.clear();
+                    moving.forEach(this::place);
+
+                }
+            }
+
+            Deque<Timer<T>> slot = wheels.get((int) (now & SLOT_MASK));
+            for(Timer<T> timer : slot){
+                if(!timer.cancelled){
+                    fired.add(timer.value);
+                }
+            }
+            slot.clear();
+        }
+
+        return fired;
+    }
+}
@@ -0,0 +1,730 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.zip.CRC32;
+
+/**
+ * This class queues edits to the fee and payment information of projects so that the operator does not have to wait
+ * for the database. Each edit is written to a local journal file before it is queued, and a single background thread
+ * writes the queued edits to the database. Multiple edits to the same project are coalesced, and all the edits
+ * waiting at the time of a flush are written in one transaction.
+ * <p>
+ * Payments are inserted into the payment ledger, which adds them to the total paid in the database, so payments
+ * recorded by other users are not lost. Each payment keeps the unique pay_ref it was given when it was entered, and
+ * each fee change carries a sequence number that is stored in the project's write_seq column, so an edit that is
+ * replayed after it was already written is skipped instead of being applied twice.
+ * <p>
+ * Each edit also carries the row version of the project it was based on. A fee change is only written if the row
+ * version still matches, so a fee changed by another user in the meantime is not overwritten. Once an edit has been
+ * written, the row version it left the project with is given to the project in memory, and to any later edit to the
+ * project that was queued while it was being written.
+ * <p>
+ * The events describing the edits are published once they have been committed, leaving out a fee change that was
+ * turned down and anything written by an earlier attempt.
+ * <p>
+ * The journal is only cleared once the queued edits have been committed, so if the program stops before the edits
+ * reach the database, they are replayed the next time the queue is opened. If the database can be reached but
+ * rejects a batch, each edit in it is written on its own, and an edit the database rejects is written to
+ * {@value #REJECTED_FILE} with the reason and dropped from the queue and the journal, so that it does not hold up the
+ * edits queued after it.
+ */
+public class WriteBehindQueue {
+
+    // The journal file is kept in the working directory of the program.
+    public static final String JOURNAL_FILE = "poised-write-behind.journal";
+    public static final String REJECTED_FILE = "poised-write-behind.rejected";
+    // The time the writer waits before retrying after the database could not be reached.
+    private static final long RETRY_DELAY_MILLIS = 5000;
+
+    // Each project number is mapped to the coalesced edits waiting to be written.
+    private final Map<Integer, PendingEdit> pendingEdits = new LinkedHashMap<>();
+    // The projects in memory whose edits are waiting, which are given the row version the writer leaves them with.
+    private final Map<Integer, ProjectInfo> editedProjects = new HashMap<>();
+    private final FileChannel journal;
+    private final Thread writer;
+    private boolean closed;
+    private long lastSequence;
+
+    /**
+     * This class holds a payment that has not yet been written to the payment ledger.
+     */
+    static class Payment {
+
+        final String payRef;
+        final double amount;
+        final LocalDate payDate;
+        // The reference given by the customer, or null.
+        final String reference;
+
+        Payment(String payRef, double amount, LocalDate payDate, String reference){
+
+            this.payRef = payRef;
+            this.amount = amount;
+            this.payDate = payDate;
+            this.reference = reference;
+
+        }
+    }
+
+    /**
+     * This class holds the edits to a project that have not yet been written to the database: the latest fee, if it
+     * was changed, and the payments recorded since the last write.
+     */
+    static class PendingEdit {
+
+        final long sequence;
+        final int projectNumber;
+        // The row version the edit was based on.
+        final int expectedVersion;
+        // The new total fee, or null if the fee was not changed.
+        final Double totalFee;
+        final List<Payment> payments;
+
+        PendingEdit(long sequence, int projectNumber, int expectedVersion, Double totalFee, List<Payment> payments){
+
+            this.sequence = sequence;
+            this.projectNumber = projectNumber;
+            this.expectedVersion = expectedVersion;
+            this.totalFee = totalFee;
+            this.payments = payments;
+
+        }
+
+        /**
+         * The mergedWith() method coalesces a later edit to the same project into this one.
+         * @param later the later edit
+         * @return a new edit with the latest fee, the payments of both, and the sequence number and row version of the
+         * later edit
+         */
+        PendingEdit mergedWith(PendingEdit later){
+
+            Double fee = later.totalFee != null ? later.totalFee : totalFee;
+
+            List<Payment> allPayments = new ArrayList<>(payments);
+            allPayments.addAll(later.payments);
+
+            return new PendingEdit(later.sequence, projectNumber, later.expectedVersion, fee, allPayments);
+        }
+
+        /**
+         * The without() method copies the edit without some of its payments.
+         * @param removed the payments to be left out
+         * @return the copy of the edit
+         */
+        PendingEdit without(List<Payment> removed){
+
+            List<Payment> kept = new ArrayList<>(payments);
+            kept.removeAll(removed);
+
+            return new PendingEdit(sequence, projectNumber, expectedVersion, totalFee, kept);
+        }
+
+        /**
+         * The basedOn() method copies the edit with a different row version.
+         * @param version the row version the copy is based on
+         * @return the copy of the edit
+         */
+        PendingEdit basedOn(int version){
+            return new PendingEdit(sequence, projectNumber, version, totalFee, payments);
+        }
+    }
+
+    /**
+     * The constructor opens the journal and starts the background writer thread.
+     * @param journal the channel of the journal file
+     */
+    private WriteBehindQueue(FileChannel journal){
+
+        this.journal = journal;
+        this.writer = new Thread(this::runWriter, "poised-write-behind");
+        this.writer.setDaemon(true);
+
+    }
+
+    /**
+     * The open() method opens the journal file, queues any edits left in it by a previous run, and starts the
+     * background writer.
+     * @return a new WriteBehindQueue
+     * @throws IOException if the journal file cannot be opened
+     */
+    public static WriteBehindQueue open() throws IOException {
+
+        File journalFile = Database.tenantFile(JOURNAL_FILE).toFile();
+
+        WriteBehindQueue queue = new WriteBehindQueue(new RandomAccessFile(journalFile, "rw").getChannel());
+
+        // Edits that were journaled but never committed are replayed into the queue.
+        int replayed = queue.replayJournal(journalFile);
+        if(replayed > 0){
+            System.out.println(replayed + " unsaved project edit(s) recovered from the journal.");
+        }
+
+        // The journal is rewritten with only the recovered edits, dropping any partly written line at its end.
+        queue.journal.truncate(0);
+        for(PendingEdit edit : queue.pendingEdits.values()){
+            queue.appendToJournal(edit);
+        }
+
+        queue.writer.start();
+
+        // When the program exits, the writer is given the chance to write the remaining edits.
+        Runtime.getRuntime().addShutdownHook(new Thread(queue::close));
+
+        return queue;
+    }
+
+    /**
+     * The queueFee() method journals a new total fee for a project and hands it to the background writer.
+     * @param projectInfo the project being edited
+     * @param totalFee the new total fee of the project
+     * @throws IOException if the edit could not be written to the journal
+     */
+    public void queueFee(ProjectInfo projectInfo, double totalFee) throws IOException {
+        queue(projectInfo, totalFee, List.of());
+    }
+
+    /**
+     * The queuePayment() method journals a payment for a project and hands it to the background writer.
+     * @param projectInfo the project being edited
+     * @param amount the amount paid
+     * @param reference the reference given by the customer, or null
+     * @throws IOException if the edit could not be written to the journal
+     * @throws IllegalArgumentException if the reference is longer than the payment ledger can hold
+     */
+    public void queuePayment(ProjectInfo projectInfo, double amount, String reference) throws IOException {
+
+        // A reference the ledger cannot hold would be rejected by the database long after the user had moved on.
+        if(!PaymentLedger.referenceFits(reference)){
+            throw new IllegalArgumentException("The payment reference can be at most " +
+                    PaymentLedger.MAX_REFERENCE_LENGTH + " characters.");
+        }
+
+        queue(projectInfo, null, List.of(new Payment(PaymentLedger.newPaymentRef(), amount, LocalDate.now(),
+                reference)));
+    }
+
+    /**
+     * The queue() method journals an edit and coalesces it with any edit to the same project already waiting. The row
+     * version of the project is read while the queue is locked, so that it cannot miss a version given to it by the
+     * writer.
+     * @param projectInfo the project being edited
+     * @param totalFee the new total fee, or null if it is not changed
+     * @param payments the payments recorded
+     * @throws IOException if the edit could not be written to the journal
+     */
+    private synchronized void queue(ProjectInfo projectInfo, Double totalFee, List<Payment> payments)
+            throws IOException {
+
+        if(closed){
+            throw new IOException("The write-behind queue has been closed.");
+        }
+
+        int projectNumber = projectInfo.getProjectNumber();
+        PendingEdit edit = new PendingEdit(nextSequence(), projectNumber, projectInfo.getVersion(), totalFee,
+                payments);
+
+        // The edit is forced to disk before it is queued so that it survives a crash.
+        appendToJournal(edit);
+
+        pendingEdits.merge(projectNumber, edit, PendingEdit::mergedWith);
+        editedProjects.put(projectNumber, projectInfo);
+        notifyAll();
+
+    }
+
+    /**
+     * The nextSequence() method gives out a sequence number that is higher than any given out before, including in
+     * earlier runs of the program, by basing it on the current time.
+     * @return the new sequence number
+     */
+    private long nextSequence(){
+
+        lastSequence = Math.max(lastSequence + 1, System.currentTimeMillis() * 1000);
+
+        return lastSequence;
+    }
+
+    /**
+     * The close() method stops accepting edits and waits for the writer to write the edits that are still queued.
+     */
+    public void close(){
+
+        synchronized (this){
+
+            if(closed){
+                return;
+            }
+            closed = true;
+            notifyAll();
+
+        }
+
+        try{
+
+            writer.join();
+            journal.close();
+
+        } catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        } catch(IOException e){
+            System.out.println("Could not close the write-behind journal.");
+        }
+    }
+
+    /**
+     * The runWriter() method is run by the background thread. It waits for queued edits, takes all of them at once,
+     * and writes them to the database in a single transaction. As with the replay of the OfflineJournal, a failure
+     * on a connection that is still valid means the database rejected the batch, so the edits are written one at a
+     * time to find the ones it rejects. Otherwise the database could not be reached, and the batch is tried again.
+     */
+    private void runWriter(){
+
+        while(true){
+
+            Map<Integer, PendingEdit> batch;
+
+            synchronized (this){
+
+                while(pendingEdits.isEmpty() && !closed){
+                    try{
+                        wait();
+                    } catch(InterruptedException e){
+                        return;
+                    }
+                }
+
+                if(pendingEdits.isEmpty()){
+                    return;
+                }
+
+                batch = new LinkedHashMap<>(pendingEdits);
+
+            }
+
+            try(Connection connection = Database.getConnection()){
+
+                try{
+
+                    removeWritten(batch, writeBatch(connection, batch));
+
+                } catch(SQLException e){
+
+                    if(connection.isClosed() || !connection.isValid(1)){
+                        throw e;
+                    }
+                    writeSeparately(connection, batch);
+
+                }
+
+            } catch(SQLException e){
+
+                System.out.println("Could not connect to database. Queued edits will be retried.");
+
+                // If the program is closing, the edits are left in the journal to be replayed on the next start.
+                synchronized (this){
+
+                    if(closed){
+                        return;
+                    }
+                    try{
+                        wait(RETRY_DELAY_MILLIS);
+                    } catch(InterruptedException interrupted){
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The writeSeparately() method writes each edit of a batch the database rejected in a transaction of its own.
+     * An edit the database rejects is moved to the rejected file and reported, and the rest are written.
+     * @param connection an open connection to the database
+     * @param batch the edits to be written
+     * @throws SQLException if the database could no longer be reached
+     */
+    private void writeSeparately(Connection connection, Map<Integer, PendingEdit> batch) throws SQLException {
+
+        for(PendingEdit edit : batch.values()){
+
+            Map<Integer, PendingEdit> single = Map.of(edit.projectNumber, edit);
+
+            try{
+
+                removeWritten(single, writeBatch(connection, single));
+
+            } catch(SQLException e){
+
+                if(connection.isClosed() || !connection.isValid(1)){
+                    throw e;
+                }
+
+                try{
+                    reject(edit, e.getMessage());
+                } catch(IOException writeFailure){
+                    // The edit stays queued, and is tried again with the rest of the queue.
+                    continue;
+                }
+                System.out.println("Could not save the queued edit to project " + edit.projectNumber + ": " +
+                        e.getMessage() + " It has been kept in " + REJECTED_FILE + ".");
+
+            }
+        }
+    }
+
+    /**
+     * The reject() method writes an edit the database rejected to the rejected file, with the time and the reason,
+     * and removes it from the queue. A later edit to the same project that was coalesced with it keeps its fee but
+     * loses the rejected payments. The journal is rewritten without the edit, so it is not replayed at the next start.
+     * @param edit the rejected edit
+     * @param reason the database's reason for rejecting it
+     * @throws IOException if the rejected file could not be written
+     */
+    private synchronized void reject(PendingEdit edit, String reason) throws IOException {
+
+        String entry = Instant.now() + "\t" + reason + System.lineSeparator() + journalRecord(edit) +
+                System.lineSeparator();
+
+        try(FileChannel file = FileChannel.open(Database.tenantFile(REJECTED_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)){
+
+            file.write(ByteBuffer.wrap(entry.getBytes(StandardCharsets.UTF_8)));
+            file.force(true);
+
+        }
+
+        if(!pendingEdits.remove(edit.projectNumber, edit)){
+            pendingEdits.computeIfPresent(edit.projectNumber, (projectNumber, later) -> later.without(edit.payments));
+        }
+        if(!pendingEdits.containsKey(edit.projectNumber)){
+            editedProjects.remove(edit.projectNumber);
+        }
+
+        try{
+
+            journal.truncate(0);
+            for(PendingEdit pending : pendingEdits.values()){
+                appendToJournal(pending);
+            }
+
+        } catch(IOException e){
+            System.out.println("Could not rewrite the write-behind journal. The rejected edit will be tried again " +
+                    "at the next start.");
+        }
+    }
+
+    /**
+     * The writeBatch() method writes a batch of edits in one transaction. Fee changes update pay_complete, unless its
+     * write_seq shows the change was already written or its row_version shows the project was changed by someone else
+     * since the edit was made, and payments are inserted into the payment ledger, which ignores a payment whose
+     * pay_ref it already has. A fee change that was turned down because of someone else's change is reported, and the
+     * rest of the batch is still written.
+     * @param connection an open connection to the database
+     * @param batch the edits to be written
+     * @return each project number in the batch mapped to the row version the transaction left the project with
+     * @throws SQLException if the database could not be reached or the transaction failed
+     */
+    private Map<Integer, Integer> writeBatch(Connection connection, Map<Integer, PendingEdit> batch)
+            throws SQLException {
+
+        Map<Integer, Integer> committedVersions = new HashMap<>();
+
+        try(PreparedStatement fee = connection.prepareStatement("UPDATE pay_complete SET total_fee = ?, " +
+                    "total_owed = ? - total_paid, row_version = row_version + 1, write_seq = ? " +
+                    "WHERE proj_num = ? AND write_seq < ? AND row_version = ?");
+            PreparedStatement payment = connection.prepareStatement(PaymentLedger.INSERT_PAYMENT);
+            PreparedStatement version = connection.prepareStatement("SELECT row_version, write_seq " +
+                    "FROM pay_complete WHERE proj_num = ?")){
+
+            connection.setAutoCommit(false);
+
+            try{
+
+                List<PendingEdit> feeEdits = new ArrayList<>();
+                List<ProjectEvent> events = new ArrayList<>();
+                // A payment already in the ledger was written, and published, by an earlier attempt.
+                Set<String> writtenPayments = findWrittenPayments(connection, batch.values());
+                for(PendingEdit edit : batch.values()){
+
+                    if(edit.totalFee != null){
+
+                        fee.setDouble(1, edit.totalFee);
+                        fee.setDouble(2, edit.totalFee);
+                        fee.setLong(3, edit.sequence);
+                        fee.setInt(4, edit.projectNumber);
+                        fee.setLong(5, edit.sequence);
+                        fee.setInt(6, edit.expectedVersion);
+                        fee.addBatch();
+                        feeEdits.add(edit);
+
+                    }
+
+                    for(Payment pending : edit.payments){
+
+                        payment.setString(1, pending.payRef);
+                        payment.setInt(2, edit.projectNumber);
+                        payment.setDouble(3, pending.amount);
+                        payment.setString(4, pending.payDate.toString());
+                        payment.setString(5, pending.reference);
+                        payment.addBatch();
+                        if(!writtenPayments.contains(pending.payRef)){
+                            events.add(new ProjectEvent.PaymentRecorded(edit.projectNumber, pending.amount,
+                                    pending.payRef));
+                        }
+
+                    }
+                }
+
+                int[] feeCounts = fee.executeBatch();
+                payment.executeBatch();
+
+                // The row versions are read inside the transaction, so they are the ones it commits.
+                for(PendingEdit edit : batch.values()){
+
+                    version.setInt(1, edit.projectNumber);
+                    try(ResultSet row = version.executeQuery()){
+
+                        if(!row.next()){
+                            continue;
+                        }
+                        committedVersions.put(edit.projectNumber, row.getInt("row_version"));
+
+                        // A fee change that was skipped without having been written before lost to another change.
+                        int index = feeEdits.indexOf(edit);
+                        if(index >= 0 && feeCounts[index] != 0){
+                            events.add(new ProjectEvent.FeeChanged(edit.projectNumber, edit.totalFee));
+                        } else if(index >= 0 && row.getLong("write_seq") < edit.sequence){
+                            System.out.println("Could not change the fee of project " + edit.projectNumber +
+                                    " to R" + String.format("%.2f", edit.totalFee) + " because the project was " +
+                                    "changed by someone else.");
+                        }
+                    }
+                }
+
+                connection.commit();
+                events.forEach(ProjectEventBus::publish);
+
+            } catch(SQLException e){
+
+                connection.rollback();
+                throw e;
+
+            }
+        }
+
+        return committedVersions;
+    }
+
+    /**
+     * The findWrittenPayments() method finds which of the payments in a batch are already in the payment ledger.
+     * @param connection an open connection to the database
+     * @param edits the edits in the batch
+     * @return the pay_refs of the payments already in the ledger
+     * @throws SQLException if the ledger could not be read
+     */
+    private static Set<String> findWrittenPayments(Connection connection, Collection<PendingEdit> edits)
+            throws SQLException {
+
+        List<String> payRefs = new ArrayList<>();
+        for(PendingEdit edit : edits){
+            for(Payment payment : edit.payments){
+                payRefs.add(payment.payRef);
+            }
+        }
+
+        Set<String> written = new HashSet<>();
+        if(payRefs.isEmpty()){
+            return written;
+        }
+
+        try(PreparedStatement statement = connection.prepareStatement("SELECT pay_ref FROM payment WHERE pay_ref IN " +
+                ProjectRepository.placeholders(payRefs.size()))){
+
+            for(int i = 0; i < payRefs.size(); i++){
+                statement.setString(i + 1, payRefs.get(i));
+            }
+
+            try(ResultSet rows = statement.executeQuery()){
+                while(rows.next()){
+                    written.add(rows.getString("pay_ref"));
+                }
+            }
+        }
+
+        return written;
+    }
+
+    /**
+     * The removeWritten() method removes the written edits from the queue and gives the projects in memory the row
+     * versions they were written with. Edits that were replaced while the batch was being written stay queued, and
+     * are moved onto the new row version if they were based on the same version as the written edit. Once the queue
+     * is empty, the journal is cleared.
+     * @param batch the edits that were written
+     * @param committedVersions the row versions the projects were written with
+     */
+    private synchronized void removeWritten(Map<Integer, PendingEdit> batch, Map<Integer, Integer> committedVersions){
+
+        for(PendingEdit edit : batch.values()){
+
+            Integer committed = committedVersions.get(edit.projectNumber);
+
+            if(!pendingEdits.remove(edit.projectNumber, edit)){
+
+                PendingEdit later = pendingEdits.get(edit.projectNumber);
+                if(committed != null && later.expectedVersion == edit.expectedVersion){
+                    pendingEdits.put(edit.projectNumber, later.basedOn(committed));
+                }
+
+            }
+
+            ProjectInfo projectInfo = editedProjects.get(edit.projectNumber);
+            if(projectInfo != null && committed != null && projectInfo.getVersion() == edit.expectedVersion){
+                projectInfo.setVersion(committed);
+            }
+            if(!pendingEdits.containsKey(edit.projectNumber)){
+                editedProjects.remove(edit.projectNumber);
+            }
+        }
+
+        if(pendingEdits.isEmpty()){
+
+            try{
+
+                journal.truncate(0);
+                journal.force(true);
+
+            } catch(IOException e){
+                System.out.println("Could not clear the write-behind journal.");
+            }
+        }
+    }
+
+    /**
+     * The appendToJournal() method writes an edit to the end of the journal as a line of text followed by a
+     * checksum, and forces it to disk.
+     * @param edit the edit to be journaled
+     * @throws IOException if the edit could not be written
+     */
+    private void appendToJournal(PendingEdit edit) throws IOException {
+
+        String record = journalRecord(edit);
+        String line = record + "," + checksum(record) + "\n";
+
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        while(buffer.hasRemaining()){
+            journal.write(buffer);
+        }
+        journal.force(false);
+
+    }
+
+    /**
+     * The journalRecord() method describes an edit as the line of text it is journaled as, without the checksum.
+     * The payments are separated by '|', and the fields of each payment by ';'. The customer's reference is
+     * URL-encoded so that it cannot contain any of the separators.
+     * @param edit the edit
+     * @return the line of text
+     */
+    private static String journalRecord(PendingEdit edit){
+
+        String fee = edit.totalFee == null ? "" : edit.totalFee.toString();
+
+        StringJoiner payments = new StringJoiner("|");
+        for(Payment payment : edit.payments){
+
+            String reference = payment.reference == null ? "" :
+                    URLEncoder.encode(payment.reference, StandardCharsets.UTF_8);
+            payments.add(payment.payRef + ";" + payment.amount + ";" + payment.payDate + ";" + reference);
+
+        }
+
+        return edit.sequence + "," + edit.projectNumber + "," + fee + "," + payments + "," + edit.expectedVersion;
+    }
+
+    /**
+     * The replayJournal() method reads the journal left by a previous run and queues its edits. A line with a
+     * missing or incorrect checksum was only partly written when the program stopped, so it and anything after it
+     * is ignored.
+     * @param journalFile the journal file
+     * @return the number of projects with recovered edits
+     * @throws IOException if the journal could not be read
+     */
+    private int replayJournal(File journalFile) throws IOException {
+
+        try(BufferedReader reader = new BufferedReader(new FileReader(journalFile, StandardCharsets.UTF_8))){
+
+            String line;
+            while((line = reader.readLine()) != null){
+
+                int lastComma = line.lastIndexOf(',');
+                if(lastComma < 0){
+                    break;
+                }
+
+                String record = line.substring(0, lastComma);
+                if(!line.substring(lastComma + 1).equals(Long.toString(checksum(record)))){
+                    break;
+                }
+
+                String[] fields = record.split(",", -1);
+                Double fee = fields[2].isEmpty() ? null : Double.valueOf(fields[2]);
+
+                List<Payment> payments = new ArrayList<>();
+                for(String payment : fields[3].isEmpty() ? new String[0] : fields[3].split("\\|")){
+
+                    String[] paymentFields = payment.split(";", -1);
+                    String reference = paymentFields[3].isEmpty() ? null :
+                            URLDecoder.decode(paymentFields[3], StandardCharsets.UTF_8);
+                    payments.add(new Payment(paymentFields[0], Double.parseDouble(paymentFields[1]),
+                            LocalDate.parse(paymentFields[2]), reference));
+
+                }
+
+                PendingEdit edit = new PendingEdit(Long.parseLong(fields[0]), Integer.parseInt(fields[1]),
+                        Integer.parseInt(fields[4]), fee, payments);
+
+                pendingEdits.merge(edit.projectNumber, edit, PendingEdit::mergedWith);
+                lastSequence = Math.max(lastSequence, edit.sequence);
+
+            }
+        }
+
+        return pendingEdits.size();
+    }
+
+    /**
+     * The checksum() method calculates the CRC32 checksum of a journal record.
+     * @param record the record to be checked
+     * @return the checksum of the record
+     */
+    private static long checksum(String record){
+
+        CRC32 crc = new CRC32();
+        crc.update(record.getBytes(StandardCharsets.UTF_8));
+
+        return crc.getValue();
+    }
+}
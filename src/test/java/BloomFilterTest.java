@@ -0,0 +1,80 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests that a Bloom filter never reports a string it was given as missing, and that it reports strings
+ * it was not given as possibly added at roughly the rate it was built for.
+ */
+class BloomFilterTest {
+
+    @Test
+    void containsEveryAddedString(){
+
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for(int i = 0; i < 10000; i++){
+            filter.add("project " + i);
+        }
+
+        for(int i = 0; i < 10000; i++){
+            assertTrue(filter.mightContain("project " + i), "project " + i);
+        }
+    }
+
+    @Test
+    void containsEveryAddedStringWhenFilledBeyondItsSize(){
+
+        BloomFilter filter = new BloomFilter(10, 0.01);
+        for(int i = 0; i < 1000; i++){
+            filter.add("project " + i);
+        }
+
+        for(int i = 0; i < 1000; i++){
+            assertTrue(filter.mightContain("project " + i), "project " + i);
+        }
+    }
+
+    @Test
+    void containsEmptyAndNonAsciiStrings(){
+
+        BloomFilter filter = new BloomFilter(3, 0.01);
+        filter.add("");
+        filter.add("\u0141\u00f3d\u017a");
+        filter.add("\ud83c\udfd7 site");
+
+        assertTrue(filter.mightContain(""));
+        assertTrue(filter.mightContain("\u0141\u00f3d\u017a"));
+        assertTrue(filter.mightContain("\ud83c\udfd7 site"));
+
+    }
+
+    @Test
+    void isEmptyWhenCreated(){
+
+        BloomFilter filter = new BloomFilter(100, 0.01);
+        for(int i = 0; i < 100; i++){
+            assertFalse(filter.mightContain("project " + i), "project " + i);
+        }
+    }
+
+    @Test
+    void keepsFalsePositivesNearTheRequestedRate(){
+
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for(int i = 0; i < 10000; i++){
+            filter.add("project " + i);
+        }
+
+        int falsePositives = 0;
+        for(int i = 0; i < 100000; i++){
+            if(filter.mightContain("other " + i)){
+                falsePositives++;
+            }
+        }
+
+        // Three times the requested rate leaves room for chance without letting a broken hash through.
+        assertTrue(falsePositives < 3000, falsePositives + " false positives in 100000");
+
+    }
+}
@@ -0,0 +1,125 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests that timers fire on the tick they are due, wherever in the wheels they are first placed, and that
+ * cancelled timers do not fire.
+ */
+class TimerWheelTest {
+
+    // The ticks covered by the three wheels, beyond which a timer waits in the overflow list.
+    private static final long SPAN = (long) TimerWheel.SLOTS * TimerWheel.SLOTS * TimerWheel.SLOTS;
+
+    /**
+     * The assertFiresAt() method moves a wheel on to just before a tick, checking that nothing fires, and then on to
+     * the tick itself, checking that exactly the expected values fire.
+     * @param wheel the wheel
+     * @param due the tick
+     * @param expected the values expected to fire on the tick
+     */
+    private static void assertFiresAt(TimerWheel<String> wheel, long due, List<String> expected){
+
+        assertEquals(List.of(), wheel.advance(due - 1), "fired before tick " + due);
+        assertEquals(expected, wheel.advance(due), "fired on tick " + due);
+
+    }
+
+    @Test
+    void firesOnTheLowestWheel(){
+
+        TimerWheel<String> wheel = new TimerWheel<>(0);
+        wheel.schedule(5, "five");
+
+        assertFiresAt(wheel, 5, List.of("five"));
+
+    }
+
+    @Test
+    void firesAfterMovingDownFromTheSecondWheel(){
+
+        TimerWheel<String> wheel = new TimerWheel<>(0);
+        wheel.schedule(TimerWheel.SLOTS + 3, "second");
+
+        assertFiresAt(wheel, TimerWheel.SLOTS + 3, List.of("second"));
+
+    }
+
+    @Test
+    void firesAfterMovingDownFromTheThirdWheel(){
+
+        TimerWheel<String> wheel = new TimerWheel<>(0);
+        long due = 2L * TimerWheel.SLOTS * TimerWheel.SLOTS + 7 * TimerWheel.SLOTS + 11;
+        wheel.schedule(due, "third");
+
+        assertFiresAt(wheel, due, List.of("third"));
+
+    }
+
+    @Test
+    void firesFromTheOverflowList(){
+
+        TimerWheel<String> wheel = new TimerWheel<>(0);
+        wheel.schedule(SPAN + 10, "overflow");
+        wheel.schedule(2 * SPAN + 1, "later");
+
+        assertFiresAt(wheel, SPAN + 10, List.of("overflow"));
+        assertFiresAt(wheel, 2 * SPAN + 1, List.of("later"));
+
+    }
+
+    @Test
+    void firesOnTheRightTickWhenStartingPartWayRound(){
+
+        long start = 3 * TimerWheel.SLOTS + 40;
+        TimerWheel<String> wheel = new TimerWheel<>(start);
+        wheel.schedule(start + 30, "near");
+        wheel.schedule(start + TimerWheel.SLOTS * TimerWheel.SLOTS, "far");
+
+        assertFiresAt(wheel, start + 30, List.of("near"));
+        assertFiresAt(wheel, start + TimerWheel.SLOTS * TimerWheel.SLOTS, List.of("far"));
+
+    }
+
+    @Test
+    void firesTimersDueInThePastOnTheCurrentTick(){
+
+        TimerWheel<String> wheel = new TimerWheel<>(100);
+        wheel.advance(150);
+        wheel.schedule(20, "overdue");
+
+        assertEquals(List.of("overdue"), wheel.advance(151));
+
+    }
+
+    @Test
+    void firesTimersDueOnTheSameTickInTheOrderScheduled(){
+
+        TimerWheel<String> wheel = new TimerWheel<>(0);
+        wheel.schedule(500, "first");
+        wheel.schedule(500, "second");
+
+        assertFiresAt(wheel, 500, List.of("first", "second"));
+
+    }
+
+    @Test
+    void skipsCancelledTimers(){
+
+        TimerWheel<String> wheel = new TimerWheel<>(0);
+        TimerWheel.Timer<String> cancelled = wheel.schedule(9, "cancelled");
+        wheel.schedule(9, "kept");
+        TimerWheel.Timer<String> far = wheel.schedule(SPAN + 2, "far");
+
+        wheel.cancel(cancelled);
+        wheel.cancel(far);
+        wheel.cancel(null);
+
+        assertFiresAt(wheel, 9, List.of("kept"));
+        assertTrue(wheel.advance(SPAN + 2).isEmpty());
+
+    }
+}